@@ -0,0 +1,155 @@
+package com.layer.atlas.adapters;
+
+import android.support.test.runner.AndroidJUnit4;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+
+@RunWith(AndroidJUnit4.class)
+public class MessageClusterTableTest {
+    private static final int CAPACITY = 8;
+
+    private MessageClusterTable mTable;
+
+    @Before
+    public void setUp() {
+        mTable = new MessageClusterTable(CAPACITY);
+        mTable.reset(40);
+    }
+
+    @Test
+    public void testSetAndGet() {
+        mTable.set(3, (byte) 5);
+
+        assertThat(mTable.get(3), is((byte) 5));
+        assertThat(mTable.get(2), is(MessageClusterTable.UNKNOWN));
+        assertThat(mTable.getWindowStart(), is(0));
+    }
+
+    @Test
+    public void testInsertBeforeWindowShiftsWindow() {
+        mTable.set(3, (byte) 5);
+        mTable.insert(0, 2);
+
+        assertThat(mTable.size(), is(42));
+        assertThat(mTable.get(5), is((byte) 5));
+        assertThat(mTable.get(3), is(MessageClusterTable.UNKNOWN));
+    }
+
+    @Test
+    public void testInsertInsideWindowShiftsLaterLinks() {
+        mTable.set(2, (byte) 1);
+        mTable.set(5, (byte) 4);
+        mTable.insert(4, 2);
+
+        assertThat(mTable.get(2), is((byte) 1));
+        assertThat(mTable.get(4), is(MessageClusterTable.UNKNOWN));
+        assertThat(mTable.get(5), is(MessageClusterTable.UNKNOWN));
+        assertThat(mTable.get(7), is((byte) 4));
+    }
+
+    @Test
+    public void testRemoveInsideWindowShiftsLaterLinks() {
+        mTable.set(2, (byte) 1);
+        mTable.set(6, (byte) 4);
+        mTable.remove(3, 2);
+
+        assertThat(mTable.size(), is(38));
+        assertThat(mTable.get(2), is((byte) 1));
+        assertThat(mTable.get(4), is((byte) 4));
+        assertThat(mTable.get(6), is(MessageClusterTable.UNKNOWN));
+    }
+
+    @Test
+    public void testRemoveBeforeWindowShiftsWindow() {
+        mTable.set(15, (byte) 7);
+        assertThat(mTable.getWindowStart(), is(11));
+
+        mTable.remove(0, 3);
+
+        assertThat(mTable.getWindowStart(), is(8));
+        assertThat(mTable.get(12), is((byte) 7));
+    }
+
+    @Test
+    public void testRemoveAcrossWindowStart() {
+        mTable.set(13, (byte) 6);
+        assertThat(mTable.getWindowStart(), is(9));
+
+        // Removes positions 7-10, straddling the window start
+        mTable.remove(7, 4);
+
+        assertThat(mTable.getWindowStart(), is(7));
+        assertThat(mTable.get(9), is((byte) 6));
+        assertThat(mTable.get(10), is(MessageClusterTable.UNKNOWN));
+    }
+
+    @Test
+    public void testSetOutsideWindowMovesWindow() {
+        mTable.set(1, (byte) 3);
+        mTable.set(30, (byte) 9);
+
+        assertThat(mTable.getWindowStart(), is(26));
+        assertThat(mTable.get(30), is((byte) 9));
+        assertThat(mTable.get(1), is(MessageClusterTable.UNKNOWN));
+    }
+
+    @Test
+    public void testMoveWindowKeepsOverlap() {
+        mTable.set(6, (byte) 3);
+        mTable.set(9, (byte) 4);
+
+        assertThat(mTable.getWindowStart(), is(5));
+        assertThat(mTable.get(6), is((byte) 3));
+        assertThat(mTable.get(9), is((byte) 4));
+    }
+
+    @Test
+    public void testMoveWindowClampsToEnd() {
+        mTable.set(39, (byte) 2);
+
+        assertThat(mTable.getWindowStart(), is(32));
+        assertThat(mTable.get(39), is((byte) 2));
+    }
+
+    @Test
+    public void testUpdateOutsideWindowDoesNotMoveWindow() {
+        mTable.set(2, (byte) 1);
+
+        assertThat(mTable.update(30, (byte) 5), is(false));
+        assertThat(mTable.getWindowStart(), is(0));
+        assertThat(mTable.get(2), is((byte) 1));
+        assertThat(mTable.get(30), is(MessageClusterTable.UNKNOWN));
+    }
+
+    @Test
+    public void testUpdateInsideWindow() {
+        assertThat(mTable.update(4, (byte) 2), is(true));
+        assertThat(mTable.get(4), is((byte) 2));
+    }
+
+    @Test
+    public void testInvalidate() {
+        mTable.set(2, (byte) 1);
+        mTable.set(3, (byte) 2);
+        mTable.invalidate(2, 1);
+
+        assertThat(mTable.get(2), is(MessageClusterTable.UNKNOWN));
+        assertThat(mTable.get(3), is((byte) 2));
+    }
+
+    @Test
+    public void testResetKeepsWindowInRange() {
+        mTable.set(39, (byte) 2);
+        mTable.reset(10);
+
+        assertThat(mTable.getWindowStart(), is(2));
+        assertThat(mTable.get(9), is(MessageClusterTable.UNKNOWN));
+        assertThat(mTable.isInWindow(9), is(true));
+        assertThat(mTable.isInWindow(10), is(false));
+    }
+}
@@ -0,0 +1,80 @@
+package com.layer.atlas.adapters;
+
+import android.net.Uri;
+import android.support.test.runner.AndroidJUnit4;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+
+@RunWith(AndroidJUnit4.class)
+public class StableIdTableTest {
+    private static final int CAPACITY = 3;
+
+    private StableIdTable mTable;
+
+    @Before
+    public void setUp() {
+        mTable = new StableIdTable(CAPACITY);
+    }
+
+    @Test
+    public void testIdsAreStable() {
+        long a = mTable.getId(uri("a"));
+        long b = mTable.getId(uri("b"));
+
+        assertThat(a, is(StableIdTable.FIRST_ID));
+        assertThat(b, is(StableIdTable.FIRST_ID + 1));
+        assertThat(mTable.getId(uri("a")), is(a));
+        assertThat(mTable.getId(uri("b")), is(b));
+        assertThat(mTable.size(), is(2));
+    }
+
+    @Test
+    public void testEvictsLeastRecentlyUsed() {
+        long a = mTable.getId(uri("a"));
+        mTable.getId(uri("b"));
+        mTable.getId(uri("c"));
+        // Touching "a" leaves "b" as the eldest
+        mTable.getId(uri("a"));
+        mTable.getId(uri("d"));
+
+        assertThat(mTable.size(), is(CAPACITY));
+        assertThat(mTable.getId(uri("a")), is(a));
+        assertThat(mTable.getId(uri("b")), is(StableIdTable.FIRST_ID + 4));
+    }
+
+    @Test
+    public void testEvictedIdsAreNotReused() {
+        for (String name : new String[]{"a", "b", "c", "d", "e"}) {
+            mTable.getId(uri(name));
+        }
+
+        assertThat(mTable.getId(uri("a")), is(StableIdTable.FIRST_ID + 5));
+    }
+
+    @Test
+    public void testShrinkingCapacityEvictsEldest() {
+        long c = 0;
+        for (String name : new String[]{"a", "b", "c"}) {
+            c = mTable.getId(uri(name));
+        }
+        mTable.setCapacity(1);
+
+        assertThat(mTable.size(), is(1));
+        assertThat(mTable.getCapacity(), is(1));
+        assertThat(mTable.getId(uri("c")), is(c));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testRejectsZeroCapacity() {
+        mTable.setCapacity(0);
+    }
+
+    private static Uri uri(String name) {
+        return Uri.parse("layer:///messages/" + name);
+    }
+}
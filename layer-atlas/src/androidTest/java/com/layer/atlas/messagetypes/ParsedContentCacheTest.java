@@ -0,0 +1,154 @@
+package com.layer.atlas.messagetypes;
+
+import android.support.test.runner.AndroidJUnit4;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+
+@RunWith(AndroidJUnit4.class)
+public class ParsedContentCacheTest {
+    private static final int ENTRY_BYTES = 100;
+
+    private ParsedContentCache mCache;
+    private ParsedContentCache.Account mAccount;
+
+    @Before
+    public void setUp() {
+        mCache = new ParsedContentCache(4 * ENTRY_BYTES);
+        mAccount = mCache.createAccount(1);
+    }
+
+    @Test
+    public void testPutAndGet() {
+        Content content = new Content(ENTRY_BYTES);
+        mAccount.put("a", content);
+
+        assertThat(mAccount.get("a") == content, is(true));
+        assertThat(mAccount.get("b") == null, is(true));
+        assertThat(mCache.getSize(), is((long) ENTRY_BYTES));
+    }
+
+    @Test
+    public void testReplaceUpdatesSize() {
+        mAccount.put("a", new Content(ENTRY_BYTES));
+        mAccount.put("a", new Content(2 * ENTRY_BYTES));
+
+        assertThat(mCache.getSize(), is((long) 2 * ENTRY_BYTES));
+    }
+
+    @Test
+    public void testRemove() {
+        mAccount.put("a", new Content(ENTRY_BYTES));
+        mAccount.remove("a");
+
+        assertThat(mAccount.get("a") == null, is(true));
+        assertThat(mCache.getSize(), is(0L));
+    }
+
+    @Test
+    public void testAccountsAreNamespaced() {
+        ParsedContentCache.Account other = mCache.createAccount(1);
+        Content content = new Content(ENTRY_BYTES);
+        mAccount.put("a", content);
+
+        assertThat(other.get("a") == null, is(true));
+        assertThat(mAccount.get("a") == content, is(true));
+    }
+
+    @Test
+    public void testEvictsLeastRecentlyUsedAcrossStripes() {
+        for (String id : new String[]{"a", "b", "c", "d"}) {
+            mAccount.put(id, new Content(ENTRY_BYTES));
+        }
+        // Touching "a" leaves "b" as the eldest
+        mAccount.get("a");
+        mAccount.put("e", new Content(ENTRY_BYTES));
+
+        assertThat(mCache.getSize(), is((long) 4 * ENTRY_BYTES));
+        assertThat(mAccount.get("a") != null, is(true));
+        assertThat(mAccount.get("b") == null, is(true));
+        assertThat(mAccount.get("e") != null, is(true));
+    }
+
+    @Test
+    public void testEvictsAccountsOverShareFirst() {
+        ParsedContentCache.Account other = mCache.createAccount(1);
+        other.put("b1", new Content(ENTRY_BYTES));
+        mAccount.put("a1", new Content(ENTRY_BYTES));
+        mAccount.put("a2", new Content(ENTRY_BYTES));
+        mAccount.put("a3", new Content(ENTRY_BYTES));
+
+        // Both Accounts are entitled to half; only mAccount is over it
+        other.put("b2", new Content(ENTRY_BYTES));
+
+        assertThat(other.get("b1") != null, is(true));
+        assertThat(mAccount.get("a1") == null, is(true));
+        assertThat(mAccount.get("a2") != null, is(true));
+    }
+
+    @Test
+    public void testRejectsEntryOverBudget() {
+        mAccount.put("a", new Content(5 * ENTRY_BYTES));
+
+        assertThat(mAccount.get("a") == null, is(true));
+        assertThat(mCache.getSize(), is(0L));
+    }
+
+    @Test
+    public void testOversizedPutRemovesStaleEntry() {
+        mAccount.put("a", new Content(ENTRY_BYTES));
+        mAccount.put("a", new Content(5 * ENTRY_BYTES));
+
+        assertThat(mAccount.get("a") == null, is(true));
+        assertThat(mCache.getSize(), is(0L));
+    }
+
+    @Test
+    public void testTrimLargeBacklogKeepsNewest() {
+        ParsedContentCache cache = new ParsedContentCache(10000);
+        ParsedContentCache.Account account = cache.createAccount(1);
+        for (int i = 0; i < 10000; i++) {
+            account.put(Integer.toString(i), new Content(1));
+        }
+        cache.trimToSize(10);
+
+        assertThat(cache.getSize(), is(10L));
+        assertThat(account.get("9989") == null, is(true));
+        for (int i = 9990; i < 10000; i++) {
+            assertThat(account.get(Integer.toString(i)) != null, is(true));
+        }
+    }
+
+    @Test
+    public void testTrimAndEvictAll() {
+        for (String id : new String[]{"a", "b", "c", "d"}) {
+            mAccount.put(id, new Content(ENTRY_BYTES));
+        }
+        mCache.trimToSize(2 * ENTRY_BYTES);
+
+        assertThat(mCache.getSize(), is((long) 2 * ENTRY_BYTES));
+        assertThat(mAccount.get("c") != null, is(true));
+        assertThat(mAccount.get("d") != null, is(true));
+
+        mCache.evictAll();
+
+        assertThat(mCache.getSize(), is(0L));
+    }
+
+    private static class Content implements AtlasCellFactory.ParsedContent {
+        private final int mSize;
+
+        Content(int size) {
+            mSize = size;
+        }
+
+        @Override
+        public int sizeOf() {
+            return mSize;
+        }
+    }
+}
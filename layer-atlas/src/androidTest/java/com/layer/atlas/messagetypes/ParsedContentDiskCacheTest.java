@@ -0,0 +1,186 @@
+package com.layer.atlas.messagetypes;
+
+import android.content.Context;
+import android.net.Uri;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.view.LayoutInflater;
+import android.view.ViewGroup;
+
+import com.layer.atlas.mock.MockMessageImpl;
+import com.layer.sdk.LayerClient;
+import com.layer.sdk.messaging.Message;
+import com.layer.sdk.messaging.MessagePart;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+
+@RunWith(AndroidJUnit4.class)
+public class ParsedContentDiskCacheTest {
+    private static final long TIMEOUT_MILLIS = 5000;
+
+    private File mDirectory;
+    private ParsedContentDiskCache mDiskCache;
+    private Message mMessage;
+
+    @Before
+    public void setUp() {
+        mDirectory = new File(InstrumentationRegistry.getTargetContext().getCacheDir(), "parsed-content-test");
+        mDiskCache = new ParsedContentDiskCache(mDirectory, ParsedContentDiskCache.DEFAULT_MAX_BYTES);
+        mDiskCache.clear();
+        final Uri id = Uri.parse("layer:///messages/disk");
+        mMessage = new MockMessageImpl(new ArrayList<MessagePart>()) {
+            @Override
+            public Uri getId() {
+                return id;
+            }
+        };
+    }
+
+    @After
+    public void tearDown() {
+        mDiskCache.clear();
+    }
+
+    @Test
+    public void testColdOpenBindReadsFromDisk() throws Exception {
+        // Parse once off the main thread, as the previous session's ParseScheduler would have
+        CountingCellFactory previous = newFactory();
+        assertThat(previous.getParsedContent(null, mMessage).mText, is("parsed"));
+        assertThat(previous.mParseCount, is(1));
+        awaitWritten();
+
+        // A fresh factory and memory cache, binding on the main thread
+        final CountingCellFactory cold = newFactory();
+        final AtomicReference<Content> bound = new AtomicReference<>();
+        InstrumentationRegistry.getInstrumentation().runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                bound.set(cold.getParsedContent(null, mMessage));
+            }
+        });
+
+        assertThat(bound.get().mText, is("parsed"));
+        assertThat(cold.mParseCount, is(0));
+        assertThat(cold.getStats().snapshot().getDiskHits(), is(1L));
+    }
+
+    @Test
+    public void testMainThreadSkipsLargeEntries() throws Exception {
+        CountingCellFactory previous = newFactory();
+        previous.mText = new String(new char[(int) ParsedContentDiskCache.MAIN_THREAD_MAX_READ_BYTES]).replace('\0', 'x');
+        previous.getParsedContent(null, mMessage);
+        awaitWritten();
+
+        assertThat(mDiskCache.read(CountingCellFactory.class.getName(), CountingCellFactory.SERIALIZER,
+                mMessage.getId().toString(), ParsedContentDiskCache.MAIN_THREAD_MAX_READ_BYTES) == null, is(true));
+        assertThat(mDiskCache.read(CountingCellFactory.class.getName(), CountingCellFactory.SERIALIZER,
+                mMessage.getId().toString()) != null, is(true));
+    }
+
+    private CountingCellFactory newFactory() {
+        CountingCellFactory factory = new CountingCellFactory();
+        factory.setParsedContentCache(new ParsedContentCache(ParsedContentCache.DEFAULT_BUDGET_BYTES));
+        factory.setParsedContentDiskCache(mDiskCache);
+        return factory;
+    }
+
+    private void awaitWritten() throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+        while (mDiskCache.read(CountingCellFactory.class.getName(), CountingCellFactory.SERIALIZER, mMessage.getId().toString()) == null) {
+            if (System.currentTimeMillis() > deadline) throw new AssertionError("Entry was never written");
+            Thread.sleep(10);
+        }
+    }
+
+    private static class Content implements AtlasCellFactory.ParsedContent {
+        private final String mText;
+
+        Content(String text) {
+            mText = text;
+        }
+
+        @Override
+        public int sizeOf() {
+            return mText.length();
+        }
+    }
+
+    private static class CountingCellFactory extends AtlasCellFactory<AtlasCellFactory.CellHolder, Content> {
+        static final ParsedContentSerializer<Content> SERIALIZER = new ParsedContentSerializer<Content>() {
+            @Override
+            public int getVersion() {
+                return 1;
+            }
+
+            @Override
+            public boolean isPersistable(Content content) {
+                return true;
+            }
+
+            @Override
+            public void write(Content content, DataOutput out) throws IOException {
+                out.writeUTF(content.mText);
+            }
+
+            @Override
+            public Content read(DataInput in) throws IOException {
+                return new Content(in.readUTF());
+            }
+        };
+
+        private String mText = "parsed";
+        private int mParseCount = 0;
+
+        CountingCellFactory() {
+            super(1024);
+        }
+
+        @Override
+        public Content parseContent(LayerClient layerClient, Message message) {
+            mParseCount++;
+            return new Content(mText);
+        }
+
+        @Override
+        protected ParsedContentSerializer<Content> getParsedContentSerializer() {
+            return SERIALIZER;
+        }
+
+        @Override
+        public boolean isBindable(Message message) {
+            return true;
+        }
+
+        @Override
+        public boolean isType(Message message) {
+            return true;
+        }
+
+        @Override
+        public CellHolder createCellHolder(ViewGroup cellView, boolean isMe, LayoutInflater layoutInflater) {
+            return null;
+        }
+
+        @Override
+        public void bindCellHolder(CellHolder cellHolder, Content cached, Message message, CellHolderSpecs specs) {
+        }
+
+        @Override
+        public String getPreviewText(Context context, Message message) {
+            return null;
+        }
+    }
+}
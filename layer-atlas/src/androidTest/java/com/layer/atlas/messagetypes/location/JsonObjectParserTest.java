@@ -0,0 +1,95 @@
+package com.layer.atlas.messagetypes.location;
+
+import android.support.test.runner.AndroidJUnit4;
+
+import com.layer.atlas.messagetypes.threepartimage.ThreePartImageCellFactory;
+import com.layer.atlas.messagetypes.threepartimage.ThreePartImageUtils;
+import com.layer.atlas.mock.MockLayerClient;
+import com.layer.atlas.mock.MockMessageImpl;
+import com.layer.atlas.mock.MockMessagePart;
+import com.layer.sdk.LayerClient;
+import com.layer.sdk.messaging.MessagePart;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+
+// Lives beside LocationCellFactory so it can read the package-private Location fields
+@RunWith(AndroidJUnit4.class)
+public class JsonObjectParserTest {
+    private LocationCellFactory mLocationCellFactory;
+    private LayerClient mLayerClient;
+
+    @Before
+    public void setUp() {
+        mLocationCellFactory = new LocationCellFactory(null);
+        mLayerClient = new MockLayerClient();
+    }
+
+    @Test
+    public void testGetInfo() {
+        ThreePartImageCellFactory.Info info = ThreePartImageCellFactory.getInfo(imageMessage("{\"orientation\":2, \"width\":3024, \"height\":4032}"));
+
+        assertThat(info.orientation, is(2));
+        assertThat(info.width, is(3024));
+        assertThat(info.height, is(4032));
+    }
+
+    @Test
+    public void testGetInfoIncomplete() {
+        assertThat(ThreePartImageCellFactory.getInfo(imageMessage("{\"width\":10}")) == null, is(true));
+    }
+
+    @Test
+    public void testParseLocation() {
+        LocationCellFactory.Location location = mLocationCellFactory.parseContent(mLayerClient,
+                locationMessage("{\"lat\":37.7749,\"lon\":-122.4194,\"label\":\"San Francisco\"}"));
+
+        assertThat(location.mLatitude, is(37.7749));
+        assertThat(location.mLongitude, is(-122.4194));
+        assertThat(location.mLabel, is("San Francisco"));
+    }
+
+    @Test
+    public void testParseLocationSkipsUnknownFields() {
+        LocationCellFactory.Location location = mLocationCellFactory.parseContent(mLayerClient,
+                locationMessage("{\"accuracy\":{\"meters\":5},\"lat\":1.5,\"tags\":[\"a\",\"b\"],\"lon\":2.5}"));
+
+        assertThat(location.mLatitude, is(1.5));
+        assertThat(location.mLongitude, is(2.5));
+        assertThat(location.mLabel == null, is(true));
+    }
+
+    @Test
+    public void testParseLocationNullLabel() {
+        LocationCellFactory.Location location = mLocationCellFactory.parseContent(mLayerClient,
+                locationMessage("{\"lat\":1.5,\"lon\":2.5,\"label\":null}"));
+
+        assertThat(location.mLabel == null, is(true));
+    }
+
+    @Test
+    public void testParseLocationMalformed() {
+        assertThat(mLocationCellFactory.parseContent(mLayerClient, locationMessage("{\"lat\":")) == null, is(true));
+    }
+
+    private static MockMessageImpl imageMessage(String info) {
+        List<MessagePart> parts = new ArrayList<>();
+        parts.add(new MockMessagePart(new byte[0], ThreePartImageUtils.MIME_TYPE_IMAGE_JPEG));
+        parts.add(new MockMessagePart(new byte[0], ThreePartImageUtils.MIME_TYPE_PREVIEW));
+        parts.add(new MockMessagePart(info.getBytes(), ThreePartImageUtils.MIME_TYPE_INFO));
+        return new MockMessageImpl(parts);
+    }
+
+    private static MockMessageImpl locationMessage(String json) {
+        List<MessagePart> parts = new ArrayList<>();
+        parts.add(new MockMessagePart(json.getBytes(), LocationCellFactory.MIME_TYPE));
+        return new MockMessageImpl(parts);
+    }
+}
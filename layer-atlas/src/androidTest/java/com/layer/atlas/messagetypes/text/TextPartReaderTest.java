@@ -0,0 +1,84 @@
+package com.layer.atlas.messagetypes.text;
+
+import android.support.test.runner.AndroidJUnit4;
+
+import com.layer.atlas.mock.MockMessagePart;
+import com.layer.sdk.messaging.MessagePart;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+
+@RunWith(AndroidJUnit4.class)
+public class TextPartReaderTest {
+    // U+1F600, encoded as a surrogate pair
+    private static final String EMOJI = "😀";
+
+    @Test
+    public void testReadWhole() throws Exception {
+        TextPartReader.Chunk chunk = TextPartReader.read(part("Hello"), 0, 5);
+
+        assertThat(chunk.getText(), is("Hello"));
+        assertThat(chunk.getEnd(), is(5));
+        assertThat(chunk.hasMore(), is(false));
+    }
+
+    @Test
+    public void testReadTruncated() throws Exception {
+        TextPartReader.Chunk chunk = TextPartReader.read(part("Hello"), 0, 3);
+
+        assertThat(chunk.getText(), is("Hel"));
+        assertThat(chunk.getEnd(), is(3));
+        assertThat(chunk.hasMore(), is(true));
+    }
+
+    @Test
+    public void testCutBeforeSurrogatePair() throws Exception {
+        TextPartReader.Chunk chunk = TextPartReader.read(part("ab" + EMOJI + "cd"), 0, 3);
+
+        assertThat(chunk.getText(), is("ab"));
+        assertThat(chunk.getEnd(), is(2));
+        assertThat(chunk.hasMore(), is(true));
+    }
+
+    @Test
+    public void testCutAfterSurrogatePair() throws Exception {
+        TextPartReader.Chunk chunk = TextPartReader.read(part("ab" + EMOJI + "cd"), 0, 4);
+
+        assertThat(chunk.getText(), is("ab" + EMOJI));
+        assertThat(chunk.getEnd(), is(4));
+        assertThat(chunk.hasMore(), is(true));
+    }
+
+    @Test
+    public void testChunksJoinToWholeText() throws Exception {
+        String text = EMOJI + "a" + EMOJI + EMOJI + "b" + EMOJI;
+        MessagePart part = part(text);
+        StringBuilder joined = new StringBuilder();
+        int start = 0;
+        TextPartReader.Chunk chunk;
+        do {
+            chunk = TextPartReader.read(part, start, 3);
+            joined.append(chunk.getText());
+            start = chunk.getEnd();
+        } while (chunk.hasMore());
+
+        assertThat(joined.toString(), is(text));
+        assertThat(start, is(text.length()));
+    }
+
+    @Test
+    public void testReadMultiByteCharacters() throws Exception {
+        TextPartReader.Chunk chunk = TextPartReader.read(part("été 東京"), 2, 4);
+
+        assertThat(chunk.getText(), is("é 東京"));
+        assertThat(chunk.getEnd(), is(6));
+        assertThat(chunk.hasMore(), is(false));
+    }
+
+    private static MessagePart part(String text) throws Exception {
+        return new MockMessagePart(text.getBytes("UTF-8"), "text/plain");
+    }
+}
@@ -0,0 +1,105 @@
+package com.layer.atlas.messagetypes.threepartimage;
+
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+
+@RunWith(AndroidJUnit4.class)
+public class ImageSourceTest {
+    // Larger than the in-memory limit, so it spills to a file
+    private static final int LARGE_BYTES = 9 * 1024 * 1024;
+
+    private File mCacheDir;
+
+    @Before
+    public void setUp() {
+        mCacheDir = InstrumentationRegistry.getTargetContext().getCacheDir();
+    }
+
+    @Test
+    public void testSpoolSmallStream() throws IOException {
+        byte[] data = bytes(1000);
+        ImageSource source = ImageSource.spool(new ByteArrayInputStream(data), mCacheDir);
+
+        assertThat(source.getLength(), is(1000L));
+        assertThat(source.getHeaderLength(), is(1000));
+        assertThat(Arrays.equals(readAll(source.openStream()), data), is(true));
+    }
+
+    @Test
+    public void testSpoolGrowsBuffer() throws IOException {
+        byte[] data = bytes(3 * ImageSource.HEADER_BYTES);
+        ImageSource source = ImageSource.spool(new ByteArrayInputStream(data), mCacheDir);
+
+        assertThat(source.getLength(), is((long) data.length));
+        assertThat(Arrays.equals(readAll(source.openStream()), data), is(true));
+    }
+
+    @Test
+    public void testSpoolLargeStreamToFile() throws IOException {
+        byte[] data = bytes(LARGE_BYTES);
+        ImageSource source = ImageSource.spool(new ByteArrayInputStream(data), mCacheDir);
+
+        assertThat(source.getLength(), is((long) LARGE_BYTES));
+        assertThat(source.getHeaderLength(), is(ImageSource.HEADER_BYTES));
+        assertThat(Arrays.equals(source.getHeader(), Arrays.copyOf(data, ImageSource.HEADER_BYTES)), is(true));
+        assertThat(Arrays.equals(readAll(source.openStream()), data), is(true));
+    }
+
+    @Test
+    public void testFromFileReadsOnlyHeader() throws IOException {
+        byte[] data = bytes(2 * ImageSource.HEADER_BYTES);
+        File file = File.createTempFile("image", ".jpg", mCacheDir);
+        try {
+            FileOutputStream out = new FileOutputStream(file);
+            try {
+                out.write(data);
+            } finally {
+                out.close();
+            }
+            ImageSource source = ImageSource.fromFile(file);
+
+            assertThat(source.getLength(), is((long) data.length));
+            assertThat(source.getHeaderLength(), is(ImageSource.HEADER_BYTES));
+            assertThat(Arrays.equals(readAll(source.openStream()), data), is(true));
+        } finally {
+            file.delete();
+        }
+    }
+
+    private static byte[] bytes(int length) {
+        byte[] data = new byte[length];
+        for (int i = 0; i < length; i++) {
+            data[i] = (byte) (i * 31);
+        }
+        return data;
+    }
+
+    private static byte[] readAll(InputStream in) throws IOException {
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[64 * 1024];
+            int count;
+            while ((count = in.read(buffer)) != -1) {
+                out.write(buffer, 0, count);
+            }
+            return out.toByteArray();
+        } finally {
+            in.close();
+        }
+    }
+}
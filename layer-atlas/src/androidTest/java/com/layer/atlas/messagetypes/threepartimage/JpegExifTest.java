@@ -0,0 +1,78 @@
+package com.layer.atlas.messagetypes.threepartimage;
+
+import android.media.ExifInterface;
+import android.support.test.runner.AndroidJUnit4;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+
+@RunWith(AndroidJUnit4.class)
+public class JpegExifTest {
+    // Start-of-image, then end-of-image
+    private static final byte[] JPEG = {(byte) 0xFF, (byte) 0xD8, (byte) 0xFF, (byte) 0xD9};
+
+    @Test
+    public void testRoundTrip() {
+        int[] orientations = {
+                ExifInterface.ORIENTATION_NORMAL,
+                ExifInterface.ORIENTATION_FLIP_HORIZONTAL,
+                ExifInterface.ORIENTATION_ROTATE_180,
+                ExifInterface.ORIENTATION_ROTATE_90,
+                ExifInterface.ORIENTATION_ROTATE_270
+        };
+        for (int orientation : orientations) {
+            byte[] jpeg = JpegExif.withOrientation(JPEG, orientation);
+
+            assertThat(JpegExif.readOrientation(jpeg, jpeg.length), is(orientation));
+        }
+    }
+
+    @Test
+    public void testWithOrientationKeepsImageData() {
+        byte[] jpeg = JpegExif.withOrientation(JPEG, ExifInterface.ORIENTATION_ROTATE_90);
+
+        assertThat(jpeg[0], is((byte) 0xFF));
+        assertThat(jpeg[1], is((byte) 0xD8));
+        assertThat(jpeg[jpeg.length - 2], is((byte) 0xFF));
+        assertThat(jpeg[jpeg.length - 1], is((byte) 0xD9));
+    }
+
+    @Test
+    public void testReadWithoutExif() {
+        assertThat(JpegExif.readOrientation(JPEG, JPEG.length), is(ExifInterface.ORIENTATION_UNDEFINED));
+    }
+
+    @Test
+    public void testReadNotJpeg() {
+        byte[] png = {(byte) 0x89, 'P', 'N', 'G', 0x0D, 0x0A, 0x1A, 0x0A};
+
+        assertThat(JpegExif.readOrientation(png, png.length), is(ExifInterface.ORIENTATION_UNDEFINED));
+    }
+
+    @Test
+    public void testReadTruncatedHeader() {
+        byte[] jpeg = JpegExif.withOrientation(JPEG, ExifInterface.ORIENTATION_ROTATE_90);
+
+        // Cut inside the orientation entry
+        assertThat(JpegExif.readOrientation(jpeg, 30), is(ExifInterface.ORIENTATION_UNDEFINED));
+    }
+
+    @Test
+    public void testReadLittleEndian() {
+        byte[] jpeg = {
+                (byte) 0xFF, (byte) 0xD8,
+                (byte) 0xFF, (byte) 0xE1, 0, 34,
+                'E', 'x', 'i', 'f', 0, 0,
+                'I', 'I', 42, 0, 8, 0, 0, 0,
+                1, 0,
+                0x12, 0x01, 3, 0, 1, 0, 0, 0, 6, 0, 0, 0,
+                0, 0, 0, 0,
+                (byte) 0xFF, (byte) 0xD9
+        };
+
+        assertThat(JpegExif.readOrientation(jpeg, jpeg.length), is(ExifInterface.ORIENTATION_ROTATE_90));
+    }
+}
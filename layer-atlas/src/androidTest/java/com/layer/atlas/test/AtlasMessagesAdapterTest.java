@@ -0,0 +1,133 @@
+package com.layer.atlas.test;
+
+import android.content.Context;
+import android.net.Uri;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.support.v7.widget.RecyclerView;
+import android.view.View;
+
+import com.layer.atlas.adapters.AtlasMessagesAdapter;
+import com.layer.atlas.messagetypes.AttachmentEncodingQueue;
+import com.layer.atlas.mock.MockLayerClient;
+import com.layer.atlas.mock.MockMessageImpl;
+import com.layer.sdk.messaging.Conversation;
+import com.layer.sdk.messaging.Message;
+import com.layer.sdk.messaging.MessagePart;
+import com.layer.sdk.query.Query;
+import com.layer.sdk.query.Queryable;
+import com.layer.sdk.query.RecyclerViewController;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+@RunWith(AndroidJUnit4.class)
+public class AtlasMessagesAdapterTest {
+    private static final long TIMEOUT_SECONDS = 5;
+    private static final int PLACEHOLDERS = 3;
+
+    private final CountDownLatch mRelease = new CountDownLatch(1);
+    private AttachmentEncodingQueue mQueue;
+    private Conversation mConversation;
+    private AtlasMessagesAdapter mAdapter;
+
+    @Before
+    public void setUp() {
+        // Dexmaker needs somewhere to write the mock classes it generates
+        final Context context = InstrumentationRegistry.getTargetContext();
+        System.setProperty("dexmaker.dexcache", context.getCacheDir().getPath());
+        mQueue = new AttachmentEncodingQueue(1);
+        mConversation = mock(Conversation.class);
+        when(mConversation.getId()).thenReturn(Uri.parse("layer:///conversations/adapter"));
+        runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                mAdapter = new AtlasMessagesAdapter(context, new ControllerLayerClient(), null);
+                mAdapter.setFooterView(new View(context));
+            }
+        });
+    }
+
+    @After
+    public void tearDown() {
+        mRelease.countDown();
+        runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                mAdapter.onDestroy();
+            }
+        });
+    }
+
+    @Test
+    public void testEncodingPlaceholdersHaveIds() {
+        runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                for (int i = 0; i < PLACEHOLDERS; i++) {
+                    mQueue.enqueue(mConversation, new AttachmentEncodingQueue.Encoder() {
+                        @Override
+                        public Message encode() throws Exception {
+                            mRelease.await(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+                            return new MockMessageImpl(new ArrayList<MessagePart>());
+                        }
+                    }, NO_OP_LISTENER);
+                }
+                mAdapter.setEncodingPlaceholders(mQueue, mConversation);
+            }
+        });
+
+        // Every placeholder plus the footer
+        assertThat(mAdapter.getItemCount(), is(PLACEHOLDERS + 1));
+        Set<Long> ids = new HashSet<>();
+        for (int position = 0; position < mAdapter.getItemCount(); position++) {
+            long id = mAdapter.getItemId(position);
+            assertThat("Position " + position, id == RecyclerView.NO_ID, is(false));
+            ids.add(id);
+        }
+        assertThat(ids.size(), is(mAdapter.getItemCount()));
+    }
+
+    private static final AttachmentEncodingQueue.Listener NO_OP_LISTENER = new AttachmentEncodingQueue.Listener() {
+        @Override
+        public void onEncodingStarted(AttachmentEncodingQueue.Job job) {
+        }
+
+        @Override
+        public void onEncoded(AttachmentEncodingQueue.Job job, Message message) {
+        }
+
+        @Override
+        public void onEncodingFailed(AttachmentEncodingQueue.Job job, Throwable error) {
+        }
+    };
+
+    private static void runOnMainSync(Runnable runnable) {
+        InstrumentationRegistry.getInstrumentation().runOnMainSync(runnable);
+    }
+
+    /**
+     * Gives the adapter an empty Message Query.
+     */
+    private static class ControllerLayerClient extends MockLayerClient {
+        @Override
+        @SuppressWarnings("unchecked")
+        public <T extends Queryable> RecyclerViewController<T> newRecyclerViewController(Query<T> query, Collection<String> collection, RecyclerViewController.Callback callback) {
+            return mock(RecyclerViewController.class);
+        }
+    }
+}
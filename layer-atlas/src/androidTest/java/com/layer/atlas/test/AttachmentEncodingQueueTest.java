@@ -0,0 +1,219 @@
+package com.layer.atlas.test;
+
+import android.net.Uri;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+
+import com.layer.atlas.messagetypes.AttachmentEncodingQueue;
+import com.layer.atlas.mock.MockMessageImpl;
+import com.layer.sdk.messaging.Conversation;
+import com.layer.sdk.messaging.Message;
+import com.layer.sdk.messaging.MessagePart;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+@RunWith(AndroidJUnit4.class)
+public class AttachmentEncodingQueueTest {
+    private static final long TIMEOUT_SECONDS = 5;
+
+    private AttachmentEncodingQueue mQueue;
+    private Conversation mConversation;
+    private Conversation mOtherConversation;
+
+    @Before
+    public void setUp() {
+        // Dexmaker needs somewhere to write the mock classes it generates
+        System.setProperty("dexmaker.dexcache", InstrumentationRegistry.getTargetContext().getCacheDir().getPath());
+        mQueue = new AttachmentEncodingQueue(2);
+        mConversation = conversation("a");
+        mOtherConversation = conversation("b");
+    }
+
+    @Test
+    public void testMessageDeliveredImmediatelyWhenIdle() {
+        final Message message = message();
+        final RecordingListener listener = new RecordingListener(1);
+        runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                mQueue.enqueue(mConversation, message, listener);
+            }
+        });
+
+        assertThat(listener.getDelivered(), is(Arrays.<Object>asList(message)));
+        assertThat(mQueue.hasPending(mConversation), is(false));
+    }
+
+    @Test
+    public void testDeliversInEnqueueOrder() throws Exception {
+        final Message slow = message();
+        final Message fast = message();
+        final Message queued = message();
+        final CountDownLatch fastEncoded = new CountDownLatch(1);
+        final RecordingListener listener = new RecordingListener(3);
+        runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                // The first Encoder only finishes after the second one has
+                mQueue.enqueue(mConversation, new AttachmentEncodingQueue.Encoder() {
+                    @Override
+                    public Message encode() throws Exception {
+                        fastEncoded.await(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+                        return slow;
+                    }
+                }, listener);
+                mQueue.enqueue(mConversation, new AttachmentEncodingQueue.Encoder() {
+                    @Override
+                    public Message encode() throws Exception {
+                        fastEncoded.countDown();
+                        return fast;
+                    }
+                }, listener);
+                mQueue.enqueue(mConversation, queued, listener);
+            }
+        });
+
+        assertThat(listener.await(), is(true));
+        assertThat(listener.getDelivered(), is(Arrays.<Object>asList(slow, fast, queued)));
+    }
+
+    @Test
+    public void testFailureKeepsOrder() throws Exception {
+        final Message queued = message();
+        final Exception error = new Exception("Encoding failed");
+        final RecordingListener listener = new RecordingListener(2);
+        runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                mQueue.enqueue(mConversation, new AttachmentEncodingQueue.Encoder() {
+                    @Override
+                    public Message encode() throws Exception {
+                        throw error;
+                    }
+                }, listener);
+                mQueue.enqueue(mConversation, queued, listener);
+            }
+        });
+
+        assertThat(listener.await(), is(true));
+        assertThat(listener.getDelivered(), is(Arrays.<Object>asList(error, queued)));
+    }
+
+    @Test
+    public void testPendingCounts() throws Exception {
+        final CountDownLatch release = new CountDownLatch(1);
+        final RecordingListener listener = new RecordingListener(2);
+        runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                mQueue.enqueue(mConversation, new AttachmentEncodingQueue.Encoder() {
+                    @Override
+                    public Message encode() throws Exception {
+                        release.await(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+                        return message();
+                    }
+                }, listener);
+                mQueue.enqueue(mConversation, message(), listener);
+            }
+        });
+
+        assertThat(mQueue.hasPending(mConversation), is(true));
+        assertThat(mQueue.getEncodingCount(mConversation), is(1));
+        assertThat(mQueue.hasPending(mOtherConversation), is(false));
+
+        release.countDown();
+        assertThat(listener.await(), is(true));
+        InstrumentationRegistry.getInstrumentation().waitForIdleSync();
+
+        assertThat(mQueue.hasPending(mConversation), is(false));
+        assertThat(mQueue.getEncodingCount(mConversation), is(0));
+    }
+
+    @Test
+    public void testConversationsAreIndependent() throws Exception {
+        final CountDownLatch release = new CountDownLatch(1);
+        final Message other = message();
+        final RecordingListener blocked = new RecordingListener(1);
+        final RecordingListener listener = new RecordingListener(1);
+        runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                mQueue.enqueue(mConversation, new AttachmentEncodingQueue.Encoder() {
+                    @Override
+                    public Message encode() throws Exception {
+                        release.await(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+                        return message();
+                    }
+                }, blocked);
+                mQueue.enqueue(mOtherConversation, other, listener);
+            }
+        });
+
+        assertThat(listener.getDelivered(), is(Arrays.<Object>asList(other)));
+        release.countDown();
+        assertThat(blocked.await(), is(true));
+    }
+
+    private static void runOnMainSync(Runnable runnable) {
+        InstrumentationRegistry.getInstrumentation().runOnMainSync(runnable);
+    }
+
+    private static Conversation conversation(String id) {
+        Conversation conversation = mock(Conversation.class);
+        when(conversation.getId()).thenReturn(Uri.parse("layer:///conversations/" + id));
+        return conversation;
+    }
+
+    private static Message message() {
+        return new MockMessageImpl(new ArrayList<MessagePart>());
+    }
+
+    /**
+     * Records delivered Messages and errors in order.
+     */
+    private static class RecordingListener implements AttachmentEncodingQueue.Listener {
+        private final List<Object> mDelivered = new ArrayList<>();
+        private final CountDownLatch mLatch;
+
+        RecordingListener(int expected) {
+            mLatch = new CountDownLatch(expected);
+        }
+
+        boolean await() throws InterruptedException {
+            return mLatch.await(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        }
+
+        synchronized List<Object> getDelivered() {
+            return new ArrayList<>(mDelivered);
+        }
+
+        @Override
+        public void onEncodingStarted(AttachmentEncodingQueue.Job job) {
+        }
+
+        @Override
+        public synchronized void onEncoded(AttachmentEncodingQueue.Job job, Message message) {
+            mDelivered.add(message);
+            mLatch.countDown();
+        }
+
+        @Override
+        public synchronized void onEncodingFailed(AttachmentEncodingQueue.Job job, Throwable error) {
+            mDelivered.add(error);
+            mLatch.countDown();
+        }
+    }
+}
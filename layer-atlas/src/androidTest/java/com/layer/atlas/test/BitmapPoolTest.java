@@ -0,0 +1,139 @@
+package com.layer.atlas.test;
+
+import android.content.ComponentCallbacks2;
+import android.graphics.Bitmap;
+import android.os.Build;
+import android.support.test.runner.AndroidJUnit4;
+
+import com.layer.atlas.util.BitmapPool;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assume.assumeTrue;
+
+@RunWith(AndroidJUnit4.class)
+public class BitmapPoolTest {
+    private static final int SIZE = 10;
+    // One SIZE x SIZE ARGB_8888 Bitmap
+    private static final int BITMAP_BYTES = SIZE * SIZE * 4;
+
+    private BitmapPool mPool;
+
+    @Before
+    public void setUp() {
+        mPool = new BitmapPool(2 * BITMAP_BYTES);
+    }
+
+    @Test
+    public void testGetAllocatesWhenEmpty() {
+        Bitmap bitmap = mPool.get(SIZE, SIZE, Bitmap.Config.ARGB_8888);
+
+        assertThat(bitmap.getWidth(), is(SIZE));
+        assertThat(bitmap.isMutable(), is(true));
+        assertThat(mPool.getMissCount(), is(1L));
+    }
+
+    @Test
+    public void testGetReusesPooledBitmap() {
+        Bitmap bitmap = Bitmap.createBitmap(SIZE, SIZE, Bitmap.Config.ARGB_8888);
+        bitmap.eraseColor(0xFFFF0000);
+        mPool.put(bitmap);
+
+        assertThat(mPool.getSize(), is((long) BITMAP_BYTES));
+
+        Bitmap reused = mPool.get(SIZE, SIZE, Bitmap.Config.ARGB_8888);
+
+        assertThat(reused == bitmap, is(true));
+        assertThat(reused.getPixel(0, 0), is(0));
+        assertThat(mPool.getHitCount(), is(1L));
+        assertThat(mPool.getSize(), is(0L));
+    }
+
+    @Test
+    public void testGetDoesNotMixConfigs() {
+        mPool.put(Bitmap.createBitmap(SIZE, SIZE, Bitmap.Config.ARGB_8888));
+        Bitmap bitmap = mPool.get(SIZE, SIZE, Bitmap.Config.RGB_565);
+
+        assertThat(bitmap.getConfig(), is(Bitmap.Config.RGB_565));
+        assertThat(mPool.getMissCount(), is(1L));
+    }
+
+    @Test
+    public void testReconfiguresLargerBitmap() {
+        assumeTrue(Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT);
+        Bitmap bitmap = Bitmap.createBitmap(SIZE, SIZE, Bitmap.Config.ARGB_8888);
+        mPool.put(bitmap);
+        Bitmap reused = mPool.get(SIZE - 2, SIZE - 2, Bitmap.Config.ARGB_8888);
+
+        assertThat(reused == bitmap, is(true));
+        assertThat(reused.getWidth(), is(SIZE - 2));
+        assertThat(reused.getHeight(), is(SIZE - 2));
+    }
+
+    @Test
+    public void testDoesNotTieUpMuchLargerBitmap() {
+        mPool.put(Bitmap.createBitmap(SIZE, SIZE, Bitmap.Config.ARGB_8888));
+        Bitmap bitmap = mPool.get(2, 2, Bitmap.Config.ARGB_8888);
+
+        assertThat(bitmap.getWidth(), is(2));
+        assertThat(mPool.getSize(), is((long) BITMAP_BYTES));
+    }
+
+    @Test
+    public void testEvictsLeastRecentlyPooled() {
+        Bitmap first = Bitmap.createBitmap(SIZE, SIZE, Bitmap.Config.ARGB_8888);
+        Bitmap second = Bitmap.createBitmap(SIZE, SIZE, Bitmap.Config.ARGB_8888);
+        Bitmap third = Bitmap.createBitmap(SIZE, SIZE, Bitmap.Config.ARGB_8888);
+        mPool.put(first);
+        mPool.put(second);
+        mPool.put(third);
+
+        assertThat(first.isRecycled(), is(true));
+        assertThat(second.isRecycled(), is(false));
+        assertThat(mPool.getSize(), is((long) 2 * BITMAP_BYTES));
+        assertThat(mPool.getEvictionCount(), is(1L));
+    }
+
+    @Test
+    public void testRecyclesUnpoolableBitmaps() {
+        Bitmap immutable = Bitmap.createBitmap(SIZE, SIZE, Bitmap.Config.ARGB_8888).copy(Bitmap.Config.ARGB_8888, false);
+        Bitmap oversized = Bitmap.createBitmap(3 * SIZE, 3 * SIZE, Bitmap.Config.ARGB_8888);
+        mPool.put(immutable);
+        mPool.put(oversized);
+
+        assertThat(immutable.isRecycled(), is(true));
+        assertThat(oversized.isRecycled(), is(true));
+        assertThat(mPool.getSize(), is(0L));
+    }
+
+    @Test
+    public void testPutTwiceCountsOnce() {
+        Bitmap bitmap = Bitmap.createBitmap(SIZE, SIZE, Bitmap.Config.ARGB_8888);
+        mPool.put(bitmap);
+        mPool.put(bitmap);
+
+        assertThat(mPool.getSize(), is((long) BITMAP_BYTES));
+    }
+
+    @Test
+    public void testTrimMemory() {
+        Bitmap first = Bitmap.createBitmap(SIZE, SIZE, Bitmap.Config.ARGB_8888);
+        Bitmap second = Bitmap.createBitmap(SIZE, SIZE, Bitmap.Config.ARGB_8888);
+        mPool.put(first);
+        mPool.put(second);
+
+        mPool.onTrimMemory(ComponentCallbacks2.TRIM_MEMORY_UI_HIDDEN);
+
+        assertThat(mPool.getSize(), is((long) BITMAP_BYTES));
+        assertThat(first.isRecycled(), is(true));
+
+        mPool.onTrimMemory(ComponentCallbacks2.TRIM_MEMORY_BACKGROUND);
+
+        assertThat(mPool.getSize(), is(0L));
+        assertThat(second.isRecycled(), is(true));
+    }
+}
@@ -0,0 +1,225 @@
+package com.layer.atlas.test;
+
+import android.content.Context;
+import android.net.Uri;
+import android.support.test.runner.AndroidJUnit4;
+import android.view.LayoutInflater;
+import android.view.ViewGroup;
+
+import com.layer.atlas.messagetypes.AtlasCellFactory;
+import com.layer.atlas.messagetypes.CellFactoryIndex;
+import com.layer.atlas.messagetypes.text.TextCellFactory;
+import com.layer.atlas.mock.MockMessageImpl;
+import com.layer.atlas.mock.MockMessagePart;
+import com.layer.sdk.LayerClient;
+import com.layer.sdk.messaging.Message;
+import com.layer.sdk.messaging.MessagePart;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+
+@RunWith(AndroidJUnit4.class)
+public class CellFactoryIndexTest {
+    private static final String TEXT = "text/plain";
+    private static final String IMAGE = "image/jpeg";
+
+    private List<FakeCellFactory> mFactories;
+    private CellFactoryIndex mIndex;
+    private int mNextMessageId;
+
+    @Before
+    public void setUp() {
+        mFactories = new ArrayList<>();
+        mIndex = new CellFactoryIndex(mFactories, false);
+        mNextMessageId = 0;
+    }
+
+    @Test
+    public void testGetSignature() {
+        assertThat(CellFactoryIndex.getSignature(message(TEXT, IMAGE)), is("2|text/plain|image/jpeg"));
+    }
+
+    @Test
+    public void testPicksFirstMatch() {
+        FakeCellFactory first = new FakeCellFactory(TEXT, true);
+        FakeCellFactory second = new FakeCellFactory(TEXT, true);
+        mFactories.add(first);
+        mFactories.add(second);
+
+        assertThat(mIndex.get(message(TEXT)) == first, is(true));
+    }
+
+    @Test
+    public void testNoMatch() {
+        mFactories.add(new FakeCellFactory(TEXT, true));
+
+        assertThat(mIndex.get(message(IMAGE)) == null, is(true));
+    }
+
+    @Test
+    public void testMemoizesMimeTypeMatchersBySignature() {
+        FakeCellFactory text = new FakeCellFactory(TEXT, true);
+        mFactories.add(text);
+        mIndex.get(message(TEXT));
+        mIndex.get(message(TEXT));
+        mIndex.get(message(TEXT));
+
+        assertThat(text.mMatchCount, is(1));
+    }
+
+    @Test
+    public void testAsksContentBasedFactoriesEveryTime() {
+        FakeCellFactory content = new FakeCellFactory(IMAGE, false);
+        FakeCellFactory text = new FakeCellFactory(TEXT, true);
+        mFactories.add(content);
+        mFactories.add(text);
+
+        assertThat(mIndex.get(message(TEXT)) == text, is(true));
+        assertThat(mIndex.get(message(TEXT)) == text, is(true));
+        assertThat(content.mMatchCount, is(2));
+    }
+
+    @Test
+    public void testContentBasedFactoryAheadOfMemoizedMatch() {
+        FakeCellFactory content = new FakeCellFactory(TEXT, false);
+        FakeCellFactory text = new FakeCellFactory(TEXT, true);
+        mFactories.add(content);
+        mFactories.add(text);
+
+        assertThat(mIndex.get(message(TEXT)) == content, is(true));
+        content.mMimeType = IMAGE;
+        assertThat(mIndex.get(message(TEXT)) == text, is(true));
+    }
+
+    @Test
+    public void testInvalidate() {
+        FakeCellFactory first = new FakeCellFactory(TEXT, true);
+        mFactories.add(first);
+        Message message = message(TEXT);
+        assertThat(mIndex.get(message) == first, is(true));
+
+        FakeCellFactory replacement = new FakeCellFactory(TEXT, true);
+        mFactories.add(0, replacement);
+        assertThat(mIndex.get(message) == first, is(true));
+
+        mIndex.invalidate();
+        assertThat(mIndex.get(message) == replacement, is(true));
+    }
+
+    @Test
+    public void testMatchType() {
+        FakeCellFactory text = new FakeCellFactory(TEXT, true);
+        text.mBindable = false;
+        mFactories.add(text);
+        CellFactoryIndex typeIndex = new CellFactoryIndex(mFactories, true);
+
+        assertThat(mIndex.get(message(TEXT)) == null, is(true));
+        assertThat(typeIndex.get(message(TEXT)) == text, is(true));
+    }
+
+    @Test
+    public void testContentBasedSubclassOfBuiltInFactory() {
+        TextCellFactory text = new TextCellFactory();
+        ShoutCellFactory shout = new ShoutCellFactory();
+        List<AtlasCellFactory> factories = new ArrayList<>();
+        factories.add(shout);
+        factories.add(text);
+        CellFactoryIndex index = new CellFactoryIndex(factories, false);
+
+        assertThat(text.isMimeTypeMatcher(), is(true));
+        assertThat(shout.isMimeTypeMatcher(), is(false));
+        // Both Messages share a MIME signature, so a memoized match would route them together
+        assertThat(index.get(textMessage("!hello")) == shout, is(true));
+        assertThat(index.get(textMessage("hello")) == text, is(true));
+    }
+
+    private Message textMessage(String text) {
+        List<MessagePart> parts = new ArrayList<>();
+        parts.add(new MockMessagePart(text.getBytes(), TEXT));
+        return message(parts);
+    }
+
+    private Message message(String... mimeTypes) {
+        List<MessagePart> parts = new ArrayList<>();
+        for (String mimeType : mimeTypes) {
+            parts.add(new MockMessagePart(new byte[0], mimeType));
+        }
+        return message(parts);
+    }
+
+    private Message message(List<MessagePart> parts) {
+        final Uri id = Uri.parse("layer:///messages/" + mNextMessageId++);
+        return new MockMessageImpl(parts) {
+            @Override
+            public Uri getId() {
+                return id;
+            }
+        };
+    }
+
+    /**
+     * An app's TextCellFactory subclass that only binds Messages starting with "!".
+     */
+    private static class ShoutCellFactory extends TextCellFactory {
+        @Override
+        public boolean isBindable(Message message) {
+            return super.isBindable(message) && new String(message.getMessageParts().get(0).getData()).startsWith("!");
+        }
+    }
+
+    private static class FakeCellFactory extends AtlasCellFactory<AtlasCellFactory.CellHolder, AtlasCellFactory.ParsedContent> {
+        private final boolean mMimeTypeMatcher;
+        private String mMimeType;
+        private boolean mBindable = true;
+        private int mMatchCount = 0;
+
+        FakeCellFactory(String mimeType, boolean mimeTypeMatcher) {
+            super(1024);
+            mMimeType = mimeType;
+            mMimeTypeMatcher = mimeTypeMatcher;
+        }
+
+        @Override
+        public boolean isBindable(Message message) {
+            return mBindable && isType(message);
+        }
+
+        @Override
+        public boolean isType(Message message) {
+            mMatchCount++;
+            List<MessagePart> parts = message.getMessageParts();
+            return parts.size() == 1 && parts.get(0).getMimeType().equals(mMimeType);
+        }
+
+        @Override
+        public boolean isMimeTypeMatcher() {
+            return mMimeTypeMatcher;
+        }
+
+        @Override
+        public CellHolder createCellHolder(ViewGroup cellView, boolean isMe, LayoutInflater layoutInflater) {
+            return null;
+        }
+
+        @Override
+        public ParsedContent parseContent(LayerClient layerClient, Message message) {
+            return null;
+        }
+
+        @Override
+        public void bindCellHolder(CellHolder cellHolder, ParsedContent cached, Message message, CellHolderSpecs specs) {
+        }
+
+        @Override
+        public String getPreviewText(Context context, Message message) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package com.layer.atlas.test;
+
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import com.layer.atlas.messagetypes.location.LocationCellFactory;
+import com.layer.atlas.messagetypes.threepartimage.ThreePartImageCellFactory;
+import com.layer.atlas.messagetypes.threepartimage.ThreePartImageUtils;
+import com.layer.atlas.mock.MockLayerClient;
+import com.layer.atlas.mock.MockMessageImpl;
+import com.layer.atlas.mock.MockMessagePart;
+import com.layer.sdk.LayerClient;
+import com.layer.sdk.messaging.Message;
+import com.layer.sdk.messaging.MessagePart;
+
+import org.json.JSONObject;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.List;
+
+@RunWith(AndroidJUnit4.class)
+public class JsonObjectParserBenchmarkTest {
+    private static final String TAG = "JsonParserBenchmark";
+    private static final int WARMUP_ITERATIONS = 2000;
+    private static final int ITERATIONS = 20000;
+
+    private static final byte[] INFO = "{\"orientation\":2, \"width\":3024, \"height\":4032}".getBytes();
+    private static final byte[] LOCATION = "{\"lat\":37.7749,\"lon\":-122.4194,\"label\":\"San Francisco\"}".getBytes();
+
+    private Message mMessage;
+    private Message mLocationMessage;
+    private LocationCellFactory mLocationCellFactory;
+    private LayerClient mLayerClient;
+
+    @Before
+    public void setUp() {
+        List<MessagePart> parts = new ArrayList<>();
+        parts.add(new MockMessagePart(new byte[0], ThreePartImageUtils.MIME_TYPE_IMAGE_JPEG));
+        parts.add(new MockMessagePart(new byte[0], ThreePartImageUtils.MIME_TYPE_PREVIEW));
+        parts.add(new MockMessagePart(INFO, ThreePartImageUtils.MIME_TYPE_INFO));
+        mMessage = new MockMessageImpl(parts);
+
+        List<MessagePart> locationParts = new ArrayList<>();
+        locationParts.add(new MockMessagePart(LOCATION, LocationCellFactory.MIME_TYPE));
+        mLocationMessage = new MockMessageImpl(locationParts);
+        mLocationCellFactory = new LocationCellFactory(null);
+        mLayerClient = new MockLayerClient();
+    }
+
+    @Test
+    public void benchmarkInfo() throws Exception {
+        for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+            parseInfoWithJsonObject();
+            ThreePartImageCellFactory.getInfo(mMessage);
+        }
+
+        long start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            parseInfoWithJsonObject();
+        }
+        long jsonObjectNanos = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            ThreePartImageCellFactory.getInfo(mMessage);
+        }
+        long streamingNanos = System.nanoTime() - start;
+
+        report("Image info", jsonObjectNanos, streamingNanos);
+    }
+
+    @Test
+    public void benchmarkLocation() throws Exception {
+        for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+            parseLocationWithJsonObject();
+            mLocationCellFactory.parseContent(mLayerClient, mLocationMessage);
+        }
+
+        long start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            parseLocationWithJsonObject();
+        }
+        long jsonObjectNanos = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            mLocationCellFactory.parseContent(mLayerClient, mLocationMessage);
+        }
+        long streamingNanos = System.nanoTime() - start;
+
+        report("Location", jsonObjectNanos, streamingNanos);
+    }
+
+    private ThreePartImageCellFactory.Info parseInfoWithJsonObject() throws Exception {
+        ThreePartImageCellFactory.Info info = new ThreePartImageCellFactory.Info();
+        JSONObject infoObject = new JSONObject(new String(ThreePartImageUtils.getInfoPart(mMessage).getData()));
+        info.orientation = infoObject.getInt("orientation");
+        info.width = infoObject.getInt("width");
+        info.height = infoObject.getInt("height");
+        info.previewPartId = ThreePartImageUtils.getPreviewPart(mMessage).getId();
+        info.fullPartId = ThreePartImageUtils.getFullPart(mMessage).getId();
+        return info;
+    }
+
+    private double parseLocationWithJsonObject() throws Exception {
+        JSONObject o = new JSONObject(new String(mLocationMessage.getMessageParts().get(0).getData()));
+        double latitude = o.optDouble(LocationCellFactory.KEY_LATITUDE, 0);
+        double longitude = o.optDouble(LocationCellFactory.KEY_LONGITUDE, 0);
+        String label = o.optString(LocationCellFactory.KEY_LABEL, null);
+        return latitude + longitude + (label == null ? 0 : label.length());
+    }
+
+    private static void report(String name, long jsonObjectNanos, long streamingNanos) {
+        Log.i(TAG, String.format("%s: JSONObject %d ns/parse, JsonObjectParser %d ns/parse",
+                name, jsonObjectNanos / ITERATIONS, streamingNanos / ITERATIONS));
+    }
+}
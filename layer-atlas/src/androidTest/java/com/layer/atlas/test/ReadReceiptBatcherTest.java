@@ -0,0 +1,122 @@
+package com.layer.atlas.test;
+
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+import android.support.test.runner.AndroidJUnit4;
+
+import com.layer.atlas.mock.MockLayerClient;
+import com.layer.atlas.mock.MockMessageImpl;
+import com.layer.atlas.util.ReadReceiptBatcher;
+import com.layer.sdk.messaging.MessagePart;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+
+@RunWith(AndroidJUnit4.class)
+public class ReadReceiptBatcherTest {
+    // Long enough that scheduled flushes never run during a test; tests flush explicitly
+    private static final long FLUSH_INTERVAL_MILLIS = 60 * 1000;
+
+    private ReadReceiptBatcher mBatcher;
+
+    @Before
+    public void setUp() {
+        mBatcher = new ReadReceiptBatcher(new MockLayerClient(), new Handler(Looper.getMainLooper()))
+                .setFlushInterval(FLUSH_INTERVAL_MILLIS);
+    }
+
+    @Test
+    public void testBatchMarksEveryMessage() {
+        RecordingMessage first = new RecordingMessage("a", 1);
+        RecordingMessage second = new RecordingMessage("b", 2);
+        mBatcher.add(first);
+        mBatcher.add(second);
+
+        assertThat(first.mMarkCount, is(0));
+
+        mBatcher.flush();
+
+        assertThat(first.mMarkCount, is(1));
+        assertThat(second.mMarkCount, is(1));
+    }
+
+    @Test
+    public void testNewestMarksGreatestPosition() {
+        RecordingMessage older = new RecordingMessage("a", 1);
+        RecordingMessage newer = new RecordingMessage("b", 2);
+        mBatcher.setStrategy(ReadReceiptBatcher.Strategy.NEWEST);
+        mBatcher.add(newer);
+        mBatcher.add(older);
+        mBatcher.flush();
+
+        assertThat(older.mMarkCount, is(0));
+        assertThat(newer.mMarkCount, is(1));
+    }
+
+    @Test
+    public void testDeduplicatesById() {
+        RecordingMessage message = new RecordingMessage("a", 1);
+        RecordingMessage duplicate = new RecordingMessage("a", 1);
+        mBatcher.add(message);
+        mBatcher.add(duplicate);
+        mBatcher.flush();
+
+        assertThat(message.mMarkCount, is(1));
+        assertThat(duplicate.mMarkCount, is(0));
+    }
+
+    @Test
+    public void testSkipsRecentlyMarked() {
+        RecordingMessage message = new RecordingMessage("a", 1);
+        mBatcher.add(message);
+        mBatcher.flush();
+        mBatcher.add(message);
+        mBatcher.flush();
+
+        assertThat(message.mMarkCount, is(1));
+    }
+
+    @Test
+    public void testClearDropsPending() {
+        RecordingMessage message = new RecordingMessage("a", 1);
+        mBatcher.add(message);
+        mBatcher.clear();
+        mBatcher.flush();
+
+        assertThat(message.mMarkCount, is(0));
+    }
+
+    private static class RecordingMessage extends MockMessageImpl {
+        private final Uri mId;
+        private final long mPosition;
+        private int mMarkCount = 0;
+
+        RecordingMessage(String id, long position) {
+            super(new ArrayList<MessagePart>());
+            mId = Uri.parse("layer:///messages/" + id);
+            mPosition = position;
+        }
+
+        @Override
+        public Uri getId() {
+            return mId;
+        }
+
+        @Override
+        public long getPosition() {
+            return mPosition;
+        }
+
+        @Override
+        public void markAsRead() {
+            mMarkCount++;
+        }
+    }
+}
@@ -0,0 +1,166 @@
+package com.layer.atlas.test;
+
+import android.content.Context;
+import android.net.Uri;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.widget.FrameLayout;
+
+import com.layer.atlas.messagetypes.AtlasCellFactory;
+import com.layer.atlas.messagetypes.CellFactoryStats;
+import com.layer.atlas.messagetypes.MessageStyle;
+import com.layer.atlas.messagetypes.text.TextCellFactory;
+import com.layer.atlas.mock.MockLayerClient;
+import com.layer.atlas.mock.MockMessageImpl;
+import com.layer.atlas.mock.MockMessagePart;
+import com.layer.sdk.LayerClient;
+import com.layer.sdk.messaging.Message;
+import com.layer.sdk.messaging.MessagePart;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Compares TextCellFactory bind-and-measure times for text parsed on the main thread, which is
+ * not measured ahead of binding, against text parsed on a background thread, which is.  Every
+ * Message has its own random words, so neither group benefits from words shaped by the other.
+ */
+@RunWith(AndroidJUnit4.class)
+public class TextCellFactoryBindBenchmarkTest {
+    private static final String TAG = "TextBindBenchmark";
+    private static final String MIME_TYPE = "text/plain";
+    private static final int MESSAGES = 200;
+    private static final int WORDS = 60;
+    private static final String[] EMOJI = {"\uD83D\uDE00", "\uD83D\uDC4D", "\uD83C\uDF89", "\u2764\uFE0F"};
+
+    private final Random mRandom = new Random(42);
+    private Context mContext;
+    private LayerClient mLayerClient;
+    private TextCellFactory mFactory;
+    private int mNextId = 0;
+
+    @Before
+    public void setUp() {
+        mContext = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        mLayerClient = new MockLayerClient();
+        mFactory = new TextCellFactory();
+        float textSize = 16 * mContext.getResources().getDisplayMetrics().scaledDensity;
+        mFactory.setStyle(new MessageStyle.Builder().myTextSize(textSize).otherTextSize(textSize).build());
+    }
+
+    @Test
+    public void benchmarkBind() throws Exception {
+        // Warm up class loading, inflation and the JIT with text neither group uses
+        bindAll(parseOnMainThread(newMessages(20)), new CellFactoryStats());
+
+        final CellFactoryStats cold = new CellFactoryStats();
+        bindAll(parseOnMainThread(newMessages(MESSAGES)), cold);
+
+        final CellFactoryStats warmed = new CellFactoryStats();
+        List<Parsed> background = new ArrayList<>();
+        for (Message message : newMessages(MESSAGES)) {
+            background.add(new Parsed(message, mFactory.getParsedContent(mLayerClient, message)));
+        }
+        bindAll(background, warmed);
+
+        assertThat(cold.snapshot().getBind().getCount(), is((long) MESSAGES));
+        assertThat(warmed.snapshot().getBind().getCount(), is((long) MESSAGES));
+        Log.i(TAG, "Parsed on main thread: bind[" + cold.snapshot().getBind() + "]");
+        Log.i(TAG, "Parsed in background:  bind[" + warmed.snapshot().getBind() + "]");
+    }
+
+    private List<Parsed> parseOnMainThread(final List<Message> messages) {
+        final List<Parsed> parsed = new ArrayList<>();
+        InstrumentationRegistry.getInstrumentation().runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                for (Message message : messages) {
+                    parsed.add(new Parsed(message, mFactory.getParsedContent(mLayerClient, message)));
+                }
+            }
+        });
+        return parsed;
+    }
+
+    /**
+     * Binds each parsed Message to a TextCellFactory cell and measures it, as RecyclerView would
+     * during a fling, recording the combined time.
+     */
+    private void bindAll(final List<Parsed> parsed, final CellFactoryStats stats) {
+        InstrumentationRegistry.getInstrumentation().runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                FrameLayout cell = new FrameLayout(mContext);
+                TextCellFactory.CellHolder holder = mFactory.createCellHolder(cell, false, LayoutInflater.from(mContext));
+                AtlasCellFactory.CellHolderSpecs specs = new AtlasCellFactory.CellHolderSpecs();
+                specs.maxWidth = mContext.getResources().getDisplayMetrics().widthPixels;
+                int widthSpec = View.MeasureSpec.makeMeasureSpec(specs.maxWidth, View.MeasureSpec.AT_MOST);
+                int heightSpec = View.MeasureSpec.makeMeasureSpec(0, View.MeasureSpec.UNSPECIFIED);
+                for (Parsed p : parsed) {
+                    holder.setMessage(p.mMessage);
+                    long start = System.nanoTime();
+                    mFactory.bindCellHolder(holder, p.mInfo, p.mMessage, specs);
+                    cell.measure(widthSpec, heightSpec);
+                    stats.recordBind(System.nanoTime() - start);
+                }
+            }
+        });
+    }
+
+    private List<Message> newMessages(int count) {
+        List<Message> messages = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            messages.add(newMessage(randomText()));
+        }
+        return messages;
+    }
+
+    private Message newMessage(String text) {
+        final Uri id = Uri.parse("layer:///messages/benchmark" + (mNextId++));
+        List<MessagePart> parts = new ArrayList<>();
+        parts.add(new MockMessagePart(text.getBytes(), MIME_TYPE));
+        return new MockMessageImpl(parts) {
+            @Override
+            public Uri getId() {
+                return id;
+            }
+        };
+    }
+
+    private String randomText() {
+        StringBuilder builder = new StringBuilder();
+        for (int w = 0; w < WORDS; w++) {
+            if (w > 0) builder.append(' ');
+            if (mRandom.nextInt(10) == 0) {
+                builder.append(EMOJI[mRandom.nextInt(EMOJI.length)]);
+                continue;
+            }
+            int length = 3 + mRandom.nextInt(8);
+            for (int c = 0; c < length; c++) {
+                builder.append((char) ('a' + mRandom.nextInt(26)));
+            }
+        }
+        return builder.toString();
+    }
+
+    private static class Parsed {
+        final Message mMessage;
+        final TextCellFactory.TextInfo mInfo;
+
+        Parsed(Message message, TextCellFactory.TextInfo info) {
+            mMessage = message;
+            mInfo = info;
+        }
+    }
+}
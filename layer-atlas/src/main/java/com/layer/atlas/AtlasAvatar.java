@@ -2,11 +2,14 @@ package com.layer.atlas;
 
 import android.content.Context;
 import android.graphics.Bitmap;
+import android.graphics.BitmapShader;
 import android.graphics.Canvas;
 import android.graphics.Color;
+import android.graphics.Matrix;
 import android.graphics.Paint;
 import android.graphics.Rect;
 import android.graphics.RectF;
+import android.graphics.Shader;
 import android.graphics.drawable.Drawable;
 import android.text.TextUtils;
 import android.util.AttributeSet;
@@ -15,7 +18,6 @@ import android.view.ViewGroup;
 
 import com.layer.atlas.util.AvatarStyle;
 import com.layer.atlas.util.Util;
-import com.layer.atlas.util.picasso.transformations.CircleTransform;
 import com.layer.sdk.messaging.Identity;
 import com.layer.sdk.messaging.Presence;
 import com.squareup.picasso.Picasso;
@@ -40,17 +42,15 @@ import java.util.concurrent.atomic.AtomicLong;
 public class AtlasAvatar extends View {
     public static final String TAG = AtlasAvatar.class.getSimpleName();
 
-    private final static CircleTransform SINGLE_TRANSFORM = new CircleTransform(TAG + ".single");
-    private final static CircleTransform MULTI_TRANSFORM = new CircleTransform(TAG + ".multi");
-
     private static final Paint PAINT_TRANSPARENT = new Paint();
-    private static final Paint PAINT_BITMAP = new Paint();
 
     private final Paint mPaintInitials = new Paint();
     private final Paint mPaintBorder = new Paint();
     private final Paint mPaintBackground = new Paint();
     private final Paint mPresencePaint = new Paint();
     private final Paint mBackgroundPaint = new Paint();
+    private final Paint mPaintBitmap = new Paint(Paint.ANTI_ALIAS_FLAG | Paint.FILTER_BITMAP_FLAG);
+    private final Matrix mShaderMatrix = new Matrix();
 
     private boolean mShouldShowPresence = true;
 
@@ -62,9 +62,6 @@ public class AtlasAvatar extends View {
     static {
         PAINT_TRANSPARENT.setARGB(0, 255, 255, 255);
         PAINT_TRANSPARENT.setAntiAlias(true);
-
-        PAINT_BITMAP.setARGB(255, 255, 255, 255);
-        PAINT_BITMAP.setAntiAlias(true);
     }
 
     private Picasso mPicasso;
@@ -294,10 +291,11 @@ public class AtlasAvatar extends View {
                     if (targetUrl != null && targetUrl.trim().length() == 0) {
                         targetUrl = null;
                     }
+                    // Loaded square and clipped to a circle in onDraw(), so single and cluster
+                    // avatars of the same size share one cached Bitmap
                     mPicasso.load(targetUrl)
                             .tag(AtlasAvatar.TAG).noPlaceholder().noFade()
                             .centerCrop().resize(size, size)
-                            .transform((avatarCount > 1) ? MULTI_TRANSFORM : SINGLE_TRANSFORM)
                             .into(imageTarget);
                 }
                 mPendingLoads.clear();
@@ -333,7 +331,12 @@ public class AtlasAvatar extends View {
                 canvas.drawCircle(cx, cy, contentRadius, mPaintBackground);
                 canvas.drawText(initials, cx - mRect.centerX(), cy - mRect.centerY() - 1f, mPaintInitials);
             } else {
-                canvas.drawBitmap(bitmap, mContentRect.left, mContentRect.top, PAINT_BITMAP);
+                mShaderMatrix.setScale(mContentRect.width() / bitmap.getWidth(), mContentRect.height() / bitmap.getHeight());
+                mShaderMatrix.postTranslate(mContentRect.left, mContentRect.top);
+                BitmapShader shader = imageTarget.getShader();
+                shader.setLocalMatrix(mShaderMatrix);
+                mPaintBitmap.setShader(shader);
+                canvas.drawCircle(cx, cy, contentRadius, mPaintBitmap);
             }
 
             // Presence
@@ -401,6 +404,7 @@ public class AtlasAvatar extends View {
         private final AtlasAvatar mCluster;
         private String mUrl;
         private Bitmap mBitmap;
+        private BitmapShader mShader;
 
         public ImageTarget(AtlasAvatar cluster) {
             mId = sCounter.incrementAndGet();
@@ -420,23 +424,30 @@ public class AtlasAvatar extends View {
         public void onBitmapLoaded(Bitmap bitmap, Picasso.LoadedFrom from) {
             mCluster.invalidate();
             mBitmap = bitmap;
+            mShader = new BitmapShader(bitmap, Shader.TileMode.CLAMP, Shader.TileMode.CLAMP);
         }
 
         @Override
         public void onBitmapFailed(Drawable errorDrawable) {
             mCluster.invalidate();
             mBitmap = null;
+            mShader = null;
         }
 
         @Override
         public void onPrepareLoad(Drawable placeHolderDrawable) {
             mBitmap = null;
+            mShader = null;
         }
 
         public Bitmap getBitmap() {
             return mBitmap;
         }
 
+        public BitmapShader getShader() {
+            return mShader;
+        }
+
         @Override
         public boolean equals(Object o) {
             if (this == o) return true;
@@ -29,9 +29,17 @@ public class AtlasHistoricMessagesFetchLayout extends SwipeRefreshLayout impleme
         setOnRefreshListener(new OnRefreshListener() {
             @Override
             public void onRefresh() {
+                // In paged mode, page through older local Messages before syncing from the server.
+                // A started page load or sync clears the spinner when its window change or status
+                // change arrives.
+                AtlasMessagesRecyclerView messagesList = findMessagesRecyclerView();
+                if (messagesList != null && messagesList.loadOlderMessages()) return;
                 if (mConversation.getHistoricSyncStatus() == Conversation.HistoricSyncStatus.MORE_AVAILABLE) {
                     mConversation.syncMoreHistoricMessages(mSyncAmount);
+                    return;
                 }
+                // Nothing was left to page or sync
+                refresh();
             }
         });
         return this;
@@ -87,14 +95,33 @@ public class AtlasHistoricMessagesFetchLayout extends SwipeRefreshLayout impleme
                     setRefreshing(false);
                     return;
                 }
+                // Older local Messages can still be paged in after server history is exhausted
                 Conversation.HistoricSyncStatus status = mConversation.getHistoricSyncStatus();
-                setEnabled(status == Conversation.HistoricSyncStatus.MORE_AVAILABLE);
+                AtlasMessagesRecyclerView messagesList = findMessagesRecyclerView();
+                setEnabled(status == Conversation.HistoricSyncStatus.MORE_AVAILABLE
+                        || (messagesList != null && messagesList.hasOlderMessages()));
                 setRefreshing(status == Conversation.HistoricSyncStatus.SYNC_PENDING);
             }
         });
         return this;
     }
 
+    /**
+     * Called by a child AtlasMessagesRecyclerView when its paged window moves, since that can
+     * change whether older local Messages remain to be paged in.
+     */
+    void onPagedWindowChanged() {
+        refresh();
+    }
+
+    private AtlasMessagesRecyclerView findMessagesRecyclerView() {
+        for (int i = 0; i < getChildCount(); i++) {
+            View child = getChildAt(i);
+            if (child instanceof AtlasMessagesRecyclerView) return (AtlasMessagesRecyclerView) child;
+        }
+        return null;
+    }
+
     @Override
     public void onChangeEvent(LayerChangeEvent layerChangeEvent) {
         for (LayerChange change : layerChangeEvent.getChanges()) {
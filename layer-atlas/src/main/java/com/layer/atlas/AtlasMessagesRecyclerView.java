@@ -26,11 +26,18 @@ import android.view.View;
 
 import com.layer.atlas.adapters.AtlasMessagesAdapter;
 import com.layer.atlas.messagetypes.AtlasCellFactory;
+import com.layer.atlas.messagetypes.AttachmentEncodingQueue;
 import com.layer.atlas.messagetypes.MessageStyle;
+import com.layer.atlas.util.MessageQueryWindow;
 import com.layer.atlas.util.itemanimators.NoChangeAnimator;
 import com.layer.atlas.util.views.SwipeableItem;
 import com.layer.sdk.LayerClient;
+import com.layer.sdk.changes.LayerChange;
+import com.layer.sdk.changes.LayerChangeEvent;
+import com.layer.sdk.listeners.LayerChangeEventListener;
 import com.layer.sdk.messaging.Conversation;
+import com.layer.sdk.messaging.Identity;
+import com.layer.sdk.messaging.LayerObject;
 import com.layer.sdk.messaging.Message;
 import com.layer.sdk.query.Predicate;
 import com.layer.sdk.query.Query;
@@ -44,6 +51,35 @@ public class AtlasMessagesRecyclerView extends RecyclerView {
     private boolean mShouldShowAvatarsInOneOnOneConversations;
 
     private MessageStyle mMessageStyle;
+    private AttachmentEncodingQueue mEncodingQueue = AttachmentEncodingQueue.getDefault();
+
+    // Paged mode
+    private LayerClient mLayerClient;
+    private Conversation mConversation;
+    private MessageQueryWindow mQueryWindow;
+    private int mPageSize;
+    private int mMaxPages;
+    private int mPagePrefetchDistance;
+    private AdapterDataObserver mScrollAnchorObserver;
+    private boolean mScrollToEndOnWindowChange;
+
+    // Brings the paged window back to the newest Messages when the user sends one
+    private final LayerChangeEventListener.Weak mLocalSendListener = new LayerChangeEventListener.Weak() {
+        @Override
+        public void onChangeEvent(LayerChangeEvent layerChangeEvent) {
+            if (mQueryWindow == null || !mQueryWindow.hasNewer()) return;
+            Identity me = mLayerClient.getAuthenticatedUser();
+            if (me == null) return;
+            for (LayerChange change : layerChangeEvent.getChanges()) {
+                if (!change.getObjectType().equals(LayerObject.Type.MESSAGE)) continue;
+                if (change.getChangeType() != LayerChange.Type.INSERT) continue;
+                Message message = (Message) change.getObject();
+                if (message.getConversation() != mConversation || !me.equals(message.getSender())) continue;
+                if (mQueryWindow.showNewest()) mScrollToEndOnWindowChange = true;
+                return;
+            }
+        }
+    };
 
     public AtlasMessagesRecyclerView(Context context, AttributeSet attrs, int defStyle) {
         super(context, attrs, defStyle);
@@ -59,6 +95,7 @@ public class AtlasMessagesRecyclerView extends RecyclerView {
     }
 
     public AtlasMessagesRecyclerView init(LayerClient layerClient, Picasso picasso) {
+        mLayerClient = layerClient;
         mLayoutManager = new LinearLayoutManager(getContext(), LinearLayoutManager.VERTICAL, false);
         mLayoutManager.setStackFromEnd(true);
         setLayoutManager(mLayoutManager);
@@ -85,9 +122,22 @@ public class AtlasMessagesRecyclerView extends RecyclerView {
                     factory.onScrollStateChanged(newState);
                 }
             }
+
+            @Override
+            public void onScrolled(RecyclerView recyclerView, int dx, int dy) {
+                if (mQueryWindow == null || dy == 0) return;
+                if (dy < 0 && mLayoutManager.findFirstVisibleItemPosition() <= mPagePrefetchDistance) {
+                    loadOlderMessages();
+                } else if (dy > 0 && mLayoutManager.findLastVisibleItemPosition() >= mAdapter.getItemCount() - 1 - mPagePrefetchDistance) {
+                    loadNewerMessages();
+                }
+            }
         });
 
         setShouldShowAvatarInOneOnOneConversations(mShouldShowAvatarsInOneOnOneConversations);
+
+        // Paged mode may have been requested before there was a LayerClient to query with
+        if (mPageSize > 0) createQueryWindow();
         return this;
     }
 
@@ -100,6 +150,10 @@ public class AtlasMessagesRecyclerView extends RecyclerView {
      * Performs cleanup when the Activity/Fragment using the adapter is destroyed.
      */
     public void onDestroy() {
+        if (mQueryWindow != null) {
+            mQueryWindow.cancel();
+            mLayerClient.unregisterEventListener(mLocalSendListener);
+        }
         if (mAdapter != null) {
             mAdapter.onDestroy();
         }
@@ -128,9 +182,17 @@ public class AtlasMessagesRecyclerView extends RecyclerView {
      * @return This AtlasMessagesRecyclerView.
      */
     public AtlasMessagesRecyclerView setConversation(Conversation conversation) {
+        mConversation = conversation;
+        mScrollToEndOnWindowChange = false;
         if (conversation != null) {
             mAdapter.setReadReceiptsEnabled(conversation.isReadReceiptsEnabled());
         }
+        mAdapter.setEncodingPlaceholders(mEncodingQueue, conversation);
+        if (mQueryWindow != null) {
+            // The window delivers its Query once the newest page's bounds are known
+            mQueryWindow.setConversation(conversation);
+            return this;
+        }
         mAdapter.setQuery(Query.builder(Message.class)
                 .predicate(new Predicate(Message.Property.CONVERSATION, Predicate.Operator.EQUAL_TO, conversation))
                 .sortDescriptor(new SortDescriptor(Message.Property.POSITION, SortDescriptor.Order.ASCENDING))
@@ -138,6 +200,120 @@ public class AtlasMessagesRecyclerView extends RecyclerView {
         return this;
     }
 
+    /**
+     * Sets the AttachmentEncodingQueue whose Jobs for the current Conversation are shown as
+     * placeholders after the newest Message.  Defaults to the shared queue, so it only needs
+     * setting when MessageSender.setEncodingQueue() was given a different one.
+     *
+     * @param encodingQueue AttachmentEncodingQueue the Conversation's MessageSenders use, or `null`
+     *                      to show no placeholders.
+     * @return This AtlasMessagesRecyclerView.
+     */
+    public AtlasMessagesRecyclerView setEncodingQueue(AttachmentEncodingQueue encodingQueue) {
+        mEncodingQueue = encodingQueue;
+        if (mAdapter != null) mAdapter.setEncodingPlaceholders(mEncodingQueue, mConversation);
+        return this;
+    }
+
+    /**
+     * Enables paged mode, where only a sliding window of `pageSize * maxPages` Messages is queried
+     * at once.  The window starts on the newest `pageSize` Messages and extends by a page as the
+     * list scrolls near either end, dropping Messages from the far end once it reaches its maximum
+     * size.  While the window excludes the newest Messages, sending a Message jumps it back to
+     * the newest page.  Must be called before setConversation().
+     *
+     * @param pageSize Number of Messages per page, or 0 to query every Message in the Conversation.
+     * @param maxPages Maximum number of pages kept loaded at once.
+     * @return This AtlasMessagesRecyclerView.
+     * @see MessageQueryWindow
+     */
+    public AtlasMessagesRecyclerView setPagedMode(int pageSize, int maxPages) {
+        if (pageSize > 0 && maxPages < 1) throw new IllegalArgumentException("Page count must be positive");
+        mPageSize = Math.max(0, pageSize);
+        mMaxPages = maxPages;
+        if (mQueryWindow != null) {
+            mQueryWindow.cancel();
+            mQueryWindow = null;
+            mLayerClient.unregisterEventListener(mLocalSendListener);
+        }
+        // Before init() there is no LayerClient yet, so init() creates the window instead
+        if (mPageSize > 0 && mLayerClient != null) createQueryWindow();
+        return this;
+    }
+
+    /**
+     * @return `true` if paged mode is on and older local Messages fall outside the window.
+     * @see #setPagedMode(int, int)
+     */
+    public boolean hasOlderMessages() {
+        return mQueryWindow != null && mQueryWindow.hasOlder();
+    }
+
+    private void createQueryWindow() {
+        mQueryWindow = new MessageQueryWindow(mLayerClient, new MessageQueryWindow.Callback() {
+            @Override
+            public void onWindowChanged(MessageQueryWindow window, Query<Message> query) {
+                mAdapter.setQuery(query).refresh();
+                if (getParent() instanceof AtlasHistoricMessagesFetchLayout) {
+                    ((AtlasHistoricMessagesFetchLayout) getParent()).onPagedWindowChanged();
+                }
+                if (mScrollToEndOnWindowChange) {
+                    mScrollToEndOnWindowChange = false;
+                    int end = mAdapter.getItemCount() - 1;
+                    if (end >= 0) scrollToPosition(end);
+                }
+            }
+        }).setPageSize(mPageSize, mMaxPages);
+        mPagePrefetchDistance = Math.max(1, mPageSize / 4);
+        mLayerClient.registerEventListener(mLocalSendListener);
+    }
+
+    /**
+     * Extends the paged window toward older local Messages, keeping the current scroll position.
+     *
+     * @return `true` if older local Messages are being loaded, or `false` if paged mode is off or
+     * the window already includes the oldest local Message.
+     * @see #setPagedMode(int, int)
+     */
+    public boolean loadOlderMessages() {
+        if (mQueryWindow == null || !mQueryWindow.hasOlder() || mQueryWindow.isLoading()) return false;
+        preserveScrollAnchor();
+        return mQueryWindow.extendOlder();
+    }
+
+    private boolean loadNewerMessages() {
+        if (mQueryWindow == null || !mQueryWindow.hasNewer() || mQueryWindow.isLoading()) return false;
+        preserveScrollAnchor();
+        return mQueryWindow.extendNewer();
+    }
+
+    /**
+     * Records the first visible Message and its offset, and restores them after the next full data
+     * set change so re-querying the window does not move what the user is looking at.
+     */
+    private void preserveScrollAnchor() {
+        int anchorPosition = mLayoutManager.findFirstVisibleItemPosition();
+        if (anchorPosition == NO_POSITION) return;
+        final Message anchor = mAdapter.getItem(anchorPosition);
+        if (anchor == null) return;
+        View anchorView = mLayoutManager.findViewByPosition(anchorPosition);
+        final int anchorOffset = (anchorView == null) ? 0 : anchorView.getTop() - getPaddingTop();
+
+        if (mScrollAnchorObserver != null) mAdapter.unregisterAdapterDataObserver(mScrollAnchorObserver);
+        mScrollAnchorObserver = new AdapterDataObserver() {
+            @Override
+            public void onChanged() {
+                mAdapter.unregisterAdapterDataObserver(this);
+                mScrollAnchorObserver = null;
+                Integer position = mAdapter.getPosition(anchor);
+                if (position != null && position >= 0) {
+                    mLayoutManager.scrollToPositionWithOffset(position, anchorOffset);
+                }
+            }
+        };
+        mAdapter.registerAdapterDataObserver(mScrollAnchorObserver);
+    }
+
     public AtlasMessagesRecyclerView setOnMessageSwipeListener(SwipeableItem.OnSwipeListener<Message> listener) {
         if (mSwipeItemTouchHelper != null) {
             mSwipeItemTouchHelper.attachToRecyclerView(null);
@@ -10,6 +10,7 @@ import android.widget.TextView;
 import com.layer.atlas.AtlasAvatar;
 import com.layer.atlas.R;
 import com.layer.atlas.messagetypes.AtlasCellFactory;
+import com.layer.atlas.messagetypes.CellFactoryIndex;
 import com.layer.atlas.messagetypes.generic.GenericCellFactory;
 import com.layer.atlas.messagetypes.location.LocationCellFactory;
 import com.layer.atlas.messagetypes.singlepartimage.SinglePartImageCellFactory;
@@ -51,9 +52,11 @@ public class AtlasConversationsAdapter extends RecyclerView.Adapter<AtlasConvers
     private final DateFormat mTimeFormat;
     private ConversationStyle conversationStyle;
     private final IdentityRecyclerViewEventListener mIdentityEventListener;
+    private final StableIdTable mStableIds = new StableIdTable();
 
     protected Set<AtlasCellFactory> mCellFactories;
     private Set<AtlasCellFactory> mDefaultCellFactories;
+    private CellFactoryIndex mPreviewIndex;
 
     protected ConversationFormatter mConversationFormatter;
     protected boolean mShouldShowAvatarPresence = true;
@@ -95,7 +98,7 @@ public class AtlasConversationsAdapter extends RecyclerView.Adapter<AtlasConvers
                 return mConversationClickListener.onConversationLongClick(AtlasConversationsAdapter.this, viewHolder.getConversation());
             }
         };
-        setHasStableIds(false);
+        setHasStableIds(true);
 
         mIdentityEventListener = new IdentityRecyclerViewEventListener(this);
         mLayerClient.registerEventListener(mIdentityEventListener);
@@ -106,6 +109,7 @@ public class AtlasConversationsAdapter extends RecyclerView.Adapter<AtlasConvers
             mCellFactories = new LinkedHashSet<>();
         }
         Collections.addAll(mCellFactories, cellFactories);
+        mPreviewIndex = null;
         return this;
     }
 
@@ -243,6 +247,13 @@ public class AtlasConversationsAdapter extends RecyclerView.Adapter<AtlasConvers
         return mQueryController.getItemCount();
     }
 
+    @Override
+    public long getItemId(int position) {
+        Conversation conversation = mQueryController.getItem(position);
+        if (conversation == null) return RecyclerView.NO_ID;
+        return mStableIds.getId(conversation.getId());
+    }
+
     @Override
     public Integer getPosition(Conversation conversation) {
         return mQueryController.getPosition(conversation);
@@ -268,12 +279,14 @@ public class AtlasConversationsAdapter extends RecyclerView.Adapter<AtlasConvers
     //==============================================================================================
 
     private String getLastMessageString(Context context, Message message) {
-        Set<AtlasCellFactory> cellFactories = (mCellFactories == null || mCellFactories.isEmpty()) ? getDefaultCellFactories() : mCellFactories;
+        if (mPreviewIndex == null) {
+            Set<AtlasCellFactory> cellFactories = (mCellFactories == null || mCellFactories.isEmpty()) ? getDefaultCellFactories() : mCellFactories;
+            mPreviewIndex = new CellFactoryIndex(cellFactories, true);
+        }
 
-        for (AtlasCellFactory cellFactory : cellFactories) {
-            if (cellFactory.isType(message)) {
-                return cellFactory.getPreviewText(context, message);
-            }
+        AtlasCellFactory cellFactory = mPreviewIndex.get(message);
+        if (cellFactory != null) {
+            return cellFactory.getPreviewText(context, message);
         }
 
         return GenericCellFactory.getPreview(context, message);
@@ -4,8 +4,10 @@ import android.content.Context;
 import android.net.Uri;
 import android.os.Handler;
 import android.os.Looper;
+import android.support.v7.widget.LinearLayoutManager;
 import android.support.v7.widget.RecyclerView;
 import android.util.DisplayMetrics;
+import android.util.LruCache;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
@@ -16,25 +18,40 @@ import android.widget.TextView;
 import com.layer.atlas.AtlasAvatar;
 import com.layer.atlas.R;
 import com.layer.atlas.messagetypes.AtlasCellFactory;
+import com.layer.atlas.messagetypes.AttachmentEncodingQueue;
+import com.layer.atlas.messagetypes.CellFactoryIndex;
+import com.layer.atlas.messagetypes.CellFactoryStats;
 import com.layer.atlas.messagetypes.MessageStyle;
+import com.layer.atlas.messagetypes.ParsedContentCache;
+import com.layer.atlas.messagetypes.ParsedContentDiskCache;
+import com.layer.atlas.util.BitmapPool;
 import com.layer.atlas.util.IdentityRecyclerViewEventListener;
 import com.layer.atlas.util.Log;
-import com.layer.atlas.util.Util;
+import com.layer.atlas.util.ReadReceiptBatcher;
+import com.layer.atlas.util.RecipientStatusAggregator;
 import com.layer.sdk.LayerClient;
+import com.layer.sdk.messaging.Conversation;
 import com.layer.sdk.messaging.Identity;
 import com.layer.sdk.messaging.Message;
+import com.layer.sdk.messaging.MessagePart;
 import com.layer.sdk.query.ListViewController;
 import com.layer.sdk.query.Query;
 import com.layer.sdk.query.RecyclerViewController;
 import com.squareup.picasso.Picasso;
 
 import java.text.DateFormat;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
 
 /**
  * AtlasMessagesAdapter drives an AtlasMessagesList.  The AtlasMessagesAdapter itself handles
@@ -62,6 +79,7 @@ import java.util.Set;
  */
 public class AtlasMessagesAdapter extends RecyclerView.Adapter<AtlasMessagesAdapter.ViewHolder> implements AtlasBaseAdapter<Message>, RecyclerViewController.Callback {
     private final static int VIEW_TYPE_FOOTER = 0;
+    private final static int VIEW_TYPE_ENCODING = -2;
 
     protected final LayerClient mLayerClient;
     protected final Picasso mPicasso;
@@ -78,16 +96,62 @@ public class AtlasMessagesAdapter extends RecyclerView.Adapter<AtlasMessagesAdap
     protected final Map<Integer, CellType> mCellTypesByViewType = new HashMap<Integer, CellType>();
     protected final Map<AtlasCellFactory, Integer> mMyViewTypesByCell = new HashMap<AtlasCellFactory, Integer>();
     protected final Map<AtlasCellFactory, Integer> mTheirViewTypesByCell = new HashMap<AtlasCellFactory, Integer>();
+    private final CellFactoryIndex mCellFactoryIndex = new CellFactoryIndex(mCellFactories, false);
 
     // Dates and Clustering
-    private final Map<Uri, Cluster> mClusterCache = new HashMap<Uri, Cluster>();
+    private static final byte LINK_DATE_BOUNDARY = 0x10;
+    private static final byte LINK_NONE = 0x20;
+    private final MessageClusterTable mClusterTable = new MessageClusterTable();
+    // Coalesces cluster and receipt rebinds into one notify per item per frame
+    private final FrameUpdateScheduler<Message> mFrameUpdates;
     private final DateFormat mDateFormat;
-    private final DateFormat mTimeFormat;
+
+    // Bind models
+    private static final int BIND_MODEL_CACHE_SIZE = 512;
+    private static final int BIND_MODEL_PREFETCH_COUNT = 10;
+    private final Context mContext;
+    private final Object mBindModelLock = new Object();
+    private final LruCache<Uri, MessageBindModel> mBindModels = new LruCache<Uri, MessageBindModel>(BIND_MODEL_CACHE_SIZE);
+    // Bumped whenever models are invalidated, so models built from older data are not cached
+    private int mBindModelGeneration = 0;
+    private final ThreadLocal<MessageBindModel.Formatter> mBindModelFormatters = new ThreadLocal<MessageBindModel.Formatter>() {
+        @Override
+        protected MessageBindModel.Formatter initialValue() {
+            return new MessageBindModel.Formatter(mContext);
+        }
+    };
+    private ExecutorService mBindModelExecutor;
+    private int mLastPrefetchStart = -1;
+    private final int mMaxCellHeight;
+
+    // Parsing
+    private final ParseScheduler mParseScheduler;
+    private int mLastVisibleParseStart = -1;
+    private int mLastVisibleParseEnd = -1;
+    private ParsedContentDiskCache mParsedContentDiskCache;
+
+    // Statistics
+    private long mStatsDumpIntervalMillis = 0;
 
     private View mFooterView;
-    private int mFooterPosition = 0;
+    private int mMessageCount = 0;
+
+    // Placeholders for outgoing attachments still being encoded, between the Messages and footer
+    private AttachmentEncodingQueue mEncodingQueue;
+    private Conversation mEncodingConversation;
+    private final List<AttachmentEncodingQueue.Job> mEncodingJobs = new ArrayList<AttachmentEncodingQueue.Job>();
+    // Longest a sent Job's placeholder waits for its Message to reach the Query
+    private static final long SENT_PLACEHOLDER_TIMEOUT_MILLIS = 3000;
+
+    // Stable IDs
+    private static final long FOOTER_ITEM_ID = StableIdTable.FIRST_ID - 1;
+    // Placeholder IDs count down from below RecyclerView.NO_ID, since Job IDs start at 0
+    private static final long FIRST_ENCODING_ITEM_ID = RecyclerView.NO_ID - 1;
+    private final StableIdTable mStableIds = new StableIdTable();
 
     private Integer mRecipientStatusPosition;
+    private final ReadReceiptBatcher mReadReceiptBatcher;
+    private final RecipientStatusAggregator mRecipientStatusAggregator;
 
     //Style
     private MessageStyle mMessageStyle;
@@ -98,30 +162,58 @@ public class AtlasMessagesAdapter extends RecyclerView.Adapter<AtlasMessagesAdap
     protected boolean mShouldShowAvatarPresence = true;
 
     public AtlasMessagesAdapter(Context context, LayerClient layerClient, Picasso picasso) {
+        mContext = context.getApplicationContext();
         mLayerClient = layerClient;
         mPicasso = picasso;
         mLayoutInflater = LayoutInflater.from(context);
         mUiThreadHandler = new Handler(Looper.getMainLooper());
+        mReadReceiptBatcher = new ReadReceiptBatcher(layerClient, mUiThreadHandler);
+        mFrameUpdates = new FrameUpdateScheduler<>(this);
         mDateFormat = android.text.format.DateFormat.getDateFormat(context);
-        mTimeFormat = android.text.format.DateFormat.getTimeFormat(context);
         mDisplayMetrics = context.getResources().getDisplayMetrics();
+        mMaxCellHeight = (int) context.getResources().getDimension(R.dimen.atlas_messages_max_cell_height);
+        mParseScheduler = new ParseScheduler(layerClient);
+        ParsedContentCache.getDefault().registerComponentCallbacks(context);
+        BitmapPool.getDefault().registerComponentCallbacks(context);
         mQueryController = layerClient.newRecyclerViewController(null, null, this);
         mQueryController.setPreProcessCallback(new ListViewController.PreProcessCallback<Message>() {
             @Override
             public void onCache(ListViewController listViewController, Message message) {
-                for (AtlasCellFactory factory : mCellFactories) {
-                    if (factory.isBindable(message)) {
-                        factory.getParsedContent(mLayerClient, message);
-                        break;
-                    }
+                getBindModel(message);
+                AtlasCellFactory factory = getCellFactory(message);
+                if (factory != null) {
+                    mParseScheduler.schedule(factory, message, ParseScheduler.Priority.BACKGROUND);
                 }
             }
         });
 
-        setHasStableIds(false);
+        setHasStableIds(true);
 
-        mIdentityEventListener = new IdentityRecyclerViewEventListener(this);
+        mIdentityEventListener = new IdentityRecyclerViewEventListener(this, Payload.SENDER_IDENTITY) {
+            @Override
+            protected void onIdentityChanged(Identity identity) {
+                // Sender names are baked into bind models; identity changes are rare enough to
+                // simply rebuild every model on demand.
+                synchronized (mBindModels) {
+                    mBindModelGeneration++;
+                    mBindModels.evictAll();
+                }
+            }
+        };
         mLayerClient.registerEventListener(mIdentityEventListener);
+
+        mRecipientStatusAggregator = new RecipientStatusAggregator(layerClient, new RecipientStatusAggregator.Callback() {
+            @Override
+            public void onRecipientStatusChanged(Message message, RecipientStatusAggregator.Counts counts) {
+                if (mRecipientStatusPosition == null) return;
+                Integer position = getPosition(message, mRecipientStatusPosition);
+                if (position != null && position.equals(mRecipientStatusPosition)) {
+                    // The same change usually also arrives through onQueryItemChanged()
+                    mFrameUpdates.schedule(message, position, Payload.RECEIPT);
+                }
+            }
+        });
+        mLayerClient.registerEventListener(mRecipientStatusAggregator);
     }
 
     /**
@@ -147,10 +239,26 @@ public class AtlasMessagesAdapter extends RecyclerView.Adapter<AtlasMessagesAdap
      */
     public void onDestroy() {
         mLayerClient.unregisterEventListener(mIdentityEventListener);
+        mLayerClient.unregisterEventListener(mRecipientStatusAggregator);
+        mReadReceiptBatcher.flush();
+        mFrameUpdates.cancel();
+        mUiThreadHandler.removeCallbacks(mStatsDumpRunnable);
+        mUiThreadHandler.removeCallbacks(mSentPlaceholderTimeout);
+        mParseScheduler.shutdown();
+        if (mEncodingQueue != null) mEncodingQueue.removeObserver(mEncodingObserver);
+        if (mRecyclerView != null) mRecyclerView.removeOnScrollListener(mScrollListener);
+        synchronized (mBindModelLock) {
+            if (mBindModelExecutor != null) {
+                mBindModelExecutor.shutdownNow();
+                mBindModelExecutor = null;
+            }
+        }
     }
 
     public AtlasMessagesAdapter setRecyclerView(RecyclerView recyclerView) {
+        if (mRecyclerView != null) mRecyclerView.removeOnScrollListener(mScrollListener);
         mRecyclerView = recyclerView;
+        if (mRecyclerView != null) mRecyclerView.addOnScrollListener(mScrollListener);
         return this;
     }
 
@@ -163,15 +271,16 @@ public class AtlasMessagesAdapter extends RecyclerView.Adapter<AtlasMessagesAdap
         boolean wasNull = mFooterView == null;
         mFooterView = footerView;
 
+        int footerPosition = getFooterPosition();
         if (wasNull && !isNull) {
             // Insert
-            notifyItemInserted(mFooterPosition);
+            notifyItemInserted(footerPosition);
         } else if (!wasNull && isNull) {
             // Delete
-            notifyItemRemoved(mFooterPosition);
+            notifyItemRemoved(footerPosition);
         } else if (!wasNull && !isNull) {
             // Change
-            notifyItemChanged(mFooterPosition);
+            notifyItemChanged(footerPosition);
         }
     }
 
@@ -179,6 +288,124 @@ public class AtlasMessagesAdapter extends RecyclerView.Adapter<AtlasMessagesAdap
         return mFooterView;
     }
 
+    /**
+     * Shows a placeholder outgoing cell after the last Message for each attachment the given
+     * AttachmentEncodingQueue is still building for the given Conversation.
+     *
+     * @param queue        AttachmentEncodingQueue used by this Conversation's MessageSenders.
+     * @param conversation Conversation this adapter displays, or `null` to show no placeholders.
+     * @return This AtlasMessagesAdapter.
+     */
+    public AtlasMessagesAdapter setEncodingPlaceholders(AttachmentEncodingQueue queue, Conversation conversation) {
+        if (mEncodingQueue != null) mEncodingQueue.removeObserver(mEncodingObserver);
+        mEncodingQueue = queue;
+        mEncodingConversation = conversation;
+        if (mEncodingQueue != null) mEncodingQueue.addObserver(mEncodingObserver);
+        updateEncodingPlaceholders();
+        return this;
+    }
+
+    private final AttachmentEncodingQueue.Observer mEncodingObserver = new AttachmentEncodingQueue.Observer() {
+        @Override
+        public void onEncodingCountChanged(AttachmentEncodingQueue queue, Uri conversationId) {
+            if (mEncodingConversation != null && mEncodingConversation.getId().equals(conversationId)) {
+                updateEncodingPlaceholders();
+            }
+        }
+    };
+
+    /**
+     * Matches placeholders to the queue's pending Jobs: new Jobs get one after the rest, and failed
+     * or aborted Jobs lose theirs.  A sent Job keeps its placeholder until its Message is inserted
+     * by the Query, so the Message replaces it in one step instead of the list shrinking and
+     * growing again.  Jobs never reorder, so placeholders keep their positions.
+     */
+    private void updateEncodingPlaceholders() {
+        List<AttachmentEncodingQueue.Job> jobs = getQueuedEncodingJobs();
+        boolean awaitingInsert = false;
+        for (int i = mEncodingJobs.size() - 1; i >= 0; i--) {
+            AttachmentEncodingQueue.Job job = mEncodingJobs.get(i);
+            if (jobs.contains(job)) continue;
+            if (isAwaitingInsert(job)) {
+                awaitingInsert = true;
+                continue;
+            }
+            mEncodingJobs.remove(i);
+            notifyItemRemoved(mMessageCount + i);
+        }
+        for (AttachmentEncodingQueue.Job job : jobs) {
+            if (!mEncodingJobs.contains(job)) {
+                mEncodingJobs.add(job);
+                notifyItemInserted(mMessageCount + mEncodingJobs.size() - 1);
+            }
+        }
+        if (awaitingInsert) {
+            mUiThreadHandler.removeCallbacks(mSentPlaceholderTimeout);
+            mUiThreadHandler.postDelayed(mSentPlaceholderTimeout, SENT_PLACEHOLDER_TIMEOUT_MILLIS);
+        }
+    }
+
+    /**
+     * Returns `true` if a delivered Job sent a Message for this Conversation that the Query has not
+     * inserted yet.
+     */
+    private boolean isAwaitingInsert(AttachmentEncodingQueue.Job job) {
+        Message sent = job.getMessage();
+        if (sent == null || mEncodingConversation == null) return false;
+        if (!job.getConversation().getId().equals(mEncodingConversation.getId())) return false;
+        Integer position = getPosition(sent);
+        return position == null || position < 0;
+    }
+
+    private List<AttachmentEncodingQueue.Job> getQueuedEncodingJobs() {
+        return (mEncodingQueue == null || mEncodingConversation == null)
+                ? Collections.<AttachmentEncodingQueue.Job>emptyList()
+                : mEncodingQueue.getEncodingJobs(mEncodingConversation);
+    }
+
+    /**
+     * Removes the placeholder of a sent Job whose Message the Query just inserted.
+     */
+    private void removeSentPlaceholder(Message message) {
+        if (message == null) return;
+        for (int i = 0; i < mEncodingJobs.size(); i++) {
+            Message sent = mEncodingJobs.get(i).getMessage();
+            if (sent != null && sent.getId().equals(message.getId())) {
+                mEncodingJobs.remove(i);
+                notifyItemRemoved(mMessageCount + i);
+                return;
+            }
+        }
+    }
+
+    /**
+     * Removes placeholders of sent Jobs whose Message never reached the Query, for example because
+     * the Query excludes it.
+     */
+    private final Runnable mSentPlaceholderTimeout = new Runnable() {
+        @Override
+        public void run() {
+            List<AttachmentEncodingQueue.Job> jobs = getQueuedEncodingJobs();
+            for (int i = mEncodingJobs.size() - 1; i >= 0; i--) {
+                if (jobs.contains(mEncodingJobs.get(i))) continue;
+                mEncodingJobs.remove(i);
+                notifyItemRemoved(mMessageCount + i);
+            }
+        }
+    };
+
+    private int getFooterPosition() {
+        return mMessageCount + mEncodingJobs.size();
+    }
+
+    private boolean isFooter(int position) {
+        return mFooterView != null && position == getFooterPosition();
+    }
+
+    private boolean isEncodingPlaceholder(int position) {
+        return position >= mMessageCount && position < mMessageCount + mEncodingJobs.size();
+    }
+
     /**
      * @return If the Avatar for the other participant in a one on one conversation  will be shown
      * or not
@@ -221,8 +448,114 @@ public class AtlasMessagesAdapter extends RecyclerView.Adapter<AtlasMessagesAdap
      */
     public void setReadReceiptsEnabled(boolean readReceiptsEnabled) {
         mReadReceiptsEnabled = readReceiptsEnabled;
+        if (!readReceiptsEnabled) mReadReceiptBatcher.clear();
+    }
+
+    /**
+     * Sets how long to wait after scrolling goes idle before marking newly visible Messages as
+     * read.
+     *
+     * @param flushIntervalMillis Delay in milliseconds.  Defaults to
+     *                            {@link ReadReceiptBatcher#DEFAULT_FLUSH_INTERVAL_MILLIS}.
+     * @return This AtlasMessagesAdapter.
+     */
+    public AtlasMessagesAdapter setReadReceiptFlushInterval(long flushIntervalMillis) {
+        mReadReceiptBatcher.setFlushInterval(flushIntervalMillis);
+        return this;
+    }
+
+    /**
+     * Sets which newly visible Messages get marked as read when a batch is flushed.
+     *
+     * @param strategy Strategy to use.  Defaults to {@link ReadReceiptBatcher.Strategy#BATCH}.
+     * @return This AtlasMessagesAdapter.
+     */
+    public AtlasMessagesAdapter setReadReceiptStrategy(ReadReceiptBatcher.Strategy strategy) {
+        mReadReceiptBatcher.setStrategy(strategy);
+        return this;
+    }
+
+    /**
+     * Sets how many positions around the most recently bound Messages retain cached clustering.
+     * Clustering outside this window is evicted and recomputed from neighboring Messages on the
+     * next bind.
+     *
+     * @param positions Number of positions to cache clustering for.  Defaults to 1024.
+     * @return This AtlasMessagesAdapter.
+     */
+    public AtlasMessagesAdapter setClusterCacheCapacity(int positions) {
+        mClusterTable.setCapacity(positions);
+        return this;
+    }
+
+    /**
+     * @return The number of bytes retained by the clustering cache.
+     */
+    public int getClusterCacheFootprint() {
+        return mClusterTable.getFootprintBytes();
+    }
+
+
+    //==============================================================================================
+    // Statistics
+    //==============================================================================================
+
+    /**
+     * Returns parse, create, and bind timings and cache hit rates for each registered
+     * AtlasCellFactory, useful for finding which Message types cause dropped frames.
+     *
+     * @return Snapshots of each registered AtlasCellFactory's statistics, in registration order.
+     */
+    public Map<AtlasCellFactory, CellFactoryStats.Snapshot> getCellFactoryStats() {
+        Map<AtlasCellFactory, CellFactoryStats.Snapshot> stats = new LinkedHashMap<AtlasCellFactory, CellFactoryStats.Snapshot>();
+        for (AtlasCellFactory factory : mCellFactories) {
+            stats.put(factory, factory.getStats().snapshot());
+        }
+        return stats;
+    }
+
+    /**
+     * Clears statistics for every registered AtlasCellFactory.
+     */
+    public void resetCellFactoryStats() {
+        for (AtlasCellFactory factory : mCellFactories) {
+            factory.getStats().reset();
+        }
+    }
+
+    /**
+     * Periodically writes every registered AtlasCellFactory's statistics, and the shared
+     * BitmapPool's hit rate, to the performance log.  Dumps only happen while performance logging
+     * is enabled.
+     *
+     * @param intervalMillis Time between dumps in milliseconds, or 0 to stop dumping.
+     * @return This AtlasMessagesAdapter.
+     * @see Log#isPerfLoggable()
+     */
+    public AtlasMessagesAdapter setCellFactoryStatsDumpInterval(long intervalMillis) {
+        mStatsDumpIntervalMillis = Math.max(0, intervalMillis);
+        mUiThreadHandler.removeCallbacks(mStatsDumpRunnable);
+        if (mStatsDumpIntervalMillis > 0) {
+            mUiThreadHandler.postDelayed(mStatsDumpRunnable, mStatsDumpIntervalMillis);
+        }
+        return this;
     }
 
+    private final Runnable mStatsDumpRunnable = new Runnable() {
+        @Override
+        public void run() {
+            if (Log.isPerfLoggable()) {
+                for (Map.Entry<AtlasCellFactory, CellFactoryStats.Snapshot> entry : getCellFactoryStats().entrySet()) {
+                    Log.perf(entry.getKey().getClass().getSimpleName() + " " + entry.getValue());
+                }
+                Log.perf(BitmapPool.getDefault().toString());
+            }
+            if (mStatsDumpIntervalMillis > 0) {
+                mUiThreadHandler.postDelayed(this, mStatsDumpIntervalMillis);
+            }
+        }
+    };
+
 
     //==============================================================================================
     // Listeners
@@ -241,6 +574,78 @@ public class AtlasMessagesAdapter extends RecyclerView.Adapter<AtlasMessagesAdap
         return this;
     }
 
+    /**
+     * Tracks scrolling to prefetch bind models ahead of the visible range and to hold read receipts
+     * until scrolling goes idle.
+     */
+    private final RecyclerView.OnScrollListener mScrollListener = new RecyclerView.OnScrollListener() {
+        @Override
+        public void onScrollStateChanged(RecyclerView recyclerView, int newState) {
+            mReadReceiptBatcher.setScrolling(newState != RecyclerView.SCROLL_STATE_IDLE);
+        }
+
+        @Override
+        public void onScrolled(RecyclerView recyclerView, int dx, int dy) {
+            if (dy == 0 || !(recyclerView.getLayoutManager() instanceof LinearLayoutManager)) return;
+            LinearLayoutManager layoutManager = (LinearLayoutManager) recyclerView.getLayoutManager();
+            int first = layoutManager.findFirstVisibleItemPosition();
+            int last = layoutManager.findLastVisibleItemPosition();
+            if (first == RecyclerView.NO_POSITION) return;
+            int lookaheadStart = (dy > 0) ? last + 1 : first - BIND_MODEL_PREFETCH_COUNT;
+            prefetchBindModels(lookaheadStart, BIND_MODEL_PREFETCH_COUNT);
+            prefetchParsedContent(first, last, lookaheadStart);
+        }
+    };
+
+
+    //==============================================================================================
+    // Parsing
+    //==============================================================================================
+
+    /**
+     * Persists parsed content for registered factories that provide a ParsedContentSerializer, so
+     * Messages bind from disk without re-parsing after the process restarts.  Applies to factories
+     * registered before and after this call.
+     *
+     * @param diskCache ParsedContentDiskCache to use, or `null` to stop persisting.
+     * @return This AtlasMessagesAdapter.
+     * @see ParsedContentDiskCache#create(Context, long)
+     */
+    public AtlasMessagesAdapter setParsedContentDiskCache(ParsedContentDiskCache diskCache) {
+        mParsedContentDiskCache = diskCache;
+        for (AtlasCellFactory factory : mCellFactories) {
+            factory.setParsedContentDiskCache(diskCache);
+        }
+        return this;
+    }
+
+    /**
+     * Queues parsing for the visible range ahead of the lookahead range in the scroll direction.
+     * Only runs when the visible range changes.
+     */
+    private void prefetchParsedContent(int firstVisible, int lastVisible, int lookaheadStart) {
+        if (firstVisible == mLastVisibleParseStart && lastVisible == mLastVisibleParseEnd) return;
+        mLastVisibleParseStart = firstVisible;
+        mLastVisibleParseEnd = lastVisible;
+        scheduleParse(firstVisible, lastVisible - firstVisible + 1, ParseScheduler.Priority.VISIBLE);
+        scheduleParse(lookaheadStart, BIND_MODEL_PREFETCH_COUNT, ParseScheduler.Priority.LOOKAHEAD);
+    }
+
+    private void scheduleParse(int positionStart, int itemCount, ParseScheduler.Priority priority) {
+        int start = Math.max(0, positionStart);
+        int end = Math.min(positionStart + itemCount, mQueryController.getItemCount());
+        for (int position = start; position < end; position++) {
+            Message message = mQueryController.getItem(position);
+            if (message == null) continue;
+            AtlasCellFactory factory = getCellFactory(message);
+            if (factory != null) mParseScheduler.schedule(factory, message, priority);
+        }
+    }
+
+    private AtlasCellFactory getCellFactory(Message message) {
+        return mCellFactoryIndex.get(message);
+    }
+
 
     //==============================================================================================
     // Adapter and Cells
@@ -256,7 +661,10 @@ public class AtlasMessagesAdapter extends RecyclerView.Adapter<AtlasMessagesAdap
     public AtlasMessagesAdapter addCellFactories(AtlasCellFactory... cellFactories) {
         for (AtlasCellFactory cellFactory : cellFactories) {
             cellFactory.setStyle(mMessageStyle);
-            mCellFactories.add(cellFactory);
+            if (mParsedContentDiskCache != null) cellFactory.setParsedContentDiskCache(mParsedContentDiskCache);
+            synchronized (mCellFactories) {
+                mCellFactories.add(cellFactory);
+            }
 
             mViewTypeCount++;
             CellType me = new CellType(true, cellFactory);
@@ -268,6 +676,7 @@ public class AtlasMessagesAdapter extends RecyclerView.Adapter<AtlasMessagesAdap
             mCellTypesByViewType.put(mViewTypeCount, notMe);
             mTheirViewTypesByCell.put(cellFactory, mViewTypeCount);
         }
+        mCellFactoryIndex.invalidate();
         return this;
     }
 
@@ -277,15 +686,14 @@ public class AtlasMessagesAdapter extends RecyclerView.Adapter<AtlasMessagesAdap
 
     @Override
     public int getItemViewType(int position) {
-        if (mFooterView != null && position == mFooterPosition) return VIEW_TYPE_FOOTER;
+        if (isFooter(position)) return VIEW_TYPE_FOOTER;
+        if (isEncodingPlaceholder(position)) return VIEW_TYPE_ENCODING;
         Message message = getItem(position);
         Identity authenticatedUser = mLayerClient.getAuthenticatedUser();
         boolean isMe = authenticatedUser != null && authenticatedUser.equals(message.getSender());
-        for (AtlasCellFactory factory : mCellFactories) {
-            if (!factory.isBindable(message)) continue;
-            return isMe ? mMyViewTypesByCell.get(factory) : mTheirViewTypesByCell.get(factory);
-        }
-        return -1;
+        AtlasCellFactory factory = getCellFactory(message);
+        if (factory == null) return -1;
+        return isMe ? mMyViewTypesByCell.get(factory) : mTheirViewTypesByCell.get(factory);
     }
 
     @Override
@@ -293,11 +701,16 @@ public class AtlasMessagesAdapter extends RecyclerView.Adapter<AtlasMessagesAdap
         if (viewType == VIEW_TYPE_FOOTER) {
             return new ViewHolder(mLayoutInflater.inflate(ViewHolder.RESOURCE_ID_FOOTER, parent, false));
         }
+        if (viewType == VIEW_TYPE_ENCODING) {
+            return new ViewHolder(mLayoutInflater.inflate(ViewHolder.RESOURCE_ID_ENCODING, parent, false));
+        }
 
         CellType cellType = mCellTypesByViewType.get(viewType);
         int rootResId = cellType.mMe ? CellViewHolder.RESOURCE_ID_ME : CellViewHolder.RESOURCE_ID_THEM;
         CellViewHolder rootViewHolder = new CellViewHolder(mLayoutInflater.inflate(rootResId, parent, false), mPicasso, mShouldShowAvatarPresence);
+        long start = System.nanoTime();
         rootViewHolder.mCellHolder = cellType.mCellFactory.createCellHolder(rootViewHolder.mCell, cellType.mMe, mLayoutInflater);
+        cellType.mCellFactory.getStats().recordCreate(System.nanoTime() - start);
         rootViewHolder.mCellHolderSpecs = new AtlasCellFactory.CellHolderSpecs();
         return rootViewHolder;
     }
@@ -305,15 +718,59 @@ public class AtlasMessagesAdapter extends RecyclerView.Adapter<AtlasMessagesAdap
     @Override
     public void onBindViewHolder(ViewHolder viewHolder, int position) {
         mQueryController.updateBoundPosition(position);
-        if (mFooterView != null && position == mFooterPosition) {
+        if (isFooter(position)) {
             // Footer
             bindFooter(viewHolder);
+        } else if (isEncodingPlaceholder(position)) {
+            // Placeholders have nothing to bind
         } else {
             // Cell
             bindCellViewHolder((CellViewHolder) viewHolder, position);
         }
     }
 
+    /**
+     * Applies partial rebinds for Payloads, touching only the Views affected by each change.  Any
+     * unrecognized payload falls back to a full bind.
+     */
+    @Override
+    public void onBindViewHolder(ViewHolder viewHolder, int position, List<Object> payloads) {
+        if (payloads.isEmpty() || !(viewHolder instanceof CellViewHolder)) {
+            onBindViewHolder(viewHolder, position);
+            return;
+        }
+        int changes = 0;
+        for (Object payload : payloads) {
+            if (!(payload instanceof Payload)) {
+                onBindViewHolder(viewHolder, position);
+                return;
+            }
+            changes |= 1 << ((Payload) payload).ordinal();
+        }
+
+        mQueryController.updateBoundPosition(position);
+        CellViewHolder cellViewHolder = (CellViewHolder) viewHolder;
+        Message message = getItem(position);
+        cellViewHolder.mMessage = message;
+        CellType cellType = mCellTypesByViewType.get(cellViewHolder.getItemViewType());
+        MessageBindModel model = getBindModel(message);
+
+        if (Payload.CLUSTER.isIn(changes) || (!cellType.mMe && Payload.SENDER_IDENTITY.isIn(changes))) {
+            Cluster cluster = getClustering(position);
+            if (Payload.CLUSTER.isIn(changes)) bindClusterForMessage(cellViewHolder, cluster, model);
+            if (!cellType.mMe) bindSenderForMessage(cellViewHolder, position, message, cluster, model);
+        }
+        if (cellType.mMe && Payload.SEND_STATE.isIn(changes)) {
+            bindSendStateForMessage(cellViewHolder, message);
+        }
+        if (cellType.mMe && (Payload.RECEIPT.isIn(changes) || Payload.SEND_STATE.isIn(changes))) {
+            updateViewHolderForRecipientStatus(cellViewHolder, position, message);
+        }
+        if (Payload.CONTENT.isIn(changes)) {
+            bindContentForMessage(cellViewHolder, position, message, cellType, model);
+        }
+    }
+
     public void bindFooter(ViewHolder viewHolder) {
         viewHolder.mRoot.removeAllViews();
         if (mFooterView.getParent() != null) {
@@ -326,17 +783,35 @@ public class AtlasMessagesAdapter extends RecyclerView.Adapter<AtlasMessagesAdap
         Message message = getItem(position);
         viewHolder.mMessage = message;
         CellType cellType = mCellTypesByViewType.get(viewHolder.getItemViewType());
-        boolean oneOnOne = message.getConversation().getParticipants().size() == 2;
+        MessageBindModel model = getBindModel(message);
 
         // Clustering and dates
-        Cluster cluster = getClustering(message, position);
+        Cluster cluster = getClustering(position);
+        bindClusterForMessage(viewHolder, cluster, model);
+
+        // Sender-dependent elements
+        if (cellType.mMe) {
+            updateViewHolderForRecipientStatus(viewHolder, position, message);
+            bindSendStateForMessage(viewHolder, message);
+        } else {
+            viewHolder.mBoundSent = message.isSent();
+            if (mReadReceiptsEnabled) {
+                mReadReceiptBatcher.add(message);
+            }
+            bindSenderForMessage(viewHolder, position, message, cluster, model);
+        }
+
+        bindContentForMessage(viewHolder, position, message, cellType, model);
+    }
+
+    private void bindClusterForMessage(CellViewHolder viewHolder, Cluster cluster, MessageBindModel model) {
         if (cluster.mClusterWithPrevious == null) {
             // No previous message, so no gap
             viewHolder.mClusterSpaceGap.setVisibility(View.GONE);
-            bindDateTimeForMessage(viewHolder, message);
+            bindDateTimeForMessage(viewHolder, model);
         } else if (cluster.mDateBoundaryWithPrevious || cluster.mClusterWithPrevious == ClusterType.MORE_THAN_HOUR) {
             // Crossed into a new day, or > 1hr lull in conversation
-            bindDateTimeForMessage(viewHolder, message);
+            bindDateTimeForMessage(viewHolder, model);
             viewHolder.mClusterSpaceGap.setVisibility(View.GONE);
         } else if (cluster.mClusterWithPrevious == ClusterType.LESS_THAN_MINUTE) {
             // Same sender with < 1m gap
@@ -347,61 +822,67 @@ public class AtlasMessagesAdapter extends RecyclerView.Adapter<AtlasMessagesAdap
             viewHolder.mClusterSpaceGap.setVisibility(View.VISIBLE);
             viewHolder.mTimeGroup.setVisibility(View.GONE);
         }
+    }
 
-        // Sender-dependent elements
-        if (cellType.mMe) {
-            updateViewHolderForRecipientStatus(viewHolder, position, message);
-
-            // Unsent and sent
-            if (!message.isSent()) {
-                viewHolder.mCell.setAlpha(0.5f);
-            } else {
-                viewHolder.mCell.setAlpha(1.0f);
-            }
+    private void bindSendStateForMessage(CellViewHolder viewHolder, Message message) {
+        // Unsent and sent
+        boolean sent = message.isSent();
+        viewHolder.mBoundSent = sent;
+        if (!sent) {
+            viewHolder.mCell.setAlpha(0.5f);
         } else {
-            if (mReadReceiptsEnabled) {
-                message.markAsRead();
-            }
-            // Sender name, only for first message in cluster
-            if (!oneOnOne && (cluster.mClusterWithPrevious == null || cluster.mClusterWithPrevious == ClusterType.NEW_SENDER)) {
-                Identity sender = message.getSender();
-                if (sender != null) {
-                    viewHolder.mUserName.setText(Util.getDisplayName(sender));
-                } else {
-                    viewHolder.mUserName.setText(R.string.atlas_message_item_unknown_user);
-                }
-                viewHolder.mUserName.setVisibility(View.VISIBLE);
+            viewHolder.mCell.setAlpha(1.0f);
+        }
+    }
+
+    private void bindSenderForMessage(CellViewHolder viewHolder, int position, Message message, Cluster cluster, MessageBindModel model) {
+        boolean oneOnOne = model.isOneOnOne();
 
-                // Add the position to the positions map for Identity updates
-                mIdentityEventListener.addIdentityPosition(position, Collections.singleton(sender));
+        // Sender name, only for first message in cluster
+        if (!oneOnOne && (cluster.mClusterWithPrevious == null || cluster.mClusterWithPrevious == ClusterType.NEW_SENDER)) {
+            String senderName = model.getSenderName();
+            if (senderName != null) {
+                viewHolder.mUserName.setText(senderName);
             } else {
-                viewHolder.mUserName.setVisibility(View.GONE);
+                viewHolder.mUserName.setText(R.string.atlas_message_item_unknown_user);
             }
+            viewHolder.mUserName.setVisibility(View.VISIBLE);
 
-            // Avatars
-            if (oneOnOne) {
-                if (mShouldShowAvatarInOneOnOneConversations) {
-                    viewHolder.mAvatar.setVisibility(View.VISIBLE);
-                    viewHolder.mAvatar.setParticipants(message.getSender());
+            // Add the position to the positions map for Identity updates
+            mIdentityEventListener.addIdentityPosition(position, Collections.singleton(message.getSender()));
+        } else {
+            viewHolder.mUserName.setVisibility(View.GONE);
+        }
 
-                } else {
-                    viewHolder.mAvatar.setVisibility(View.GONE);
-                }
-            } else if (cluster.mClusterWithNext == null || cluster.mClusterWithNext != ClusterType.LESS_THAN_MINUTE) {
-                // Last message in cluster
+        // Avatars
+        if (oneOnOne) {
+            if (mShouldShowAvatarInOneOnOneConversations) {
                 viewHolder.mAvatar.setVisibility(View.VISIBLE);
                 viewHolder.mAvatar.setParticipants(message.getSender());
-                // Add the position to the positions map for Identity updates
-                mIdentityEventListener.addIdentityPosition(position, Collections.singleton(message.getSender()));
+
             } else {
-                // Invisible for clustered messages to preserve proper spacing
-                viewHolder.mAvatar.setVisibility(View.INVISIBLE);
+                viewHolder.mAvatar.setVisibility(View.GONE);
             }
+        } else if (cluster.mClusterWithNext == null || cluster.mClusterWithNext != ClusterType.LESS_THAN_MINUTE) {
+            // Last message in cluster
+            viewHolder.mAvatar.setVisibility(View.VISIBLE);
+            viewHolder.mAvatar.setParticipants(message.getSender());
+            // Add the position to the positions map for Identity updates
+            mIdentityEventListener.addIdentityPosition(position, Collections.singleton(message.getSender()));
+        } else {
+            // Invisible for clustered messages to preserve proper spacing
+            viewHolder.mAvatar.setVisibility(View.INVISIBLE);
         }
+    }
+
+    private void bindContentForMessage(CellViewHolder viewHolder, int position, Message message, CellType cellType, MessageBindModel model) {
+        boolean oneOnOne = model.isOneOnOne();
 
         // CellHolder
         AtlasCellFactory.CellHolder cellHolder = viewHolder.mCellHolder;
         cellHolder.setMessage(message);
+        viewHolder.mBoundReceivedAt = message.getReceivedAt();
+        viewHolder.mBoundContentReady = isContentReady(message);
 
         // Cell dimensions
         LinearLayout.LayoutParams params = (LinearLayout.LayoutParams) viewHolder.mCell.getLayoutParams();
@@ -411,47 +892,39 @@ public class AtlasMessagesAdapter extends RecyclerView.Adapter<AtlasMessagesAdap
             ViewGroup.MarginLayoutParams avatarParams = (ViewGroup.MarginLayoutParams) viewHolder.mAvatar.getLayoutParams();
             maxWidth -= avatarParams.width + avatarParams.rightMargin + avatarParams.leftMargin;
         }
-        // TODO: subtract spacing rather than multiply by 0.8 to handle screen sizes more cleanly
-        int maxHeight = (int) viewHolder.mRoot.getContext().getResources().getDimension(R.dimen.atlas_messages_max_cell_height);
 
         viewHolder.mCellHolderSpecs.isMe = cellType.mMe;
         viewHolder.mCellHolderSpecs.position = position;
         viewHolder.mCellHolderSpecs.maxWidth = maxWidth;
-        viewHolder.mCellHolderSpecs.maxHeight = maxHeight;
-        cellType.mCellFactory.bindCellHolder(cellHolder, cellType.mCellFactory.getParsedContent(mLayerClient, message), message, viewHolder.mCellHolderSpecs);
+        viewHolder.mCellHolderSpecs.maxHeight = mMaxCellHeight;
+        AtlasCellFactory.ParsedContent parsedContent = cellType.mCellFactory.getParsedContent(mLayerClient, message);
+        long start = System.nanoTime();
+        cellType.mCellFactory.bindCellHolder(cellHolder, parsedContent, message, viewHolder.mCellHolderSpecs);
+        cellType.mCellFactory.getStats().recordBind(System.nanoTime() - start);
+    }
+
+    private static boolean isContentReady(Message message) {
+        for (MessagePart part : message.getMessageParts()) {
+            if (!part.isContentReady()) return false;
+        }
+        return true;
     }
 
     private void updateViewHolderForRecipientStatus(CellViewHolder viewHolder, int position, Message message) {
         if (mReadReceiptsEnabled && mRecipientStatusPosition != null && mRecipientStatusPosition == position) {
-            int readCount = 0;
-            boolean delivered = false;
-            Map<Identity, Message.RecipientStatus> statuses = message.getRecipientStatus();
-            for (Map.Entry<Identity, Message.RecipientStatus> entry : statuses.entrySet()) {
-                // Only show receipts for other members
-                if (entry.getKey().equals(mLayerClient.getAuthenticatedUser())) continue;
-                // Skip receipts for members no longer in the conversation
-                if (entry.getValue() == null) continue;
-
-                switch (entry.getValue()) {
-                    case READ:
-                        readCount++;
-                        break;
-                    case DELIVERED:
-                        delivered = true;
-                        break;
-                }
-            }
+            RecipientStatusAggregator.Counts counts = mRecipientStatusAggregator.getCounts(message);
+            int readCount = counts.getReadCount();
             if (readCount > 0) {
                 viewHolder.mReceipt.setVisibility(View.VISIBLE);
                 // Use 2 to include one other participant plus the current user
-                if (statuses.size() > 2) {
+                if (counts.getStatusCount() > 2) {
                     String quantityString = viewHolder.mReceipt.getResources()
                             .getQuantityString(R.plurals.atlas_message_item_read_muliple_participants, readCount, readCount);
                     viewHolder.mReceipt.setText(quantityString);
                 } else {
                     viewHolder.mReceipt.setText(R.string.atlas_message_item_read);
                 }
-            } else if (delivered) {
+            } else if (counts.getDeliveredCount() > 0) {
                 viewHolder.mReceipt.setVisibility(View.VISIBLE);
                 viewHolder.mReceipt.setText(R.string.atlas_message_item_delivered);
             } else {
@@ -462,19 +935,24 @@ public class AtlasMessagesAdapter extends RecyclerView.Adapter<AtlasMessagesAdap
         }
     }
 
-    private void bindDateTimeForMessage(CellViewHolder viewHolder, Message message) {
-        Date receivedAt = message.getReceivedAt();
-        if (receivedAt == null) receivedAt = new Date();
-        String timeBarDayText = Util.formatTimeDay(viewHolder.mCell.getContext(), receivedAt);
-        viewHolder.mTimeGroupDay.setText(timeBarDayText);
-        String timeBarTimeText = mTimeFormat.format(receivedAt.getTime());
-        viewHolder.mTimeGroupTime.setText(" " + timeBarTimeText);
+    private void bindDateTimeForMessage(CellViewHolder viewHolder, MessageBindModel model) {
+        viewHolder.mTimeGroupDay.setText(model.getTimeDay());
+        viewHolder.mTimeGroupTime.setText(model.getTime());
         viewHolder.mTimeGroup.setVisibility(View.VISIBLE);
     }
 
     @Override
     public int getItemCount() {
-        return mQueryController.getItemCount() + ((mFooterView == null) ? 0 : 1);
+        return mQueryController.getItemCount() + mEncodingJobs.size() + ((mFooterView == null) ? 0 : 1);
+    }
+
+    @Override
+    public long getItemId(int position) {
+        if (isFooter(position)) return FOOTER_ITEM_ID;
+        if (isEncodingPlaceholder(position)) return FIRST_ENCODING_ITEM_ID - mEncodingJobs.get(position - mMessageCount).getId();
+        Message message = mQueryController.getItem(position);
+        if (message == null) return RecyclerView.NO_ID;
+        return mStableIds.getId(message.getId());
     }
 
     @Override
@@ -489,7 +967,7 @@ public class AtlasMessagesAdapter extends RecyclerView.Adapter<AtlasMessagesAdap
 
     @Override
     public Message getItem(int position) {
-        if (mFooterView != null && position == mFooterPosition) return null;
+        if (isFooter(position) || isEncodingPlaceholder(position)) return null;
         return mQueryController.getItem(position);
     }
 
@@ -500,74 +978,222 @@ public class AtlasMessagesAdapter extends RecyclerView.Adapter<AtlasMessagesAdap
     }
 
     //==============================================================================================
-    // Clustering
+    // Bind models
     //==============================================================================================
 
-    // TODO: optimize by limiting search to positions in- and around- visible range
-    private Cluster getClustering(Message message, int position) {
-        Cluster result = mClusterCache.get(message.getId());
-        if (result == null) {
-            result = new Cluster();
-            mClusterCache.put(message.getId(), result);
+    /**
+     * Returns the cached MessageBindModel for the given Message, building it on the calling thread
+     * if it was not precomputed or has gone stale.  Each thread formats with its own Formatter, so
+     * building never waits on another thread.
+     */
+    private MessageBindModel getBindModel(Message message) {
+        MessageBindModel model = mBindModels.get(message.getId());
+        if (model != null && !model.isStale(System.currentTimeMillis())) return model;
+        int generation;
+        synchronized (mBindModels) {
+            generation = mBindModelGeneration;
         }
+        model = MessageBindModel.create(mBindModelFormatters.get(), message);
+        synchronized (mBindModels) {
+            // Drop models built before an invalidation, which may hold stale names or times
+            if (generation == mBindModelGeneration) mBindModels.put(message.getId(), model);
+        }
+        return model;
+    }
 
-        int previousPosition = position - 1;
-        Message previousMessage = (previousPosition >= 0) ? getItem(previousPosition) : null;
-        if (previousMessage != null) {
-            result.mDateBoundaryWithPrevious = isDateBoundary(previousMessage.getReceivedAt(), message.getReceivedAt());
-            result.mClusterWithPrevious = ClusterType.fromMessages(previousMessage, message);
-
-            Cluster previousCluster = mClusterCache.get(previousMessage.getId());
-            if (previousCluster == null) {
-                previousCluster = new Cluster();
-                mClusterCache.put(previousMessage.getId(), previousCluster);
-            } else {
-                // does the previous need to change its clustering?
-                if ((previousCluster.mClusterWithNext != result.mClusterWithPrevious) ||
-                        (previousCluster.mDateBoundaryWithNext != result.mDateBoundaryWithPrevious)) {
-                    requestUpdate(previousMessage, previousPosition);
-                }
+    private void invalidateBindModels(int positionStart, int itemCount) {
+        int end = Math.min(positionStart + itemCount, mQueryController.getItemCount());
+        synchronized (mBindModels) {
+            mBindModelGeneration++;
+            for (int position = Math.max(0, positionStart); position < end; position++) {
+                Message message = mQueryController.getItem(position);
+                if (message != null) mBindModels.remove(message.getId());
             }
-            previousCluster.mClusterWithNext = result.mClusterWithPrevious;
-            previousCluster.mDateBoundaryWithNext = result.mDateBoundaryWithPrevious;
         }
+    }
 
-        int nextPosition = position + 1;
-        Message nextMessage = (nextPosition < getItemCount()) ? getItem(nextPosition) : null;
-        if (nextMessage != null) {
-            result.mDateBoundaryWithNext = isDateBoundary(message.getReceivedAt(), nextMessage.getReceivedAt());
-            result.mClusterWithNext = ClusterType.fromMessages(message, nextMessage);
-
-            Cluster nextCluster = mClusterCache.get(nextMessage.getId());
-            if (nextCluster == null) {
-                nextCluster = new Cluster();
-                mClusterCache.put(nextMessage.getId(), nextCluster);
-            } else {
-                // does the next need to change its clustering?
-                if ((nextCluster.mClusterWithPrevious != result.mClusterWithNext) ||
-                        (nextCluster.mDateBoundaryWithPrevious != result.mDateBoundaryWithNext)) {
-                    requestUpdate(nextMessage, nextPosition);
-                }
+    /**
+     * Builds MessageBindModels for Messages in the given range on a background thread, so they
+     * are ready before those Messages scroll into view.
+     */
+    private void prefetchBindModels(int positionStart, int itemCount) {
+        int start = Math.max(0, positionStart);
+        int end = Math.min(positionStart + itemCount, mQueryController.getItemCount());
+        if (start >= end || start == mLastPrefetchStart) return;
+        mLastPrefetchStart = start;
+
+        final Message[] messages = new Message[end - start];
+        int count = 0;
+        for (int position = start; position < end; position++) {
+            Message message = mQueryController.getItem(position);
+            if (message != null && mBindModels.get(message.getId()) == null) {
+                messages[count++] = message;
             }
-            nextCluster.mClusterWithPrevious = result.mClusterWithNext;
-            nextCluster.mDateBoundaryWithPrevious = result.mDateBoundaryWithNext;
         }
+        if (count == 0) return;
+
+        final int prefetchCount = count;
+        synchronized (mBindModelLock) {
+            if (mBindModelExecutor == null) {
+                mBindModelExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+                    @Override
+                    public Thread newThread(Runnable runnable) {
+                        Thread thread = new Thread(runnable, "AtlasBindModels");
+                        thread.setPriority(Thread.MIN_PRIORITY);
+                        return thread;
+                    }
+                });
+            }
+            mBindModelExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < prefetchCount; i++) {
+                        getBindModel(messages[i]);
+                    }
+                }
+            });
+        }
+    }
+
 
+    //==============================================================================================
+    // Clustering
+    //==============================================================================================
+
+    private Cluster getClustering(int position) {
+        Cluster result = new Cluster();
+        if (position > 0) {
+            byte link = getClusterLink(position);
+            result.mClusterWithPrevious = ClusterType.fromLink(link);
+            result.mDateBoundaryWithPrevious = (link & LINK_DATE_BOUNDARY) != 0;
+        }
+        if (position + 1 < mQueryController.getItemCount()) {
+            byte link = getClusterLink(position + 1);
+            result.mClusterWithNext = ClusterType.fromLink(link);
+            result.mDateBoundaryWithNext = (link & LINK_DATE_BOUNDARY) != 0;
+        }
         return result;
     }
 
+    /**
+     * Returns the clustering link between the Messages at `position - 1` and `position`, computing
+     * and storing it if it was invalidated since it was last read.
+     */
+    private byte getClusterLink(int position) {
+        byte link = mClusterTable.get(position);
+        if (link == MessageClusterTable.UNKNOWN) {
+            link = computeClusterLink(position);
+            mClusterTable.set(position, link);
+        }
+        return link;
+    }
+
+    private byte computeClusterLink(int position) {
+        Message older = mQueryController.getItem(position - 1);
+        Message newer = mQueryController.getItem(position);
+        byte link = (byte) ClusterType.fromMessages(older, newer).ordinal();
+        if (isDateBoundary(older.getReceivedAt(), newer.getReceivedAt())) {
+            link |= LINK_DATE_BOUNDARY;
+        }
+        return link;
+    }
+
+    /**
+     * Returns the stored link at `position` in a list of `count` Messages, where the first and
+     * last Messages have LINK_NONE on their outer edges.
+     */
+    private byte getStoredClusterLink(int position, int count) {
+        if (position <= 0 || position >= count) return LINK_NONE;
+        return mClusterTable.get(position);
+    }
+
+    /**
+     * Recomputes the link at `position` after a data change and returns the new link.  Links that
+     * fall outside the table's window are left UNKNOWN to be computed when next bound; refreshing
+     * never moves the window away from the bound range.
+     */
+    private byte refreshClusterLink(int position) {
+        if (position <= 0 || position >= mQueryController.getItemCount()) return LINK_NONE;
+        if (!mClusterTable.isInWindow(position)) {
+            mClusterTable.update(position, MessageClusterTable.UNKNOWN);
+            return MessageClusterTable.UNKNOWN;
+        }
+        byte link = computeClusterLink(position);
+        mClusterTable.update(position, link);
+        return link;
+    }
+
+    /**
+     * Rebinds the Message at `position` if its link may have changed.  An UNKNOWN link does not
+     * mean the Message is unbound, since the table evicts links that left its window while their
+     * cells stay on screen, so UNKNOWN on either side always rebinds.
+     */
+    private void requestClusterUpdate(int position, byte oldLink, byte newLink) {
+        if (oldLink == newLink && oldLink != MessageClusterTable.UNKNOWN) return;
+        if (position < 0 || position >= mQueryController.getItemCount()) return;
+        requestUpdate(mQueryController.getItem(position), position);
+    }
+
+    private void onClusterRangeInserted(int positionStart, int itemCount) {
+        // The Messages on either side of the new range were both bound against the old link
+        int oldCount = mQueryController.getItemCount() - itemCount;
+        byte oldLink = getStoredClusterLink(positionStart, oldCount);
+        mClusterTable.insert(positionStart, itemCount);
+        byte first = refreshClusterLink(positionStart);
+        byte last = refreshClusterLink(positionStart + itemCount);
+        requestClusterUpdate(positionStart - 1, oldLink, first);
+        requestClusterUpdate(positionStart + itemCount, oldLink, last);
+    }
+
+    private void onClusterRangeRemoved(int positionStart, int itemCount) {
+        int oldCount = mQueryController.getItemCount() + itemCount;
+        byte oldPreviousLink = getStoredClusterLink(positionStart, oldCount);
+        byte oldNextLink = getStoredClusterLink(positionStart + itemCount, oldCount);
+        mClusterTable.remove(positionStart, itemCount);
+        byte link = refreshClusterLink(positionStart);
+        requestClusterUpdate(positionStart - 1, oldPreviousLink, link);
+        requestClusterUpdate(positionStart, oldNextLink, link);
+    }
+
+    private void onClusterRangeChanged(int positionStart, int itemCount) {
+        // Changed Messages get rebound, so only their unchanged neighbors need checking
+        int count = mQueryController.getItemCount();
+        byte oldPreviousLink = getStoredClusterLink(positionStart, count);
+        byte oldNextLink = getStoredClusterLink(positionStart + itemCount, count);
+        mClusterTable.invalidate(positionStart, itemCount + 1);
+        byte previousLink = refreshClusterLink(positionStart);
+        byte nextLink = refreshClusterLink(positionStart + itemCount);
+        requestClusterUpdate(positionStart - 1, oldPreviousLink, previousLink);
+        requestClusterUpdate(positionStart + itemCount, oldNextLink, nextLink);
+    }
+
+    private void onClusterItemMoved(int fromPosition, int toPosition) {
+        mClusterTable.remove(fromPosition, 1);
+        mClusterTable.insert(toPosition, 1);
+        // Moves are rare, so invalidate the links around both ends and rebind their Messages
+        invalidateClusterLink(fromPosition < toPosition ? fromPosition : fromPosition + 1);
+        invalidateClusterLink(toPosition);
+        invalidateClusterLink(toPosition + 1);
+    }
+
+    private void invalidateClusterLink(int position) {
+        mClusterTable.update(position, MessageClusterTable.UNKNOWN);
+        int count = mQueryController.getItemCount();
+        if (position - 1 >= 0 && position - 1 < count) {
+            requestUpdate(mQueryController.getItem(position - 1), position - 1);
+        }
+        if (position >= 0 && position < count) {
+            requestUpdate(mQueryController.getItem(position), position);
+        }
+    }
+
     private static boolean isDateBoundary(Date d1, Date d2) {
         if (d1 == null || d2 == null) return false;
         return (d1.getYear() != d2.getYear()) || (d1.getMonth() != d2.getMonth()) || (d1.getDay() != d2.getDay());
     }
 
-    private void requestUpdate(final Message message, final int lastPosition) {
-        mUiThreadHandler.post(new Runnable() {
-            @Override
-            public void run() {
-                notifyItemChanged(getPosition(message, lastPosition));
-            }
-        });
+    private void requestUpdate(Message message, int lastPosition) {
+        mFrameUpdates.schedule(message, lastPosition, Payload.CLUSTER);
     }
 
 
@@ -581,7 +1207,7 @@ public class AtlasMessagesAdapter extends RecyclerView.Adapter<AtlasMessagesAdap
             // Set new position to last in the list
             mRecipientStatusPosition = mQueryController.getItemCount() - 1;
             if (oldPosition != null) {
-                notifyItemChanged(oldPosition);
+                notifyItemChanged(oldPosition, Payload.RECEIPT);
             }
         }
     }
@@ -591,9 +1217,58 @@ public class AtlasMessagesAdapter extends RecyclerView.Adapter<AtlasMessagesAdap
     // UI update callbacks
     //==============================================================================================
 
+    /**
+     * Notifies a changed Message, comparing it against the state captured when its cell was bound to
+     * pick the narrowest Payload.  Falls back to a full rebind if the cell is not attached or its
+     * received date changed.
+     */
+    private void notifyMessageChanged(int position) {
+        RecyclerView.ViewHolder holder = (mRecyclerView == null) ? null : mRecyclerView.findViewHolderForAdapterPosition(position);
+        if (!(holder instanceof CellViewHolder)) {
+            notifyItemChanged(position);
+            return;
+        }
+        CellViewHolder cellViewHolder = (CellViewHolder) holder;
+        Message message = getItem(position);
+        if (message == null || cellViewHolder.mMessage == null || !message.getId().equals(cellViewHolder.mMessage.getId())) {
+            notifyItemChanged(position);
+            return;
+        }
+
+        Date receivedAt = message.getReceivedAt();
+        if (receivedAt == null ? cellViewHolder.mBoundReceivedAt != null : !receivedAt.equals(cellViewHolder.mBoundReceivedAt)) {
+            notifyItemChanged(position);
+            return;
+        }
+        boolean changed = false;
+        if (message.isSent() != cellViewHolder.mBoundSent) {
+            notifyItemChanged(position, Payload.SEND_STATE);
+            changed = true;
+        }
+        if (isContentReady(message) != cellViewHolder.mBoundContentReady) {
+            notifyItemChanged(position, Payload.CONTENT);
+            changed = true;
+        }
+        if (!changed) {
+            // Remaining Message changes only surface through the receipt row; merged with the
+            // RecipientStatusAggregator's update for the same change
+            mFrameUpdates.schedule(message, position, Payload.RECEIPT);
+        }
+    }
+
     @Override
     public void onQueryDataSetChanged(RecyclerViewController controller) {
-        mFooterPosition = mQueryController.getItemCount();
+        mMessageCount = mQueryController.getItemCount();
+        // Everything is rebound, so sent Jobs whose Message is now present just drop out
+        List<AttachmentEncodingQueue.Job> jobs = getQueuedEncodingJobs();
+        for (int i = mEncodingJobs.size() - 1; i >= 0; i--) {
+            AttachmentEncodingQueue.Job job = mEncodingJobs.get(i);
+            if (jobs.contains(job)) continue;
+            if (!isAwaitingInsert(job)) mEncodingJobs.remove(i);
+        }
+        mClusterTable.reset(mQueryController.getItemCount());
+        // Everything is rebound, so pending partial updates are redundant
+        mFrameUpdates.cancel();
         updateRecipientStatusPosition();
         notifyDataSetChanged();
 
@@ -604,7 +1279,9 @@ public class AtlasMessagesAdapter extends RecyclerView.Adapter<AtlasMessagesAdap
 
     @Override
     public void onQueryItemChanged(RecyclerViewController controller, int position) {
-        notifyItemChanged(position);
+        invalidateBindModels(position, 1);
+        notifyMessageChanged(position);
+        onClusterRangeChanged(position, 1);
 
         if (Log.isPerfLoggable()) {
             Log.perf("Messages adapter - onQueryItemChanged. Position: " + position);
@@ -613,7 +1290,11 @@ public class AtlasMessagesAdapter extends RecyclerView.Adapter<AtlasMessagesAdap
 
     @Override
     public void onQueryItemRangeChanged(RecyclerViewController controller, int positionStart, int itemCount) {
-        notifyItemRangeChanged(positionStart, itemCount);
+        invalidateBindModels(positionStart, itemCount);
+        for (int i = 0; i < itemCount; i++) {
+            notifyMessageChanged(positionStart + i);
+        }
+        onClusterRangeChanged(positionStart, itemCount);
 
         if (Log.isPerfLoggable()) {
             Log.perf("Messages adapter - onQueryItemRangeChanged. Position start: " + positionStart + " Count: " + itemCount);
@@ -622,9 +1303,11 @@ public class AtlasMessagesAdapter extends RecyclerView.Adapter<AtlasMessagesAdap
 
     @Override
     public void onQueryItemInserted(RecyclerViewController controller, int position) {
-        mFooterPosition++;
+        mMessageCount++;
         updateRecipientStatusPosition();
         notifyItemInserted(position);
+        removeSentPlaceholder(getItem(position));
+        onClusterRangeInserted(position, 1);
         if (mAppendListener != null && (position + 1) == getItemCount()) {
             mAppendListener.onMessageAppend(this, getItem(position));
         }
@@ -636,9 +1319,13 @@ public class AtlasMessagesAdapter extends RecyclerView.Adapter<AtlasMessagesAdap
 
     @Override
     public void onQueryItemRangeInserted(RecyclerViewController controller, int positionStart, int itemCount) {
-        mFooterPosition += itemCount;
+        mMessageCount += itemCount;
         updateRecipientStatusPosition();
         notifyItemRangeInserted(positionStart, itemCount);
+        for (int i = 0; i < itemCount && !mEncodingJobs.isEmpty(); i++) {
+            removeSentPlaceholder(getItem(positionStart + i));
+        }
+        onClusterRangeInserted(positionStart, itemCount);
         int positionEnd = positionStart + itemCount;
         if (mAppendListener != null && (positionEnd + 1) == getItemCount()) {
             mAppendListener.onMessageAppend(this, getItem(positionEnd));
@@ -651,9 +1338,10 @@ public class AtlasMessagesAdapter extends RecyclerView.Adapter<AtlasMessagesAdap
 
     @Override
     public void onQueryItemRemoved(RecyclerViewController controller, int position) {
-        mFooterPosition--;
+        mMessageCount--;
         updateRecipientStatusPosition();
         notifyItemRemoved(position);
+        onClusterRangeRemoved(position, 1);
 
         if (Log.isPerfLoggable()) {
             Log.perf("Messages adapter - onQueryItemRemoved. Position: " + position);
@@ -662,9 +1350,10 @@ public class AtlasMessagesAdapter extends RecyclerView.Adapter<AtlasMessagesAdap
 
     @Override
     public void onQueryItemRangeRemoved(RecyclerViewController controller, int positionStart, int itemCount) {
-        mFooterPosition -= itemCount;
+        mMessageCount -= itemCount;
         updateRecipientStatusPosition();
         notifyItemRangeRemoved(positionStart, itemCount);
+        onClusterRangeRemoved(positionStart, itemCount);
 
         if (Log.isPerfLoggable()) {
             Log.perf("Messages adapter - onQueryItemRangeRemoved. Position start: " + positionStart + " Count: " + itemCount);
@@ -675,6 +1364,7 @@ public class AtlasMessagesAdapter extends RecyclerView.Adapter<AtlasMessagesAdap
     public void onQueryItemMoved(RecyclerViewController controller, int fromPosition, int toPosition) {
         updateRecipientStatusPosition();
         notifyItemMoved(fromPosition, toPosition);
+        onClusterItemMoved(fromPosition, toPosition);
 
         if (Log.isPerfLoggable()) {
             Log.perf("Conversations adapter - onQueryItemMoved. From: " + fromPosition + " To: " + toPosition);
@@ -688,6 +1378,7 @@ public class AtlasMessagesAdapter extends RecyclerView.Adapter<AtlasMessagesAdap
 
     static class ViewHolder extends RecyclerView.ViewHolder {
         public final static int RESOURCE_ID_FOOTER = R.layout.atlas_message_item_footer;
+        public final static int RESOURCE_ID_ENCODING = R.layout.atlas_message_item_encoding;
 
         // View cache
         protected ViewGroup mRoot;
@@ -704,6 +1395,11 @@ public class AtlasMessagesAdapter extends RecyclerView.Adapter<AtlasMessagesAdap
 
         protected Message mMessage;
 
+        // State captured at bind time, used to pick a Payload when the Message changes
+        protected boolean mBoundSent;
+        protected Date mBoundReceivedAt;
+        protected boolean mBoundContentReady;
+
         // View cache
         protected TextView mUserName;
         protected View mTimeGroup;
@@ -744,6 +1440,7 @@ public class AtlasMessagesAdapter extends RecyclerView.Adapter<AtlasMessagesAdap
 
         private static final long MILLIS_MINUTE = 60 * 1000;
         private static final long MILLIS_HOUR = 60 * MILLIS_MINUTE;
+        private static final ClusterType[] VALUES = values();
 
         public static ClusterType fromMessages(Message older, Message newer) {
             // Different users?
@@ -758,6 +1455,30 @@ public class AtlasMessagesAdapter extends RecyclerView.Adapter<AtlasMessagesAdap
             if (delta <= MILLIS_HOUR) return LESS_THAN_HOUR;
             return MORE_THAN_HOUR;
         }
+
+        public static ClusterType fromLink(byte link) {
+            return VALUES[link & ~LINK_DATE_BOUNDARY];
+        }
+    }
+
+    /**
+     * Partial rebind payloads passed to notifyItemChanged().
+     */
+    private enum Payload {
+        // Clustering with a neighbor changed: date bar, gap, sender name and avatar visibility
+        CLUSTER,
+        // Only the read / delivered receipt row changed
+        RECEIPT,
+        // The sender's Identity changed: sender name and avatar
+        SENDER_IDENTITY,
+        // The Message was sent
+        SEND_STATE,
+        // MessagePart content became available
+        CONTENT;
+
+        boolean isIn(int changes) {
+            return (changes & (1 << ordinal())) != 0;
+        }
     }
 
     private static class Cluster {
@@ -0,0 +1,178 @@
+package com.layer.atlas.adapters;
+
+import android.annotation.TargetApi;
+import android.net.Uri;
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import android.support.v7.widget.RecyclerView;
+import android.view.Choreographer;
+
+import com.layer.atlas.util.Log;
+import com.layer.sdk.query.Queryable;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Gathers items that need rebinding and notifies a RecyclerView.Adapter once per frame.  Items are
+ * tracked by ID along with their last known position, so their current positions are resolved only
+ * when the frame runs, after any inserts and removals that happened in the meantime.  Resolved
+ * positions are merged into contiguous ranges and each range is notified with a single
+ * notifyItemRangeChanged() call per payload.
+ * <p>
+ * Frames are aligned with Choreographer on API 16 and above, and fall back to a main-thread Handler
+ * post on older devices.  All methods must be called on the main thread.
+ */
+class FrameUpdateScheduler<Tquery extends Queryable> {
+    private final RecyclerView.Adapter mAdapter;
+    private final AtlasBaseAdapter<Tquery> mPositions;
+    private final Map<Object, Map<Uri, Pending<Tquery>>> mPending = new LinkedHashMap<>();
+    private final FrameCallbackCompat mFrameCallback;
+    private boolean mScheduled = false;
+    private int[] mScratch = new int[16];
+
+    public <Tadapter extends RecyclerView.Adapter & AtlasBaseAdapter<Tquery>> FrameUpdateScheduler(Tadapter adapter) {
+        mAdapter = adapter;
+        mPositions = adapter;
+        Runnable flush = new Runnable() {
+            @Override
+            public void run() {
+                mScheduled = false;
+                flush();
+            }
+        };
+        mFrameCallback = (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN)
+                ? new ChoreographerCallback(flush) : new HandlerCallback(flush);
+    }
+
+    /**
+     * Marks an item for rebinding on the next frame.
+     *
+     * @param item         Item to rebind.
+     * @param lastPosition The item's position when it was marked, used as a search hint.
+     * @param payload      Payload to notify the item with, or `null` for a full rebind.
+     */
+    public void schedule(Tquery item, int lastPosition, Object payload) {
+        if (item == null) return;
+        Map<Uri, Pending<Tquery>> pending = mPending.get(payload);
+        if (pending == null) {
+            pending = new LinkedHashMap<>();
+            mPending.put(payload, pending);
+        }
+        Pending<Tquery> existing = pending.get(item.getId());
+        if (existing != null) {
+            existing.mLastPosition = lastPosition;
+        } else {
+            pending.put(item.getId(), new Pending<>(item, lastPosition));
+        }
+        if (!mScheduled) {
+            mScheduled = true;
+            mFrameCallback.post();
+        }
+    }
+
+    /**
+     * Drops all pending updates without notifying.
+     */
+    public void cancel() {
+        mPending.clear();
+        if (mScheduled) {
+            mScheduled = false;
+            mFrameCallback.remove();
+        }
+    }
+
+    private void flush() {
+        if (mPending.isEmpty()) return;
+        int itemCount = mAdapter.getItemCount();
+        int ranges = 0;
+        for (Map.Entry<Object, Map<Uri, Pending<Tquery>>> entry : mPending.entrySet()) {
+            Map<Uri, Pending<Tquery>> pending = entry.getValue();
+            if (mScratch.length < pending.size()) mScratch = new int[pending.size()];
+            int count = 0;
+            for (Pending<Tquery> p : pending.values()) {
+                Integer position = mPositions.getPosition(p.mItem, p.mLastPosition);
+                if (position == null || position < 0 || position >= itemCount) continue;
+                mScratch[count++] = position;
+            }
+            Arrays.sort(mScratch, 0, count);
+
+            int i = 0;
+            while (i < count) {
+                int start = mScratch[i];
+                int end = start;
+                while (++i < count && mScratch[i] <= end + 1) {
+                    end = mScratch[i];
+                }
+                mAdapter.notifyItemRangeChanged(start, end - start + 1, entry.getKey());
+                ranges++;
+            }
+        }
+        mPending.clear();
+
+        if (Log.isPerfLoggable()) {
+            Log.perf("FrameUpdateScheduler notified " + ranges + " range(s)");
+        }
+    }
+
+    private static class Pending<Tquery> {
+        final Tquery mItem;
+        int mLastPosition;
+
+        Pending(Tquery item, int lastPosition) {
+            mItem = item;
+            mLastPosition = lastPosition;
+        }
+    }
+
+    private interface FrameCallbackCompat {
+        void post();
+
+        void remove();
+    }
+
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN)
+    private static class ChoreographerCallback implements FrameCallbackCompat, Choreographer.FrameCallback {
+        private final Runnable mRunnable;
+
+        ChoreographerCallback(Runnable runnable) {
+            mRunnable = runnable;
+        }
+
+        @Override
+        public void post() {
+            Choreographer.getInstance().postFrameCallback(this);
+        }
+
+        @Override
+        public void remove() {
+            Choreographer.getInstance().removeFrameCallback(this);
+        }
+
+        @Override
+        public void doFrame(long frameTimeNanos) {
+            mRunnable.run();
+        }
+    }
+
+    private static class HandlerCallback implements FrameCallbackCompat {
+        private final Handler mHandler = new Handler(Looper.getMainLooper());
+        private final Runnable mRunnable;
+
+        HandlerCallback(Runnable runnable) {
+            mRunnable = runnable;
+        }
+
+        @Override
+        public void post() {
+            mHandler.post(mRunnable);
+        }
+
+        @Override
+        public void remove() {
+            mHandler.removeCallbacks(mRunnable);
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package com.layer.atlas.adapters;
+
+import android.content.Context;
+
+import com.layer.atlas.util.Util;
+import com.layer.sdk.messaging.Identity;
+import com.layer.sdk.messaging.Message;
+
+import java.text.DateFormat;
+import java.util.Calendar;
+import java.util.Date;
+
+/**
+ * Immutable per-Message values applied to a cell by AtlasMessagesAdapter when binding.  Models are
+ * built off the main thread wherever possible, so binding only copies precomputed strings and flags
+ * into Views.  Day labels like "Today" depend on the current date, so a model reports itself stale
+ * once the day it was built on has ended.  A Message with no received date yet shows the current
+ * time, as it did before models were cached, so its model is always stale.
+ */
+final class MessageBindModel {
+    private final boolean mOneOnOne;
+    private final String mSenderName;
+    private final String mTimeDay;
+    private final String mTime;
+    private final long mValidUntil;
+
+    private MessageBindModel(boolean oneOnOne, String senderName, String timeDay, String time, long validUntil) {
+        mOneOnOne = oneOnOne;
+        mSenderName = senderName;
+        mTimeDay = timeDay;
+        mTime = time;
+        mValidUntil = validUntil;
+    }
+
+    /**
+     * Builds a MessageBindModel for the given Message.
+     *
+     * @param formatter Formatter owned by the calling thread.
+     * @param message   Message to build a model for.
+     * @return A new MessageBindModel.
+     */
+    static MessageBindModel create(Formatter formatter, Message message) {
+        boolean oneOnOne = message.getConversation().getParticipants().size() == 2;
+
+        Identity sender = message.getSender();
+        String senderName = (sender != null) ? Util.getDisplayName(sender) : null;
+
+        Date receivedAt = message.getReceivedAt();
+        boolean pending = receivedAt == null;
+        if (pending) receivedAt = new Date();
+        String timeDay = Util.formatTimeDay(formatter.mContext, receivedAt, formatter.mDayOfWeekFormat);
+        String time = " " + formatter.mTimeFormat.format(receivedAt.getTime());
+        if (pending) return new MessageBindModel(oneOnOne, senderName, timeDay, time, 0);
+
+        Calendar cal = Calendar.getInstance();
+        cal.set(Calendar.HOUR_OF_DAY, 0);
+        cal.set(Calendar.MINUTE, 0);
+        cal.set(Calendar.SECOND, 0);
+        cal.set(Calendar.MILLISECOND, 0);
+        cal.add(Calendar.DAY_OF_YEAR, 1);
+
+        return new MessageBindModel(oneOnOne, senderName, timeDay, time, cal.getTimeInMillis());
+    }
+
+    public boolean isOneOnOne() {
+        return mOneOnOne;
+    }
+
+    /**
+     * @return The sender's display name, or `null` if the Message has no sender.
+     */
+    public String getSenderName() {
+        return mSenderName;
+    }
+
+    public String getTimeDay() {
+        return mTimeDay;
+    }
+
+    public String getTime() {
+        return mTime;
+    }
+
+    public boolean isStale(long now) {
+        return now >= mValidUntil;
+    }
+
+    /**
+     * Date formats for building models.  DateFormat is not thread-safe, so each thread building
+     * models needs its own Formatter.
+     */
+    static final class Formatter {
+        private final Context mContext;
+        private final DateFormat mTimeFormat;
+        private final DateFormat mDayOfWeekFormat;
+
+        Formatter(Context context) {
+            mContext = context;
+            mTimeFormat = android.text.format.DateFormat.getTimeFormat(context);
+            mDayOfWeekFormat = Util.newDayOfWeekFormat();
+        }
+    }
+}
@@ -0,0 +1,195 @@
+package com.layer.atlas.adapters;
+
+import java.util.Arrays;
+
+/**
+ * Position-indexed table of clustering links between adjacent Messages in an AtlasMessagesAdapter.
+ * The link stored at position `p` describes how the Message at `p` clusters with the Message at
+ * `p - 1`, so binding the cell at `p` reads the links at `p` and `p + 1`.  Links are opaque bytes
+ * encoded by the adapter; the table only shifts them as the query inserts and removes items, and
+ * reports UNKNOWN for links that have not been computed since they were last invalidated.
+ * <p>
+ * Only a fixed-capacity window of positions is stored, so memory stays flat regardless of how many
+ * Messages the query holds.  Storing a link outside the window with set() re-centers the window on
+ * that position, evicting links far from the range currently being bound.  Only binding should
+ * call set(); data-change bookkeeping uses update(), which never moves the window, so a change far
+ * from the screen cannot evict the links around it.
+ */
+class MessageClusterTable {
+    public static final byte UNKNOWN = -1;
+
+    public static final int DEFAULT_CAPACITY = 1024;
+
+    private byte[] mLinks;
+    private int mSize = 0;
+    private int mWindowStart = 0;
+    private int mWindowLength = 0;
+
+    public MessageClusterTable() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public MessageClusterTable(int capacity) {
+        mLinks = new byte[capacity];
+    }
+
+    /**
+     * Discards all links and sizes the table for `size` positions.
+     *
+     * @param size Number of items in the underlying query.
+     */
+    public void reset(int size) {
+        mSize = size;
+        mWindowStart = Math.max(0, Math.min(mWindowStart, size - mLinks.length));
+        mWindowLength = 0;
+        normalizeWindow();
+    }
+
+    /**
+     * Changes the number of positions this table stores, discarding all stored links.
+     *
+     * @param capacity Maximum number of positions to store links for.
+     */
+    public void setCapacity(int capacity) {
+        if (capacity < 1) throw new IllegalArgumentException("Capacity must be positive");
+        mLinks = new byte[capacity];
+        reset(mSize);
+    }
+
+    public int getCapacity() {
+        return mLinks.length;
+    }
+
+    public int size() {
+        return mSize;
+    }
+
+    /**
+     * Returns the number of bytes retained for stored links.
+     */
+    public int getFootprintBytes() {
+        return mLinks.length;
+    }
+
+    public byte get(int position) {
+        if (!isInWindow(position)) return UNKNOWN;
+        return mLinks[position - mWindowStart];
+    }
+
+    /**
+     * Stores a link computed while binding, re-centering the window on `position` if it falls
+     * outside.
+     */
+    public void set(int position, byte link) {
+        if (position < 0 || position >= mSize) return;
+        if (!isInWindow(position)) {
+            if (link == UNKNOWN) return;
+            moveWindow(position);
+        }
+        mLinks[position - mWindowStart] = link;
+    }
+
+    /**
+     * Stores a link only if `position` is inside the current window.
+     *
+     * @return `true` if the link was stored.
+     */
+    public boolean update(int position, byte link) {
+        if (!isInWindow(position)) return false;
+        mLinks[position - mWindowStart] = link;
+        return true;
+    }
+
+    /**
+     * @return `true` if a link at `position` can be stored without moving the window.
+     */
+    public boolean isInWindow(int position) {
+        return position >= mWindowStart && position < mWindowStart + mWindowLength;
+    }
+
+    /**
+     * @return The first position covered by the window.
+     */
+    public int getWindowStart() {
+        return mWindowStart;
+    }
+
+    /**
+     * Opens `count` UNKNOWN links at `positionStart`, shifting later links up.
+     */
+    public void insert(int positionStart, int count) {
+        if (positionStart < 0 || positionStart > mSize || count <= 0) return;
+        mSize += count;
+        int local = positionStart - mWindowStart;
+        if (local <= 0) {
+            mWindowStart += count;
+        } else if (local < mWindowLength) {
+            int kept = Math.max(0, Math.min(mWindowLength - local, mLinks.length - local - count));
+            if (kept > 0) System.arraycopy(mLinks, local, mLinks, local + count, kept);
+            Arrays.fill(mLinks, local, Math.min(mLinks.length, local + count), UNKNOWN);
+            mWindowLength = Math.min(mLinks.length, local + count + kept);
+        }
+        normalizeWindow();
+    }
+
+    /**
+     * Removes `count` links at `positionStart`, shifting later links down.
+     */
+    public void remove(int positionStart, int count) {
+        if (positionStart < 0 || positionStart >= mSize || count <= 0) return;
+        count = Math.min(count, mSize - positionStart);
+        mSize -= count;
+        int localStart = positionStart - mWindowStart;
+        int localEnd = localStart + count;
+        int from = Math.max(0, Math.min(localStart, mWindowLength));
+        int to = Math.max(0, Math.min(localEnd, mWindowLength));
+        System.arraycopy(mLinks, to, mLinks, from, mWindowLength - to);
+        mWindowLength -= to - from;
+        if (localStart < 0) mWindowStart -= Math.min(count, -localStart);
+        normalizeWindow();
+    }
+
+    /**
+     * Marks `count` links starting at `positionStart` as UNKNOWN.
+     */
+    public void invalidate(int positionStart, int count) {
+        int start = Math.max(0, positionStart - mWindowStart);
+        int end = Math.min(mWindowLength, positionStart + count - mWindowStart);
+        if (start >= end) return;
+        Arrays.fill(mLinks, start, end, UNKNOWN);
+    }
+
+    /**
+     * Re-centers the window on `position`, keeping any links that overlap the old window.
+     */
+    private void moveWindow(int position) {
+        int capacity = mLinks.length;
+        int newStart = Math.max(0, Math.min(position - capacity / 2, mSize - capacity));
+        int overlapStart = Math.max(newStart, mWindowStart);
+        int overlapEnd = Math.min(newStart + capacity, mWindowStart + mWindowLength);
+        if (overlapStart < overlapEnd) {
+            int kept = overlapEnd - overlapStart;
+            int target = overlapStart - newStart;
+            System.arraycopy(mLinks, overlapStart - mWindowStart, mLinks, target, kept);
+            Arrays.fill(mLinks, 0, target, UNKNOWN);
+            Arrays.fill(mLinks, target + kept, capacity, UNKNOWN);
+        } else {
+            Arrays.fill(mLinks, UNKNOWN);
+        }
+        mWindowStart = newStart;
+        mWindowLength = Math.min(capacity, mSize - newStart);
+    }
+
+    /**
+     * Extends or trims the window so it covers as many valid positions as capacity allows,
+     * filling newly covered slots with UNKNOWN.
+     */
+    private void normalizeWindow() {
+        if (mWindowStart > mSize) mWindowStart = mSize;
+        int length = Math.max(0, Math.min(mLinks.length, mSize - mWindowStart));
+        if (length > mWindowLength) {
+            Arrays.fill(mLinks, mWindowLength, length, UNKNOWN);
+        }
+        mWindowLength = length;
+    }
+}
@@ -0,0 +1,129 @@
+package com.layer.atlas.adapters;
+
+import android.net.Uri;
+import android.os.Process;
+
+import com.layer.atlas.messagetypes.AtlasCellFactory;
+import com.layer.sdk.LayerClient;
+import com.layer.sdk.messaging.Message;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Parses Message content ahead of binding on a small pool of background threads.  Work is ordered
+ * by Priority, and within a Priority the most recently requested Message goes first, so content
+ * for whatever the user is looking at now is parsed before content requested earlier.  Each
+ * Message is queued at most once; requesting it again only raises its Priority.  Parses that race
+ * a bind are deduplicated by AtlasCellFactory.getParsedContent().
+ */
+class ParseScheduler {
+    private static final long KEEP_ALIVE_SECONDS = 30;
+
+    enum Priority {
+        // Currently on screen
+        VISIBLE,
+        // About to scroll on screen
+        LOOKAHEAD,
+        // Pre-parsing as the Query loads
+        BACKGROUND
+    }
+
+    private final LayerClient mLayerClient;
+    private final ThreadPoolExecutor mExecutor;
+    private final Map<Uri, ParseTask> mPending = new HashMap<>();
+    private final AtomicLong mSequence = new AtomicLong();
+
+    public ParseScheduler(LayerClient layerClient) {
+        mLayerClient = layerClient;
+        int threads = Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors() - 1));
+        mExecutor = new ThreadPoolExecutor(threads, threads, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                new PriorityBlockingQueue<Runnable>(), new ThreadFactory() {
+            private final AtomicInteger mCount = new AtomicInteger();
+
+            @Override
+            public Thread newThread(final Runnable runnable) {
+                return new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                        runnable.run();
+                    }
+                }, "AtlasParse-" + mCount.incrementAndGet());
+            }
+        });
+        mExecutor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Queues the given Message for parsing by `factory`, or raises its Priority if already queued.
+     *
+     * @param factory  AtlasCellFactory that binds the Message.
+     * @param message  Message to parse.
+     * @param priority How urgently the parsed content is needed.
+     */
+    public void schedule(AtlasCellFactory factory, Message message, Priority priority) {
+        if (mExecutor.isShutdown() || factory.isParsedContentCached(message)) return;
+        synchronized (mPending) {
+            ParseTask task = mPending.get(message.getId());
+            if (task != null) {
+                if (priority.ordinal() >= task.mPriority.ordinal()) return;
+                // Re-queue so the PriorityBlockingQueue sees the new ordering
+                if (!mExecutor.getQueue().remove(task)) return;
+                task.mPriority = priority;
+                task.mSequence = mSequence.incrementAndGet();
+            } else {
+                task = new ParseTask(factory, message, priority, mSequence.incrementAndGet());
+                mPending.put(message.getId(), task);
+            }
+            mExecutor.execute(task);
+        }
+    }
+
+    /**
+     * Drops queued parses and stops the worker threads.
+     */
+    public void shutdown() {
+        synchronized (mPending) {
+            mPending.clear();
+        }
+        mExecutor.shutdownNow();
+    }
+
+    private class ParseTask implements Runnable, Comparable<ParseTask> {
+        private final AtlasCellFactory mFactory;
+        private final Message mMessage;
+        private Priority mPriority;
+        private long mSequence;
+
+        ParseTask(AtlasCellFactory factory, Message message, Priority priority, long sequence) {
+            mFactory = factory;
+            mMessage = message;
+            mPriority = priority;
+            mSequence = sequence;
+        }
+
+        @Override
+        public void run() {
+            synchronized (mPending) {
+                mPending.remove(mMessage.getId());
+            }
+            if (mMessage.isDeleted()) return;
+            mFactory.getParsedContent(mLayerClient, mMessage);
+        }
+
+        @Override
+        public int compareTo(ParseTask other) {
+            int byPriority = mPriority.compareTo(other.mPriority);
+            if (byPriority != 0) return byPriority;
+            // Newest requests first
+            return (mSequence > other.mSequence) ? -1 : ((mSequence == other.mSequence) ? 0 : 1);
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package com.layer.atlas.adapters;
+
+import android.net.Uri;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Interns object Uris into stable item IDs for RecyclerView adapters.  IDs are handed out
+ * sequentially the first time a Uri is seen rather than derived from a hash, so two distinct Uris
+ * can never share an ID, and a Uri keeps its ID no matter how often the underlying query is
+ * refreshed or reordered.
+ * <p>
+ * Only the most recently looked-up Uris are kept, so the table does not grow with every object
+ * the adapter has ever shown.  A Uri evicted after going unused for `capacity` lookups of other
+ * Uris is far from any bound row, and simply gets a new ID if it comes back.
+ * <p>
+ * IDs below FIRST_ID are never assigned, leaving them free for adapter-specific rows like footers.
+ * Not thread-safe; call from the main thread.
+ */
+class StableIdTable {
+    public static final long FIRST_ID = 1;
+    public static final int DEFAULT_CAPACITY = 2048;
+
+    private final LinkedHashMap<Uri, Long> mIds = new LinkedHashMap<Uri, Long>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Uri, Long> eldest) {
+            return size() > mCapacity;
+        }
+    };
+    private int mCapacity;
+    private long mNextId = FIRST_ID;
+
+    public StableIdTable() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public StableIdTable(int capacity) {
+        setCapacity(capacity);
+    }
+
+    /**
+     * Sets how many Uris keep their IDs, evicting the least recently looked-up Uris if needed.
+     *
+     * @param capacity Number of Uris to retain.  Should exceed the number of rows the query holds
+     *                 near the bound range.
+     */
+    public void setCapacity(int capacity) {
+        if (capacity < 1) throw new IllegalArgumentException("Capacity must be positive");
+        mCapacity = capacity;
+        Iterator<Uri> eldest = mIds.keySet().iterator();
+        while (mIds.size() > mCapacity && eldest.hasNext()) {
+            eldest.next();
+            eldest.remove();
+        }
+    }
+
+    public int getCapacity() {
+        return mCapacity;
+    }
+
+    /**
+     * Returns the stable ID for the given Uri, assigning a new one if it has not been seen.
+     *
+     * @param uri Object Uri to look up.
+     * @return The interned ID for `uri`.
+     */
+    public long getId(Uri uri) {
+        Long id = mIds.get(uri);
+        if (id == null) {
+            id = mNextId++;
+            mIds.put(uri, id);
+        }
+        return id;
+    }
+
+    public int size() {
+        return mIds.size();
+    }
+}
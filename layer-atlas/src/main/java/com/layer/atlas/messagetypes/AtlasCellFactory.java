@@ -1,14 +1,18 @@
 package com.layer.atlas.messagetypes;
 
 import android.content.Context;
+import android.os.Looper;
 import android.support.v7.widget.RecyclerView;
-import android.util.LruCache;
 import android.view.LayoutInflater;
 import android.view.ViewGroup;
 
 import com.layer.sdk.LayerClient;
 import com.layer.sdk.messaging.Message;
 
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+
 /**
  * CellFactories manage one or more types ot Messages for display within an AtlasMessagesAdapter.
  * Factories know what types of Messages they can render, generate ViewHolders for rendering their
@@ -16,14 +20,20 @@ import com.layer.sdk.messaging.Message;
  * display.
  */
 public abstract class AtlasCellFactory<Tholder extends AtlasCellFactory.CellHolder, Tcache extends AtlasCellFactory.ParsedContent> {
-    private LruCache<String, Tcache> mCache;
+    private volatile ParsedContentCache.Account mCacheAccount;
+    private volatile ParsedContentDiskCache mDiskCache;
     private final int mCacheBytes;
+    private final CellFactoryStats mStats = new CellFactoryStats();
+    private final Map<String, CountDownLatch> mInFlight = new HashMap<>();
     protected MessageStyle mMessageStyle;
 
     /**
-     * Constructs an AtlasCellFactory with a parsed content cache of `cacheBytes` size.
+     * Constructs an AtlasCellFactory that caches parsed content in the default ParsedContentCache.
      *
-     * @param cacheBytes Maximum bytes of parsed content to maintain in an LRU cache.
+     * @param cacheBytes Relative weight of this factory's share of the shared cache budget.  When
+     *                   the cache is full, factories holding more than their share lose entries
+     *                   first.
+     * @see ParsedContentCache#getDefault()
      */
     public AtlasCellFactory(int cacheBytes) {
         this.mCacheBytes = cacheBytes;
@@ -93,31 +103,184 @@ public abstract class AtlasCellFactory<Tholder extends AtlasCellFactory.CellHold
 
     /**
      * Returns previously parsed content for this Message, or calls parseContent() if it has not
-     * been previously parsed.
+     * been previously parsed.  Safe to call from any thread: if another background thread is
+     * already parsing the same Message, this waits for and returns that result instead of parsing
+     * it again.  The main thread never waits on a background-priority parse: it reads the entry
+     * from the disk tier itself if the entry is small, and parses inline otherwise.
      *
      * @param message Message to return parsed content object for.
      * @return Parsed content object for the given Message.
      */
+    @SuppressWarnings("unchecked")
     public Tcache getParsedContent(LayerClient layerClient, Message message) {
-        if (mCache == null) {
-            mCache = new LruCache<String, Tcache>(mCacheBytes) {
-                @Override
-                protected int sizeOf(String key, Tcache value) {
-                    return value.sizeOf();
+        ParsedContentCache.Account account = getCacheAccount();
+        String id = message.getId().toString();
+        Tcache value = (Tcache) account.get(id);
+        if (value != null) {
+            mStats.recordCacheHit();
+            return value;
+        }
+
+        CountDownLatch latch;
+        boolean owner;
+        synchronized (mInFlight) {
+            // A parse may have finished between the cache check and taking the lock
+            value = (Tcache) account.get(id);
+            if (value != null) {
+                mStats.recordCacheHit();
+                return value;
+            }
+            latch = mInFlight.get(id);
+            owner = (latch == null);
+            if (owner) {
+                latch = new CountDownLatch(1);
+                mInFlight.put(id, latch);
+            }
+        }
+
+        // The main thread reads or parses a duplicate rather than block the UI on a background-priority worker
+        boolean mainThread = Looper.myLooper() == Looper.getMainLooper();
+        if (!owner && !mainThread) {
+            try {
+                latch.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            value = (Tcache) account.get(id);
+            if (value != null) {
+                mStats.recordCacheHit();
+                return value;
+            }
+            // The other parse produced nothing cacheable, so parse here without registering
+        }
+
+        try {
+            mStats.recordCacheMiss();
+            ParsedContentDiskCache diskCache = mDiskCache;
+            ParsedContentSerializer<Tcache> serializer = (diskCache == null) ? null : getParsedContentSerializer();
+            String factoryType = getClass().getName();
+            // A main-thread miss reads only a single small entry, so a cold open binds its first
+            // screen from disk before the background schedule has caught up
+            if (serializer != null) {
+                long maxBytes = mainThread ? ParsedContentDiskCache.MAIN_THREAD_MAX_READ_BYTES : Long.MAX_VALUE;
+                value = diskCache.read(factoryType, serializer, id, maxBytes);
+                if (value != null) {
+                    mStats.recordDiskHit();
+                    account.put(id, value);
+                    return value;
+                }
+            }
+
+            long start = System.nanoTime();
+            value = parseContent(layerClient, message);
+            mStats.recordParse(System.nanoTime() - start);
+            if (value != null) {
+                account.put(id, value);
+                if (serializer != null && serializer.isPersistable(value)) {
+                    diskCache.write(factoryType, serializer, id, value);
                 }
-            };
+            }
+            return value;
+        } finally {
+            if (owner) {
+                synchronized (mInFlight) {
+                    mInFlight.remove(id);
+                }
+                latch.countDown();
+            }
         }
+    }
 
-        String id = message.getId().toString();
-        Tcache value = mCache.get(id);
-        if (value != null) return value;
-        value = parseContent(layerClient, message);
-        if (value != null) mCache.put(id, value);
-        return value;
+    /**
+     * Returns `true` if parsed content for this Message is already cached.
+     *
+     * @param message Message to check.
+     * @return `true` if getParsedContent() would return without parsing.
+     */
+    public boolean isParsedContentCached(Message message) {
+        return getCacheAccount().get(message.getId().toString()) != null;
+    }
+
+    /**
+     * Drops any cached parsed content for this Message, so the next getParsedContent() parses it
+     * again.  Use when content was parsed from data that has since changed, such as a MessagePart
+     * that finished downloading.
+     *
+     * @param message Message whose parsed content is stale.
+     */
+    protected void invalidateParsedContent(Message message) {
+        getCacheAccount().remove(message.getId().toString());
+    }
+
+    /**
+     * Moves this AtlasCellFactory to the given ParsedContentCache.  Content cached so far is left
+     * behind and will be parsed again as needed.
+     *
+     * @param cache ParsedContentCache to use, or `null` for the default.
+     */
+    public synchronized void setParsedContentCache(ParsedContentCache cache) {
+        if (cache == null) cache = ParsedContentCache.getDefault();
+        mCacheAccount = cache.createAccount(mCacheBytes);
+    }
+
+    /**
+     * Sets a persistent tier consulted before parsing and written after parsing.  Only used if
+     * getParsedContentSerializer() returns a serializer.  Background threads such as the
+     * ParseScheduler's read any entry; the main thread only reads small entries, so a bind never
+     * waits on more than one short read.
+     *
+     * @param diskCache ParsedContentDiskCache to use, or `null` to disable persistence.
+     */
+    public void setParsedContentDiskCache(ParsedContentDiskCache diskCache) {
+        mDiskCache = diskCache;
+    }
+
+    /**
+     * Override to persist this factory's parsed content in a ParsedContentDiskCache.
+     *
+     * @return A serializer for this factory's ParsedContent, or `null` to opt out.
+     */
+    protected ParsedContentSerializer<Tcache> getParsedContentSerializer() {
+        return null;
+    }
+
+    private ParsedContentCache.Account getCacheAccount() {
+        ParsedContentCache.Account account = mCacheAccount;
+        if (account != null) return account;
+        synchronized (this) {
+            if (mCacheAccount == null) setParsedContentCache(null);
+            return mCacheAccount;
+        }
+    }
+
+    /**
+     * Returns timing and cache statistics for this AtlasCellFactory.  Parsing is recorded here;
+     * creating and binding CellHolders is recorded by the AtlasMessagesAdapter that calls them.
+     *
+     * @return This AtlasCellFactory's statistics.
+     */
+    public CellFactoryStats getStats() {
+        return mStats;
     }
 
     public abstract boolean isType(Message message);
 
+    /**
+     * Returns `true` if isBindable() and isType() depend only on the Message's MessagePart count
+     * and their ordered MIME types.  A CellFactoryIndex then resolves this factory once per MIME
+     * signature instead of once per Message.  Factories that also inspect MessagePart data, sender,
+     * or anything else must leave this `false` so they are asked about every Message.  The
+     * built-in factories return `true` only for their own class, since a subclass may override
+     * isBindable() or isType() to inspect content; a subclass that still matches on MIME types
+     * alone can override this to return `true`.
+     *
+     * @return `true` if this factory matches on MIME types alone.
+     * @see CellFactoryIndex
+     */
+    public boolean isMimeTypeMatcher() {
+        return false;
+    }
+
     public abstract String getPreviewText(Context context, Message message);
 
     /**
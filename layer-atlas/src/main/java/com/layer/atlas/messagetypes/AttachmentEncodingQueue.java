@@ -0,0 +1,320 @@
+package com.layer.atlas.messagetypes;
+
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+
+import com.layer.atlas.util.BitmapPool;
+import com.layer.atlas.util.Log;
+import com.layer.sdk.messaging.Conversation;
+import com.layer.sdk.messaging.Message;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Builds attachment Messages off the main thread.  Encoders run on a small pool of background
+ * threads, so several images can be decoded and compressed at once, but their Messages are handed
+ * back on the main thread strictly in the order they were enqueued for each Conversation: a photo
+ * that finishes compressing early waits for the larger photo queued before it.  Messages that need
+ * no encoding can be queued too, so a text Message sent right after a photo stays behind it.
+ * <p>
+ * All methods must be called on the main thread.
+ *
+ * @see MessageSender#encodeAndSend(Encoder)
+ */
+public class AttachmentEncodingQueue {
+    public static final int DEFAULT_THREADS = 2;
+    private static final long KEEP_ALIVE_SECONDS = 30;
+
+    private static AttachmentEncodingQueue sDefault;
+
+    private final ThreadPoolExecutor mExecutor;
+    private final Handler mUiThreadHandler = new Handler(Looper.getMainLooper());
+    private final Map<Uri, LinkedList<Job>> mJobs = new HashMap<Uri, LinkedList<Job>>();
+    private final List<Observer> mObservers = new ArrayList<Observer>();
+
+    /**
+     * Returns the AttachmentEncodingQueue shared by MessageSenders and AtlasMessagesAdapters.
+     */
+    public static synchronized AttachmentEncodingQueue getDefault() {
+        if (sDefault == null) sDefault = new AttachmentEncodingQueue(DEFAULT_THREADS);
+        return sDefault;
+    }
+
+    public AttachmentEncodingQueue(int threads) {
+        threads = Math.max(1, threads);
+        mExecutor = new ThreadPoolExecutor(threads, threads, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+            private final AtomicInteger mCount = new AtomicInteger();
+
+            @Override
+            public Thread newThread(final Runnable runnable) {
+                return new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                        runnable.run();
+                    }
+                }, "AtlasAttachmentEncoder-" + mCount.incrementAndGet());
+            }
+        });
+        mExecutor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Queues an Encoder for the given Conversation.  The Encoder runs on a background thread, and
+     * the Listener is called on the main thread once every Job queued before it for the same
+     * Conversation has been delivered.
+     *
+     * @param conversation Conversation the encoded Message will be sent to.
+     * @param encoder      Encoder building the Message.
+     * @param listener     Listener for the Job's progress.
+     * @return The queued Job.
+     */
+    public Job enqueue(Conversation conversation, Encoder encoder, Listener listener) {
+        final Job job = new Job(conversation, encoder, listener);
+        add(job);
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                encode(job);
+            }
+        });
+        return job;
+    }
+
+    /**
+     * Queues an already-built Message behind any Jobs pending for the given Conversation.  If
+     * nothing is pending, the Listener is called before this returns.
+     *
+     * @param conversation Conversation the Message will be sent to.
+     * @param message      Message to deliver in order.
+     * @param listener     Listener to receive the Message.
+     * @return The queued Job.
+     */
+    public Job enqueue(Conversation conversation, Message message, Listener listener) {
+        Job job = new Job(conversation, null, listener);
+        job.mMessage = message;
+        job.mState = Job.STATE_DONE;
+        add(job);
+        deliver(conversation.getId());
+        return job;
+    }
+
+    /**
+     * @return `true` if any Job is waiting to be delivered for the given Conversation.
+     */
+    public boolean hasPending(Conversation conversation) {
+        LinkedList<Job> jobs = mJobs.get(conversation.getId());
+        return jobs != null && !jobs.isEmpty();
+    }
+
+    /**
+     * @return The number of Jobs with an Encoder that are waiting to be delivered for the given
+     * Conversation, which is the number of placeholders to show for it.
+     */
+    public int getEncodingCount(Conversation conversation) {
+        return getEncodingJobs(conversation).size();
+    }
+
+    /**
+     * @return The Jobs with an Encoder that are waiting to be delivered for the given Conversation,
+     * in queue order.
+     */
+    public List<Job> getEncodingJobs(Conversation conversation) {
+        LinkedList<Job> jobs = mJobs.get(conversation.getId());
+        if (jobs == null) return Collections.emptyList();
+        List<Job> encoding = new ArrayList<Job>(jobs.size());
+        for (Job job : jobs) {
+            if (job.mEncoder != null) encoding.add(job);
+        }
+        return encoding;
+    }
+
+    public AttachmentEncodingQueue addObserver(Observer observer) {
+        if (!mObservers.contains(observer)) mObservers.add(observer);
+        return this;
+    }
+
+    public AttachmentEncodingQueue removeObserver(Observer observer) {
+        mObservers.remove(observer);
+        return this;
+    }
+
+    private void add(Job job) {
+        Uri id = job.mConversation.getId();
+        LinkedList<Job> jobs = mJobs.get(id);
+        if (jobs == null) {
+            jobs = new LinkedList<Job>();
+            mJobs.put(id, jobs);
+        }
+        jobs.add(job);
+        if (job.mEncoder != null) notifyObservers(id);
+    }
+
+    /**
+     * Runs on an encoder thread.
+     */
+    private void encode(final Job job) {
+        mUiThreadHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                job.mListener.onEncodingStarted(job);
+            }
+        });
+
+        long start = System.nanoTime();
+        Message message = null;
+        Throwable error = null;
+        try {
+            message = job.mEncoder.encode();
+            if (message == null) error = new IllegalStateException("Encoder returned no Message");
+        } catch (Exception e) {
+            error = e;
+        } catch (OutOfMemoryError e) {
+            error = e;
+        }
+        if (Log.isPerfLoggable()) {
+            Log.perf("Attachment encoded in " + ((System.nanoTime() - start) / 1000000) + "ms");
+        }
+
+        final Message result = message;
+        final Throwable failure = error;
+        mUiThreadHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                job.mMessage = result;
+                job.mError = failure;
+                job.mState = Job.STATE_DONE;
+                deliver(job.mConversation.getId());
+            }
+        });
+    }
+
+    /**
+     * Delivers finished Jobs from the head of a Conversation's queue, stopping at the first Job
+     * still encoding.
+     */
+    private void deliver(Uri conversationId) {
+        LinkedList<Job> jobs = mJobs.get(conversationId);
+        if (jobs == null) return;
+        boolean removedEncoded = false;
+        while (!jobs.isEmpty() && jobs.getFirst().mState == Job.STATE_DONE) {
+            Job job = jobs.removeFirst();
+            if (job.mEncoder != null) removedEncoded = true;
+            if (job.mError != null) {
+                if (Log.isLoggable(Log.ERROR)) Log.e("Attachment encoding failed", job.mError);
+                job.mListener.onEncodingFailed(job, job.mError);
+            } else {
+                job.mListener.onEncoded(job, job.mMessage);
+            }
+            // Messages without a placeholder are not needed after delivery
+            if (job.mEncoder == null) job.mMessage = null;
+        }
+        if (jobs.isEmpty() && mJobs.get(conversationId) == jobs) mJobs.remove(conversationId);
+        // Encoders are the only users of pooled Bitmaps, so nothing will reuse them until more are queued
+        if (mJobs.isEmpty()) BitmapPool.getDefault().evictAll();
+        // Observers can keep a delivered Job's placeholder until its Message appears in their Query
+        if (removedEncoded) notifyObservers(conversationId);
+    }
+
+    private void notifyObservers(Uri conversationId) {
+        for (Observer observer : new ArrayList<Observer>(mObservers)) {
+            observer.onEncodingCountChanged(this, conversationId);
+        }
+    }
+
+    /**
+     * Builds a Message on an encoder thread.
+     */
+    public interface Encoder {
+        Message encode() throws Exception;
+    }
+
+    /**
+     * Receives a Job's progress on the main thread.
+     */
+    public interface Listener {
+        void onEncodingStarted(Job job);
+
+        /**
+         * Called in queue order once the Message is built and every earlier Job for the same
+         * Conversation has been delivered.
+         */
+        void onEncoded(Job job, Message message);
+
+        void onEncodingFailed(Job job, Throwable error);
+    }
+
+    /**
+     * Notified on the main thread when the number of placeholders for a Conversation changes.
+     *
+     * @see #getEncodingCount(Conversation)
+     */
+    public interface Observer {
+        void onEncodingCountChanged(AttachmentEncodingQueue queue, Uri conversationId);
+    }
+
+    /**
+     * One queued Message.
+     */
+    public static final class Job {
+        private static final int STATE_ENCODING = 0;
+        private static final int STATE_DONE = 1;
+
+        private static long sNextId = 0;
+
+        private final long mId;
+        private final Conversation mConversation;
+        private final Encoder mEncoder;
+        private final Listener mListener;
+        private int mState = STATE_ENCODING;
+        private Message mMessage;
+        private Throwable mError;
+
+        private Job(Conversation conversation, Encoder encoder, Listener listener) {
+            mId = sNextId++;
+            mConversation = conversation;
+            mEncoder = encoder;
+            mListener = listener;
+        }
+
+        /**
+         * @return An ID unique to this Job within the process, for example for stable item IDs.
+         */
+        public long getId() {
+            return mId;
+        }
+
+        public Conversation getConversation() {
+            return mConversation;
+        }
+
+        /**
+         * @return The encoded Message, or `null` while encoding, if encoding failed, or if the
+         * Message was not sent.
+         */
+        public Message getMessage() {
+            return mMessage;
+        }
+
+        /**
+         * Records that the encoded Message was not sent after all, for example because
+         * MessageSender.Callback.beforeSend() aborted it.
+         */
+        void discardMessage() {
+            mMessage = null;
+        }
+    }
+}
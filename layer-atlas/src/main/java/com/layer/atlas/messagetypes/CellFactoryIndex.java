@@ -0,0 +1,121 @@
+package com.layer.atlas.messagetypes;
+
+import android.net.Uri;
+import android.util.LruCache;
+
+import com.layer.sdk.messaging.Message;
+import com.layer.sdk.messaging.MessagePart;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Resolves the AtlasCellFactory for a Message without asking every factory about every Message.
+ * A Message's MIME signature - its MessagePart count and ordered MIME types - is computed once per
+ * Message, and the first matching factory is memoized per signature.  Factories that report
+ * isMimeTypeMatcher() are resolved through that memo; all others are content-based and are asked
+ * explicitly, in registration order, ahead of the memoized match.  The result is always the same
+ * factory a linear scan would pick.
+ * <p>
+ * Safe to use from any thread.  Call invalidate() whenever the set of factories changes.
+ */
+public class CellFactoryIndex {
+    private static final int MESSAGE_CACHE_SIZE = 500;
+
+    private final Collection<? extends AtlasCellFactory> mFactories;
+    private final boolean mMatchType;
+    private final ConcurrentHashMap<String, Resolution> mBySignature = new ConcurrentHashMap<>();
+    private final LruCache<Uri, Resolution> mByMessage = new LruCache<>(MESSAGE_CACHE_SIZE);
+
+    /**
+     * @param factories Factories in priority order.  Read again after each invalidate().
+     * @param matchType `true` to match with isType(), as when building previews, or `false` to
+     *                  match with isBindable(), as when binding cells.
+     */
+    public CellFactoryIndex(Collection<? extends AtlasCellFactory> factories, boolean matchType) {
+        mFactories = factories;
+        mMatchType = matchType;
+    }
+
+    /**
+     * Returns the first factory that matches the given Message.
+     *
+     * @param message Message to resolve.
+     * @return The matching AtlasCellFactory, or `null` if none matches.
+     */
+    public AtlasCellFactory get(Message message) {
+        Uri id = message.getId();
+        Resolution resolution = mByMessage.get(id);
+        if (resolution == null) {
+            String signature = getSignature(message);
+            resolution = mBySignature.get(signature);
+            if (resolution == null) {
+                resolution = resolve(message);
+                mBySignature.put(signature, resolution);
+            }
+            mByMessage.put(id, resolution);
+        }
+
+        for (AtlasCellFactory factory : resolution.mContentBased) {
+            if (matches(factory, message)) return factory;
+        }
+        return resolution.mFactory;
+    }
+
+    /**
+     * Forgets all memoized resolutions.
+     */
+    public void invalidate() {
+        mBySignature.clear();
+        mByMessage.evictAll();
+    }
+
+    /**
+     * Returns the MIME signature of a Message: its MessagePart count followed by each MessagePart's
+     * MIME type, in order.
+     */
+    public static String getSignature(Message message) {
+        List<MessagePart> parts = message.getMessageParts();
+        StringBuilder builder = new StringBuilder(16 * (parts.size() + 1));
+        builder.append(parts.size());
+        for (MessagePart part : parts) {
+            builder.append('|').append(part.getMimeType());
+        }
+        return builder.toString();
+    }
+
+    private Resolution resolve(Message message) {
+        List<AtlasCellFactory> contentBased = new ArrayList<>();
+        AtlasCellFactory[] factories;
+        synchronized (mFactories) {
+            factories = mFactories.toArray(new AtlasCellFactory[mFactories.size()]);
+        }
+        for (AtlasCellFactory factory : factories) {
+            if (!factory.isMimeTypeMatcher()) {
+                contentBased.add(factory);
+            } else if (matches(factory, message)) {
+                return new Resolution(factory, contentBased);
+            }
+        }
+        return new Resolution(null, contentBased);
+    }
+
+    private boolean matches(AtlasCellFactory factory, Message message) {
+        return mMatchType ? factory.isType(message) : factory.isBindable(message);
+    }
+
+    private static final class Resolution {
+        // First MIME-matching factory for the signature, or null
+        private final AtlasCellFactory mFactory;
+
+        // Content-based factories registered ahead of mFactory, asked on every lookup
+        private final AtlasCellFactory[] mContentBased;
+
+        private Resolution(AtlasCellFactory factory, List<AtlasCellFactory> contentBased) {
+            mFactory = factory;
+            mContentBased = contentBased.toArray(new AtlasCellFactory[contentBased.size()]);
+        }
+    }
+}
@@ -0,0 +1,118 @@
+package com.layer.atlas.messagetypes;
+
+import com.layer.atlas.util.TimingHistogram;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Timing and cache statistics for one AtlasCellFactory: how long parseContent(), createCellHolder()
+ * and bindCellHolder() take, and how often getParsedContent() is served from cache.  Recording is
+ * allocation-free and safe from any thread.
+ */
+public final class CellFactoryStats {
+    private final TimingHistogram mParse = new TimingHistogram();
+    private final TimingHistogram mCreate = new TimingHistogram();
+    private final TimingHistogram mBind = new TimingHistogram();
+    private final AtomicLong mCacheHits = new AtomicLong();
+    private final AtomicLong mCacheMisses = new AtomicLong();
+    private final AtomicLong mDiskHits = new AtomicLong();
+
+    public void recordParse(long nanos) {
+        mParse.record(nanos);
+    }
+
+    public void recordCreate(long nanos) {
+        mCreate.record(nanos);
+    }
+
+    public void recordBind(long nanos) {
+        mBind.record(nanos);
+    }
+
+    public void recordCacheHit() {
+        mCacheHits.incrementAndGet();
+    }
+
+    public void recordCacheMiss() {
+        mCacheMisses.incrementAndGet();
+    }
+
+    public void recordDiskHit() {
+        mDiskHits.incrementAndGet();
+    }
+
+    public void reset() {
+        mParse.reset();
+        mCreate.reset();
+        mBind.reset();
+        mCacheHits.set(0);
+        mCacheMisses.set(0);
+        mDiskHits.set(0);
+    }
+
+    public Snapshot snapshot() {
+        return new Snapshot(mParse.snapshot(), mCreate.snapshot(), mBind.snapshot(), mCacheHits.get(), mCacheMisses.get(), mDiskHits.get());
+    }
+
+    /**
+     * An immutable copy of a CellFactoryStats.
+     */
+    public static final class Snapshot {
+        private final TimingHistogram.Snapshot mParse;
+        private final TimingHistogram.Snapshot mCreate;
+        private final TimingHistogram.Snapshot mBind;
+        private final long mCacheHits;
+        private final long mCacheMisses;
+        private final long mDiskHits;
+
+        private Snapshot(TimingHistogram.Snapshot parse, TimingHistogram.Snapshot create, TimingHistogram.Snapshot bind, long cacheHits, long cacheMisses, long diskHits) {
+            mParse = parse;
+            mCreate = create;
+            mBind = bind;
+            mCacheHits = cacheHits;
+            mCacheMisses = cacheMisses;
+            mDiskHits = diskHits;
+        }
+
+        /**
+         * @return Durations of parseContent() calls.
+         */
+        public TimingHistogram.Snapshot getParse() {
+            return mParse;
+        }
+
+        /**
+         * @return Durations of createCellHolder() calls, including inflation.
+         */
+        public TimingHistogram.Snapshot getCreate() {
+            return mCreate;
+        }
+
+        /**
+         * @return Durations of bindCellHolder() calls.
+         */
+        public TimingHistogram.Snapshot getBind() {
+            return mBind;
+        }
+
+        public long getCacheHits() {
+            return mCacheHits;
+        }
+
+        public long getCacheMisses() {
+            return mCacheMisses;
+        }
+
+        /**
+         * @return Cache misses that were served from a ParsedContentDiskCache instead of parsing.
+         */
+        public long getDiskHits() {
+            return mDiskHits;
+        }
+
+        @Override
+        public String toString() {
+            return "parse[" + mParse + "] create[" + mCreate + "] bind[" + mBind + "] cache[hits=" + mCacheHits + " misses=" + mCacheMisses + " disk=" + mDiskHits + "]";
+        }
+    }
+}
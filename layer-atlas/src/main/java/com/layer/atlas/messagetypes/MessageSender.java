@@ -16,6 +16,7 @@ public abstract class MessageSender {
 
     private Context mContext;
     private LayerClient mLayerClient;
+    private AttachmentEncodingQueue mEncodingQueue = AttachmentEncodingQueue.getDefault();
 
     public void init(Context context, LayerClient layerClient) {
         mContext = context;
@@ -43,6 +44,19 @@ public abstract class MessageSender {
         return this;
     }
 
+    /**
+     * Sets the AttachmentEncodingQueue used by encodeAndSend(), which defaults to the shared queue.
+     * Give AtlasMessagesRecyclerView.setEncodingQueue() the same queue so it shows placeholders
+     * for this MessageSender's Messages.
+     *
+     * @param encodingQueue AttachmentEncodingQueue for building and ordering Messages.
+     * @see #encodeAndSend(AttachmentEncodingQueue.Encoder)
+     */
+    public MessageSender setEncodingQueue(AttachmentEncodingQueue encodingQueue) {
+        mEncodingQueue = encodingQueue;
+        return this;
+    }
+
     protected Context getContext() {
         return mContext;
     }
@@ -53,14 +67,47 @@ public abstract class MessageSender {
 
     /**
      * Sends the given Message to this MessageSender's Conversation.  If a Callback is registered,
-     * the Callback may add options or abort sending.
+     * the Callback may add options or abort sending.  While attachments queued with
+     * encodeAndSend() are still being built for the Conversation, the Message waits behind them
+     * and the Callback is consulted when its turn comes.
      *
      * @param message Message to send.
-     * @return `true` if the Message was queued for sending, or `false` if aborted.
+     * @return `true` if the Message was sent or is waiting behind queued attachments, or `false`
+     * if the Callback aborted it.  A waiting Message reaches the Callback later, so it may still be
+     * aborted after this returns `true`.
      */
     protected boolean send(Message message) {
-        if ((mCallback == null) || mCallback.beforeSend(this, mLayerClient, mConversation, message)) {
-            mConversation.send(message);
+        if (mEncodingQueue != null && mEncodingQueue.hasPending(mConversation)) {
+            mEncodingQueue.enqueue(mConversation, message, mEncodingListener);
+            return true;
+        }
+        return send(mConversation, message);
+    }
+
+    /**
+     * Builds a Message with the given Encoder on a background thread and sends it to this
+     * MessageSender's Conversation, after any Messages this or other MessageSenders queued for the
+     * Conversation before it.  Use this for Messages that are expensive to build, such as images.
+     * An EncodingCallback is told when encoding starts and if it fails.
+     *
+     * @param encoder Encoder building the Message.  It must not touch Views.
+     * @see #setEncodingQueue(AttachmentEncodingQueue)
+     */
+    protected void encodeAndSend(AttachmentEncodingQueue.Encoder encoder) {
+        if (mEncodingQueue == null) {
+            try {
+                send(encoder.encode());
+            } catch (Exception e) {
+                mEncodingListener.onEncodingFailed(null, e);
+            }
+            return;
+        }
+        mEncodingQueue.enqueue(mConversation, encoder, mEncodingListener);
+    }
+
+    private boolean send(Conversation conversation, Message message) {
+        if ((mCallback == null) || mCallback.beforeSend(this, mLayerClient, conversation, message)) {
+            conversation.send(message);
             if (Log.isLoggable(Log.VERBOSE)) Log.v("Message sent by " + getClass().getSimpleName());
             return true;
         }
@@ -70,6 +117,32 @@ public abstract class MessageSender {
         return false;
     }
 
+    private final AttachmentEncodingQueue.Listener mEncodingListener = new AttachmentEncodingQueue.Listener() {
+        @Override
+        public void onEncodingStarted(AttachmentEncodingQueue.Job job) {
+            if (mCallback instanceof EncodingCallback) {
+                ((EncodingCallback) mCallback).onEncodingStarted(MessageSender.this, job.getConversation());
+            }
+        }
+
+        @Override
+        public void onEncoded(AttachmentEncodingQueue.Job job, Message message) {
+            // Lets placeholders for aborted Messages go at once instead of waiting for an insert
+            if (!send(job.getConversation(), message)) job.discardMessage();
+        }
+
+        @Override
+        public void onEncodingFailed(AttachmentEncodingQueue.Job job, Throwable error) {
+            if (Log.isLoggable(Log.ERROR)) {
+                Log.e("Encoding failed in " + MessageSender.this.getClass().getSimpleName(), error);
+            }
+            if (mCallback instanceof EncodingCallback) {
+                Conversation conversation = (job != null) ? job.getConversation() : mConversation;
+                ((EncodingCallback) mCallback).onEncodingFailed(MessageSender.this, conversation, error);
+            }
+        }
+    };
+
     /**
      * Callback alerts external classes of MessageSender events.
      */
@@ -90,4 +163,27 @@ public abstract class MessageSender {
          */
         boolean beforeSend(MessageSender sender, LayerClient layerClient, Conversation conversation, Message message);
     }
+
+    /**
+     * A Callback that also follows Messages built with encodeAndSend().  Encoded Messages reach
+     * beforeSend() as usual once encoded and in turn.
+     */
+    public interface EncodingCallback extends Callback {
+        /**
+         * Called when a background thread starts building a Message for the given Conversation.
+         *
+         * @param sender       The MessageSender building the Message.
+         * @param conversation The Conversation the Message will be sent to.
+         */
+        void onEncodingStarted(MessageSender sender, Conversation conversation);
+
+        /**
+         * Called when building a Message failed, in which case nothing is sent.
+         *
+         * @param sender       The MessageSender that was building the Message.
+         * @param conversation The Conversation the Message would have been sent to.
+         * @param error        The failure.
+         */
+        void onEncodingFailed(MessageSender sender, Conversation conversation, Throwable error);
+    }
 }
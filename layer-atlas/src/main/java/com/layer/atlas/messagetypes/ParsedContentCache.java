@@ -0,0 +1,377 @@
+package com.layer.atlas.messagetypes;
+
+import android.content.ComponentCallbacks2;
+import android.content.Context;
+import android.content.res.Configuration;
+
+import com.layer.atlas.util.Log;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A thread-safe LRU cache of ParsedContent shared by AtlasCellFactories under one global byte
+ * budget.  Entries are spread across independently locked stripes so parallel parsing threads
+ * rarely contend.  Each factory holds an Account with a weight; when the cache is over budget,
+ * entries from factories using more than their weighted share of the budget are evicted first,
+ * followed by the least recently used entries overall.  Every access stamps its entry from one
+ * global clock, and eviction merges the eldest entries of every stripe by that clock, so the order
+ * is a true LRU across stripes.
+ * <p>
+ * Entries do not reference their Account, so a factory's Account is released along with the
+ * factory.  Its remaining entries are then evicted ahead of any live factory's.
+ * <p>
+ * Register the cache with registerComponentCallbacks() to shrink it when the system is low on
+ * memory.  AtlasMessagesAdapter does this for the default cache.
+ */
+public class ParsedContentCache implements ComponentCallbacks2 {
+    public static final int DEFAULT_BUDGET_BYTES = 2 * 1024 * 1024;
+
+    private static final int STRIPE_COUNT = 8;
+
+    private static ParsedContentCache sDefault;
+
+    private final Stripe[] mStripes = new Stripe[STRIPE_COUNT];
+    private final AtomicLong mSize = new AtomicLong();
+    private final AtomicLong mClock = new AtomicLong();
+    private final Map<Account, Boolean> mAccounts = new WeakHashMap<>();
+    private int mNextAccountId = 0;
+    private volatile long mBudget;
+    private boolean mRegistered = false;
+
+    /**
+     * Returns the ParsedContentCache used by AtlasCellFactories that have not been given their own.
+     */
+    public static synchronized ParsedContentCache getDefault() {
+        if (sDefault == null) sDefault = new ParsedContentCache(DEFAULT_BUDGET_BYTES);
+        return sDefault;
+    }
+
+    public ParsedContentCache(long budgetBytes) {
+        mBudget = budgetBytes;
+        for (int i = 0; i < STRIPE_COUNT; i++) {
+            mStripes[i] = new Stripe();
+        }
+    }
+
+    /**
+     * Sets the global byte budget, evicting entries if the cache is now over budget.
+     *
+     * @param budgetBytes Maximum bytes of ParsedContent to hold.
+     * @return This ParsedContentCache.
+     */
+    public ParsedContentCache setBudget(long budgetBytes) {
+        mBudget = Math.max(0, budgetBytes);
+        trimToSize(mBudget);
+        return this;
+    }
+
+    public long getBudget() {
+        return mBudget;
+    }
+
+    /**
+     * @return Bytes of ParsedContent currently held.
+     */
+    public long getSize() {
+        return mSize.get();
+    }
+
+    /**
+     * Registers this cache for trim-memory callbacks from the application.  Safe to call more than
+     * once.
+     *
+     * @param context Any Context; its application Context is used.
+     */
+    public synchronized void registerComponentCallbacks(Context context) {
+        if (mRegistered) return;
+        context.getApplicationContext().registerComponentCallbacks(this);
+        mRegistered = true;
+    }
+
+    /**
+     * Removes every entry.
+     */
+    public void evictAll() {
+        trimToSize(0);
+    }
+
+    /**
+     * Evicts entries until the cache holds at most `maxBytes`, preferring factories over their
+     * weighted share.
+     *
+     * @param maxBytes Target size in bytes.
+     */
+    public void trimToSize(long maxBytes) {
+        evict(maxBytes);
+    }
+
+    @Override
+    public void onTrimMemory(int level) {
+        long before = mSize.get();
+        if (level >= TRIM_MEMORY_MODERATE || level == TRIM_MEMORY_RUNNING_CRITICAL) {
+            evictAll();
+        } else if (level >= TRIM_MEMORY_BACKGROUND || level == TRIM_MEMORY_RUNNING_LOW) {
+            trimToSize(mBudget / 4);
+        } else if (level >= TRIM_MEMORY_UI_HIDDEN || level == TRIM_MEMORY_RUNNING_MODERATE) {
+            trimToSize(mBudget / 2);
+        }
+        if (Log.isPerfLoggable()) {
+            Log.perf("ParsedContentCache trimmed from " + before + " to " + mSize.get() + " bytes at level " + level);
+        }
+    }
+
+    @Override
+    public void onLowMemory() {
+        evictAll();
+    }
+
+    @Override
+    public void onConfigurationChanged(Configuration newConfig) {
+        // Parsed content does not depend on configuration
+    }
+
+    //==============================================================================================
+    // Factory access
+    //==============================================================================================
+
+    /**
+     * Creates an Account for one AtlasCellFactory.  Entries are namespaced by Account, so two
+     * factories never see each other's content.
+     *
+     * @param weight Relative share of the budget this factory is entitled to.
+     */
+    Account createAccount(int weight) {
+        synchronized (mAccounts) {
+            Account account = new Account(mNextAccountId++, Math.max(1, weight));
+            mAccounts.put(account, Boolean.TRUE);
+            return account;
+        }
+    }
+
+    private AtlasCellFactory.ParsedContent get(Account account, String id) {
+        Key key = new Key(account.mId, id);
+        Stripe stripe = stripeFor(key);
+        synchronized (stripe) {
+            Entry entry = stripe.mEntries.get(key);
+            if (entry == null) return null;
+            entry.mLastAccess = mClock.incrementAndGet();
+            return entry.mValue;
+        }
+    }
+
+    private void put(Account account, String id, AtlasCellFactory.ParsedContent value) {
+        int size = value.sizeOf();
+        if (size > mBudget) {
+            // Don't leave an older value cached in place of one too large to keep
+            remove(account, id);
+            return;
+        }
+        Key key = new Key(account.mId, id);
+        Stripe stripe = stripeFor(key);
+        synchronized (stripe) {
+            Entry entry = new Entry(value, size, account.mBytes);
+            entry.mLastAccess = mClock.incrementAndGet();
+            Entry previous = stripe.mEntries.put(key, entry);
+            if (previous != null) discard(previous);
+            account.mBytes.addAndGet(size);
+            mSize.addAndGet(size);
+        }
+        if (mSize.get() > mBudget) evict(mBudget);
+    }
+
+    private void remove(Account account, String id) {
+        Key key = new Key(account.mId, id);
+        Stripe stripe = stripeFor(key);
+        synchronized (stripe) {
+            Entry entry = stripe.mEntries.remove(key);
+            if (entry != null) discard(entry);
+        }
+    }
+
+    /**
+     * Accounts for an entry that was just removed from its Stripe.  Call with the Stripe locked.
+     */
+    private void discard(Entry entry) {
+        entry.mRemoved = true;
+        entry.mAccountBytes.addAndGet(-entry.mSize);
+        mSize.addAndGet(-entry.mSize);
+    }
+
+    private void evict(long maxBytes) {
+        if (mSize.get() <= maxBytes) return;
+
+        // Snapshot each live Account's share of the target size, keyed by its usage counter
+        Map<AtomicLong, Long> shares = new IdentityHashMap<>();
+        synchronized (mAccounts) {
+            long totalWeight = 0;
+            for (Account account : mAccounts.keySet()) {
+                totalWeight += account.mWeight;
+            }
+            for (Account account : mAccounts.keySet()) {
+                shares.put(account.mBytes, (totalWeight == 0) ? 0 : maxBytes * account.mWeight / totalWeight);
+            }
+        }
+
+        // First evict only from Accounts over their share, then from anything
+        for (int pass = 0; pass < 2; pass++) {
+            boolean overShareOnly = (pass == 0);
+            while (mSize.get() > maxBytes) {
+                if (evictEldest(maxBytes, shares, overShareOnly) == 0) break;
+            }
+        }
+    }
+
+    /**
+     * Collects eviction candidates with one walk of each stripe, then evicts them in global access
+     * order until the cache is at `maxBytes`.  Each stripe is access-ordered, and contributes only
+     * its eldest entries up to the bytes still to be freed, so evicting a few entries never
+     * collects the whole cache.
+     *
+     * @return The number of entries evicted.
+     */
+    private int evictEldest(long maxBytes, Map<AtomicLong, Long> shares, boolean overShareOnly) {
+        long excess = mSize.get() - maxBytes;
+        List<Candidate> candidates = new ArrayList<>();
+        for (Stripe stripe : mStripes) {
+            synchronized (stripe) {
+                long collected = 0;
+                for (Map.Entry<Key, Entry> mapEntry : stripe.mEntries.entrySet()) {
+                    if (collected >= excess) break;
+                    Entry entry = mapEntry.getValue();
+                    if (overShareOnly && !isOverShare(entry, shares)) continue;
+                    candidates.add(new Candidate(stripe, mapEntry.getKey(), entry));
+                    collected += entry.mSize;
+                }
+            }
+        }
+        Collections.sort(candidates);
+
+        int evicted = 0;
+        for (Candidate candidate : candidates) {
+            if (mSize.get() <= maxBytes) break;
+            Entry entry = candidate.mEntry;
+            synchronized (candidate.mStripe) {
+                // Skip entries removed, replaced or used since they were collected, and Accounts
+                // that earlier evictions brought back within their share
+                if (entry.mRemoved || entry.mLastAccess != candidate.mLastAccess) continue;
+                if (overShareOnly && !isOverShare(entry, shares)) continue;
+                candidate.mStripe.mEntries.remove(candidate.mKey);
+                discard(entry);
+                evicted++;
+            }
+        }
+        return evicted;
+    }
+
+    /**
+     * Returns `true` if the entry's Account holds more than its share, or has been released.
+     */
+    private static boolean isOverShare(Entry entry, Map<AtomicLong, Long> shares) {
+        Long share = shares.get(entry.mAccountBytes);
+        return share == null || entry.mAccountBytes.get() > share;
+    }
+
+    private Stripe stripeFor(Key key) {
+        return mStripes[(key.hashCode() & 0x7fffffff) % STRIPE_COUNT];
+    }
+
+    /**
+     * One AtlasCellFactory's namespace and usage within a ParsedContentCache.
+     */
+    final class Account {
+        private final int mId;
+        private final int mWeight;
+        // Shared with this Account's entries, which must not reference the Account itself
+        private final AtomicLong mBytes = new AtomicLong();
+
+        private Account(int id, int weight) {
+            mId = id;
+            mWeight = weight;
+        }
+
+        AtlasCellFactory.ParsedContent get(String id) {
+            return ParsedContentCache.this.get(this, id);
+        }
+
+        void put(String id, AtlasCellFactory.ParsedContent value) {
+            ParsedContentCache.this.put(this, id, value);
+        }
+
+        void remove(String id) {
+            ParsedContentCache.this.remove(this, id);
+        }
+    }
+
+    private static final class Key {
+        private final int mAccountId;
+        private final String mId;
+
+        private Key(int accountId, String id) {
+            mAccountId = accountId;
+            mId = id;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Key)) return false;
+            Key other = (Key) o;
+            return mAccountId == other.mAccountId && mId.equals(other.mId);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * mAccountId + mId.hashCode();
+        }
+    }
+
+    private static final class Entry {
+        private final AtlasCellFactory.ParsedContent mValue;
+        private final int mSize;
+        private final AtomicLong mAccountBytes;
+        // Global clock value at the last access, guarded by the entry's Stripe
+        private long mLastAccess;
+        // Set once the entry leaves its Stripe, guarded by the entry's Stripe
+        private boolean mRemoved = false;
+
+        private Entry(AtlasCellFactory.ParsedContent value, int size, AtomicLong accountBytes) {
+            mValue = value;
+            mSize = size;
+            mAccountBytes = accountBytes;
+        }
+    }
+
+    /**
+     * An entry collected for eviction, with its access time when collected.
+     */
+    private static final class Candidate implements Comparable<Candidate> {
+        private final Stripe mStripe;
+        private final Key mKey;
+        private final Entry mEntry;
+        private final long mLastAccess;
+
+        private Candidate(Stripe stripe, Key key, Entry entry) {
+            mStripe = stripe;
+            mKey = key;
+            mEntry = entry;
+            mLastAccess = entry.mLastAccess;
+        }
+
+        @Override
+        public int compareTo(Candidate other) {
+            return (mLastAccess < other.mLastAccess) ? -1 : ((mLastAccess == other.mLastAccess) ? 0 : 1);
+        }
+    }
+
+    private static final class Stripe {
+        // Access-ordered, so iteration starts at the least recently used entry
+        private final LinkedHashMap<Key, Entry> mEntries = new LinkedHashMap<>(16, 0.75f, true);
+    }
+}
@@ -0,0 +1,268 @@
+package com.layer.atlas.messagetypes;
+
+import android.content.Context;
+
+import com.layer.atlas.util.Log;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * A persistent tier behind ParsedContentCache, so a conversation reopened after process death can
+ * bind from disk instead of parsing every MessagePart again.  Each entry is a small file named by a
+ * hash of its factory type and Message ID, holding a versioned header followed by the payload
+ * written by the factory's ParsedContentSerializer:
+ * <pre>
+ *   int    MAGIC
+ *   byte   FORMAT_VERSION
+ *   UTF    factory type
+ *   int    serializer version
+ *   UTF    Message ID
+ *   ...    serializer payload
+ * </pre>
+ * Entries whose header does not match are deleted on read.  Reads happen on the calling thread;
+ * the main thread only reads single entries of at most MAIN_THREAD_MAX_READ_BYTES, so a cold open
+ * can bind from disk without a long stall.  Writes and evictions happen on a single background
+ * thread.
+ * When the directory grows past its byte budget, the least recently used entries are deleted.
+ */
+public class ParsedContentDiskCache {
+    public static final long DEFAULT_MAX_BYTES = 4 * 1024 * 1024;
+
+    // Largest entry read on the main thread, about one small block
+    static final long MAIN_THREAD_MAX_READ_BYTES = 4 * 1024;
+
+    private static final String DIRECTORY_NAME = "atlas-parsed-content";
+    private static final int MAGIC = 0x41545043;
+    private static final byte FORMAT_VERSION = 1;
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    private final File mDirectory;
+    private final long mMaxBytes;
+    private final ExecutorService mWriter;
+    private long mSize = -1;
+
+    /**
+     * Creates a ParsedContentDiskCache in the application's cache directory.
+     *
+     * @param context  Context for locating the cache directory.
+     * @param maxBytes Maximum bytes of entries to keep on disk.
+     */
+    public static ParsedContentDiskCache create(Context context, long maxBytes) {
+        return new ParsedContentDiskCache(new File(context.getCacheDir(), DIRECTORY_NAME), maxBytes);
+    }
+
+    public ParsedContentDiskCache(File directory, long maxBytes) {
+        mDirectory = directory;
+        mMaxBytes = maxBytes;
+        mWriter = Executors.newSingleThreadExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "AtlasParsedContentDisk");
+                thread.setPriority(Thread.MIN_PRIORITY);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * Deletes every entry.
+     */
+    public void clear() {
+        mWriter.execute(new Runnable() {
+            @Override
+            public void run() {
+                File[] files = mDirectory.listFiles();
+                if (files != null) {
+                    for (File file : files) {
+                        file.delete();
+                    }
+                }
+                mSize = 0;
+            }
+        });
+    }
+
+    /**
+     * Reads an entry written by the same factory type and serializer version.  Blocks on disk, so
+     * call from a background thread.
+     *
+     * @return The stored content, or `null` if there is no usable entry.
+     */
+    <Tcache extends AtlasCellFactory.ParsedContent> Tcache read(String factoryType, ParsedContentSerializer<Tcache> serializer, String messageId) {
+        return read(factoryType, serializer, messageId, Long.MAX_VALUE);
+    }
+
+    /**
+     * Reads an entry like read(), unless its file is larger than `maxBytes`.
+     *
+     * @param maxBytes Largest entry file to read.
+     * @return The stored content, or `null` if there is no usable entry of at most `maxBytes`.
+     */
+    <Tcache extends AtlasCellFactory.ParsedContent> Tcache read(String factoryType, ParsedContentSerializer<Tcache> serializer, String messageId, long maxBytes) {
+        final File file = fileFor(factoryType, messageId);
+        // Zero for a missing file
+        long length = file.length();
+        if (length == 0 || length > maxBytes) return null;
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+            if (in.readInt() != MAGIC
+                    || in.readByte() != FORMAT_VERSION
+                    || !factoryType.equals(in.readUTF())
+                    || in.readInt() != serializer.getVersion()
+                    || !messageId.equals(in.readUTF())) {
+                discard(file);
+                return null;
+            }
+            Tcache content = serializer.read(in);
+            mWriter.execute(new Runnable() {
+                @Override
+                public void run() {
+                    file.setLastModified(System.currentTimeMillis());
+                }
+            });
+            return content;
+        } catch (IOException e) {
+            if (Log.isLoggable(Log.WARN)) {
+                Log.w("Discarding unreadable parsed content " + file.getName(), e);
+            }
+            discard(file);
+            return null;
+        } finally {
+            closeQuietly(in);
+        }
+    }
+
+    /**
+     * Writes an entry in the background, replacing any previous entry for the same Message.
+     */
+    <Tcache extends AtlasCellFactory.ParsedContent> void write(final String factoryType, final ParsedContentSerializer<Tcache> serializer, final String messageId, final Tcache content) {
+        mWriter.execute(new Runnable() {
+            @Override
+            public void run() {
+                if (!mDirectory.isDirectory() && !mDirectory.mkdirs()) return;
+                ensureSize();
+                File file = fileFor(factoryType, messageId);
+                File temp = new File(mDirectory, file.getName() + TEMP_SUFFIX);
+                DataOutputStream out = null;
+                try {
+                    out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)));
+                    out.writeInt(MAGIC);
+                    out.writeByte(FORMAT_VERSION);
+                    out.writeUTF(factoryType);
+                    out.writeInt(serializer.getVersion());
+                    out.writeUTF(messageId);
+                    serializer.write(content, out);
+                    out.close();
+                    out = null;
+                    long previous = file.length();
+                    if (!temp.renameTo(file)) {
+                        temp.delete();
+                        return;
+                    }
+                    mSize += file.length() - previous;
+                } catch (IOException e) {
+                    if (Log.isLoggable(Log.WARN)) {
+                        Log.w("Failed to write parsed content for " + messageId, e);
+                    }
+                    temp.delete();
+                } finally {
+                    closeQuietly(out);
+                }
+                if (mSize > mMaxBytes) trim();
+            }
+        });
+    }
+
+    private void discard(final File file) {
+        mWriter.execute(new Runnable() {
+            @Override
+            public void run() {
+                long length = file.length();
+                if (file.delete() && mSize >= 0) mSize -= length;
+            }
+        });
+    }
+
+    /**
+     * Computes the directory size once, on the writer thread.
+     */
+    private void ensureSize() {
+        if (mSize >= 0) return;
+        mSize = 0;
+        File[] files = mDirectory.listFiles();
+        if (files == null) return;
+        for (File file : files) {
+            mSize += file.length();
+        }
+    }
+
+    /**
+     * Deletes the least recently used entries until the directory is at three quarters of its
+     * budget, leaving room for further writes before the next trim.
+     */
+    private void trim() {
+        File[] files = mDirectory.listFiles();
+        if (files == null) return;
+        final long[] lastModified = new long[files.length];
+        Integer[] order = new Integer[files.length];
+        for (int i = 0; i < files.length; i++) {
+            lastModified[i] = files[i].lastModified();
+            order[i] = i;
+        }
+        Arrays.sort(order, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer lhs, Integer rhs) {
+                return (lastModified[lhs] < lastModified[rhs]) ? -1 : ((lastModified[lhs] == lastModified[rhs]) ? 0 : 1);
+            }
+        });
+        long target = mMaxBytes * 3 / 4;
+        for (int i = 0; i < order.length && mSize > target; i++) {
+            File file = files[order[i]];
+            long length = file.length();
+            if (file.delete()) mSize -= length;
+        }
+    }
+
+    private File fileFor(String factoryType, String messageId) {
+        return new File(mDirectory, sha1(factoryType + '\n' + messageId));
+    }
+
+    private static String sha1(String value) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-1").digest(value.getBytes("UTF-8"));
+            StringBuilder builder = new StringBuilder(digest.length * 2);
+            for (byte b : digest) {
+                builder.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+            }
+            return builder.toString();
+        } catch (NoSuchAlgorithmException | IOException e) {
+            // SHA-1 and UTF-8 are always available; fall back to a weaker name just in case
+            return Integer.toHexString(value.hashCode());
+        }
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        if (closeable == null) return;
+        try {
+            closeable.close();
+        } catch (IOException e) {
+            // Ignore
+        }
+    }
+}
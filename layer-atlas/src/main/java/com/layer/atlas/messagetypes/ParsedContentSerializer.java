@@ -0,0 +1,32 @@
+package com.layer.atlas.messagetypes;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * Writes and reads one AtlasCellFactory's ParsedContent for a ParsedContentDiskCache.  Factories opt
+ * in to persistence by returning a serializer from getParsedContentSerializer().
+ *
+ * @param <Tcache> ParsedContent type handled by this serializer.
+ */
+public interface ParsedContentSerializer<Tcache extends AtlasCellFactory.ParsedContent> {
+    /**
+     * Returns the version of this serializer's format.  Entries written with a different version
+     * are discarded, so bump this whenever write() changes.
+     */
+    int getVersion();
+
+    /**
+     * Returns `true` if the given content is complete enough to persist.  Content parsed before
+     * its MessageParts finished downloading, for example, should not be written.
+     *
+     * @param content Content about to be written.
+     * @return `true` to write the content to disk.
+     */
+    boolean isPersistable(Tcache content);
+
+    void write(Tcache content, DataOutput out) throws IOException;
+
+    Tcache read(DataInput in) throws IOException;
+}
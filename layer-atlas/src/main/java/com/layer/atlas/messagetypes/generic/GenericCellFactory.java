@@ -38,6 +38,11 @@ public class GenericCellFactory extends AtlasCellFactory<GenericCellFactory.Cell
         return true;
     }
 
+    @Override
+    public boolean isMimeTypeMatcher() {
+        return getClass() == GenericCellFactory.class;
+    }
+
     @Override
     public CellHolder createCellHolder(ViewGroup cellView, boolean isMe, LayoutInflater layoutInflater) {
         Context context = cellView.getContext();
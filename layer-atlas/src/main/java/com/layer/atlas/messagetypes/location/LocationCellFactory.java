@@ -5,25 +5,26 @@ import android.content.Intent;
 import android.net.Uri;
 import android.support.v4.widget.ContentLoadingProgressBar;
 import android.support.v7.widget.RecyclerView;
+import android.util.JsonReader;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
-import android.widget.ImageView;
 
 import com.layer.atlas.R;
 import com.layer.atlas.messagetypes.AtlasCellFactory;
+import com.layer.atlas.messagetypes.ParsedContentSerializer;
+import com.layer.atlas.util.JsonObjectParser;
 import com.layer.atlas.util.Log;
 import com.layer.atlas.util.Util;
-import com.layer.atlas.util.picasso.transformations.RoundedTransform;
+import com.layer.atlas.util.views.ShapedImageView;
 import com.layer.sdk.LayerClient;
 import com.layer.sdk.messaging.Message;
 import com.squareup.picasso.Callback;
 import com.squareup.picasso.Picasso;
-import com.squareup.picasso.Transformation;
-
-import org.json.JSONException;
-import org.json.JSONObject;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.net.URLEncoder;
 
 public class LocationCellFactory extends AtlasCellFactory<LocationCellFactory.CellHolder, LocationCellFactory.Location> implements View.OnClickListener {
@@ -38,7 +39,6 @@ public class LocationCellFactory extends AtlasCellFactory<LocationCellFactory.Ce
     private static final int CACHE_SIZE_BYTES = 256 * 1024;
 
     private final Picasso mPicasso;
-    private Transformation mTransform;
 
     public LocationCellFactory(Picasso mPicasso) {
         super(CACHE_SIZE_BYTES);
@@ -72,6 +72,11 @@ public class LocationCellFactory extends AtlasCellFactory<LocationCellFactory.Ce
         return isType(message);
     }
 
+    @Override
+    public boolean isMimeTypeMatcher() {
+        return getClass() == LocationCellFactory.class;
+    }
+
     @Override
     public CellHolder createCellHolder(ViewGroup cellView, boolean isMe, LayoutInflater layoutInflater) {
         return new CellHolder(layoutInflater.inflate(R.layout.atlas_message_item_cell_image, cellView, true));
@@ -80,13 +85,10 @@ public class LocationCellFactory extends AtlasCellFactory<LocationCellFactory.Ce
     @Override
     public Location parseContent(LayerClient layerClient, Message message) {
         try {
-            JSONObject o = new JSONObject(new String(message.getMessageParts().get(0).getData()));
             Location c = new Location();
-            c.mLatitude = o.optDouble(KEY_LATITUDE, 0);
-            c.mLongitude = o.optDouble(KEY_LONGITUDE, 0);
-            c.mLabel = o.optString(KEY_LABEL, null);
+            JsonObjectParser.parse(message.getMessageParts().get(0).getDataStream(), c, Location.FIELD_READER);
             return c;
-        } catch (JSONException e) {
+        } catch (IOException e) {
             if (Log.isLoggable(Log.ERROR)) {
                 Log.e(e.getMessage(), e);
             }
@@ -94,6 +96,11 @@ public class LocationCellFactory extends AtlasCellFactory<LocationCellFactory.Ce
         return null;
     }
 
+    @Override
+    protected ParsedContentSerializer<Location> getParsedContentSerializer() {
+        return Location.SERIALIZER;
+    }
+
     @Override
     public void bindCellHolder(final CellHolder cellHolder, final Location location, Message message, CellHolderSpecs specs) {
         cellHolder.mImageView.setTag(location);
@@ -103,13 +110,11 @@ public class LocationCellFactory extends AtlasCellFactory<LocationCellFactory.Ce
         int mapWidth = Math.min(640, specs.maxWidth);
         int mapHeight = (int) Math.round((double) mapWidth / GOLDEN_RATIO);
         int[] cellDims = Util.scaleDownInside(specs.maxWidth, (int) Math.round((double) specs.maxWidth / GOLDEN_RATIO), specs.maxWidth, specs.maxHeight);
-        ViewGroup.LayoutParams params = cellHolder.mImageView.getLayoutParams();
-        params.width = cellDims[0];
-        params.height = cellDims[1];
+        cellHolder.mImageView.setFixedSize(cellDims[0], cellDims[1]);
         cellHolder.mProgressBar.show();
         mPicasso.load("https://maps.googleapis.com/maps/api/staticmap?zoom=16&maptype=roadmap&scale=2&center=" + location.mLatitude + "," + location.mLongitude + "&markers=color:red%7C" + location.mLatitude + "," + location.mLongitude + "&size=" + mapWidth + "x" + mapHeight)
                 .tag(PICASSO_TAG).placeholder(PLACEHOLDER).resize(cellDims[0], cellDims[1])
-                .transform(getTransform(cellHolder.mImageView.getContext())).into(cellHolder.mImageView, new Callback() {
+                .noFade().into(cellHolder.mImageView, new Callback() {
             @Override
             public void onSuccess() {
                 cellHolder.mProgressBar.hide();
@@ -143,20 +148,52 @@ public class LocationCellFactory extends AtlasCellFactory<LocationCellFactory.Ce
         }
     }
 
-    //==============================================================================================
-    // private methods
-    //==============================================================================================
+    static class Location implements AtlasCellFactory.ParsedContent {
+        static final ParsedContentSerializer<Location> SERIALIZER = new ParsedContentSerializer<Location>() {
+            @Override
+            public int getVersion() {
+                return 1;
+            }
 
-    private Transformation getTransform(Context context) {
-        if (mTransform == null) {
-            float radius = context.getResources().getDimension(com.layer.atlas.R.dimen.atlas_message_item_cell_radius);
-            mTransform = new RoundedTransform(radius);
-        }
+            @Override
+            public boolean isPersistable(Location content) {
+                return true;
+            }
 
-        return mTransform;
-    }
+            @Override
+            public void write(Location content, DataOutput out) throws IOException {
+                out.writeDouble(content.mLatitude);
+                out.writeDouble(content.mLongitude);
+                out.writeBoolean(content.mLabel != null);
+                if (content.mLabel != null) out.writeUTF(content.mLabel);
+            }
+
+            @Override
+            public Location read(DataInput in) throws IOException {
+                Location location = new Location();
+                location.mLatitude = in.readDouble();
+                location.mLongitude = in.readDouble();
+                location.mLabel = in.readBoolean() ? in.readUTF() : null;
+                return location;
+            }
+        };
+
+        static final JsonObjectParser.FieldReader<Location> FIELD_READER = new JsonObjectParser.FieldReader<Location>() {
+            @Override
+            public boolean readField(Location location, String name, JsonReader reader) throws IOException {
+                if (KEY_LATITUDE.equals(name)) {
+                    location.mLatitude = JsonObjectParser.nextDouble(reader, 0);
+                } else if (KEY_LONGITUDE.equals(name)) {
+                    location.mLongitude = JsonObjectParser.nextDouble(reader, 0);
+                } else if (KEY_LABEL.equals(name)) {
+                    location.mLabel = JsonObjectParser.nextString(reader, null);
+                } else {
+                    return false;
+                }
+                return true;
+            }
+        };
 
-    static class Location implements AtlasCellFactory.ParsedContent {
         double mLatitude;
         double mLongitude;
         String mLabel;
@@ -168,11 +205,11 @@ public class LocationCellFactory extends AtlasCellFactory<LocationCellFactory.Ce
     }
 
     static class CellHolder extends AtlasCellFactory.CellHolder {
-        ImageView mImageView;
+        ShapedImageView mImageView;
         ContentLoadingProgressBar mProgressBar;
 
         public CellHolder(View view) {
-            mImageView = (ImageView) view.findViewById(R.id.cell_image);
+            mImageView = (ShapedImageView) view.findViewById(R.id.cell_image);
             mProgressBar = (ContentLoadingProgressBar) view.findViewById(R.id.cell_progress);
         }
     }
@@ -15,14 +15,13 @@ import android.widget.ImageView;
 
 import com.layer.atlas.R;
 import com.layer.atlas.messagetypes.AtlasCellFactory;
+import com.layer.atlas.util.MessagePartDownloadCoordinator;
 import com.layer.atlas.util.imagepopup.AtlasImagePopupActivity;
-import com.layer.atlas.util.picasso.transformations.RoundedTransform;
+import com.layer.atlas.util.picasso.MessagePartLoadCallback;
 import com.layer.sdk.LayerClient;
 import com.layer.sdk.messaging.Message;
 import com.layer.sdk.messaging.MessagePart;
-import com.squareup.picasso.Callback;
 import com.squareup.picasso.Picasso;
-import com.squareup.picasso.Transformation;
 
 /**
  * BasicImage handles non-ThreePartImage images.  It relies on the ThreePartImage RequestHandler and does not handle image rotation.
@@ -34,7 +33,6 @@ public class SinglePartImageCellFactory extends AtlasCellFactory<SinglePartImage
 
     private final LayerClient mLayerClient;
     private final Picasso mPicasso;
-    private Transformation mTransform;
 
     public SinglePartImageCellFactory(LayerClient mLayerClient, Picasso mPicasso) {
         super(CACHE_SIZE_BYTES);
@@ -51,6 +49,11 @@ public class SinglePartImageCellFactory extends AtlasCellFactory<SinglePartImage
         return isType(message);
     }
 
+    @Override
+    public boolean isMimeTypeMatcher() {
+        return getClass() == SinglePartImageCellFactory.class;
+    }
+
     @Override
     public CellHolder createCellHolder(ViewGroup cellView, boolean isMe, LayoutInflater layoutInflater) {
         return new CellHolder(layoutInflater.inflate(R.layout.atlas_message_item_cell_image, cellView, true));
@@ -58,21 +61,49 @@ public class SinglePartImageCellFactory extends AtlasCellFactory<SinglePartImage
 
     @Override
     public void bindCellHolder(final CellHolder cellHolder, PartId index, Message message, CellHolderSpecs specs) {
+        // A recycled CellHolder no longer wants its previous Message's download
+        if (cellHolder.mDownload != null) {
+            cellHolder.mDownload.cancel();
+            cellHolder.mDownload = null;
+        }
         cellHolder.mImageView.setTag(index);
         cellHolder.mImageView.setOnClickListener(this);
         cellHolder.mProgressBar.show();
+        loadImage(cellHolder, index, specs.maxWidth, specs.maxHeight, false);
+    }
+
+    /**
+     * @param retried `true` if this load follows an earlier failure or a finished download, so
+     *                another failure is final.
+     */
+    private void loadImage(final CellHolder cellHolder, final PartId index, final int maxWidth, final int maxHeight, final boolean retried) {
         mPicasso.load(index.mId).tag(PICASSO_TAG).placeholder(PLACEHOLDER)
-                .centerInside().resize(specs.maxWidth, specs.maxHeight).onlyScaleDown()
-                .transform(getTransform(cellHolder.mImageView.getContext())).into(cellHolder.mImageView, new Callback() {
+                .centerInside().resize(maxWidth, maxHeight).onlyScaleDown()
+                .noFade().into(cellHolder.mImageView, new MessagePartLoadCallback(mLayerClient, index.mId, retried) {
             @Override
             public void onSuccess() {
                 cellHolder.mProgressBar.hide();
             }
 
             @Override
-            public void onError() {
+            protected boolean isCurrent() {
+                return cellHolder.mImageView.getTag() == index;
+            }
+
+            @Override
+            protected void retry() {
+                loadImage(cellHolder, index, maxWidth, maxHeight, true);
+            }
+
+            @Override
+            protected void onFailed() {
                 cellHolder.mProgressBar.hide();
             }
+
+            @Override
+            protected void setDownload(MessagePartDownloadCoordinator.Subscription download) {
+                cellHolder.mDownload = download;
+            }
         });
     }
 
@@ -128,19 +159,6 @@ public class SinglePartImageCellFactory extends AtlasCellFactory<SinglePartImage
         }
     }
 
-    //==============================================================================================
-    // private methods
-    //==============================================================================================
-
-    private Transformation getTransform(Context context) {
-        if (mTransform == null) {
-            float radius = context.getResources().getDimension(com.layer.atlas.R.dimen.atlas_message_item_cell_radius);
-            mTransform = new RoundedTransform(radius);
-        }
-
-        return mTransform;
-    }
-
     //==============================================================================================
     // Inner classes
     //==============================================================================================
@@ -148,6 +166,7 @@ public class SinglePartImageCellFactory extends AtlasCellFactory<SinglePartImage
     public static class CellHolder extends AtlasCellFactory.CellHolder {
         ImageView mImageView;
         ContentLoadingProgressBar mProgressBar;
+        MessagePartDownloadCoordinator.Subscription mDownload;
 
         public CellHolder(View view) {
             mImageView = (ImageView) view.findViewById(R.id.cell_image);
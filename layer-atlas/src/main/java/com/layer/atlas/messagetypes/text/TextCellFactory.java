@@ -3,8 +3,18 @@ package com.layer.atlas.messagetypes.text;
 import android.content.Context;
 import android.graphics.drawable.GradientDrawable;
 import android.net.Uri;
+import android.os.AsyncTask;
+import android.os.Looper;
 import android.support.v4.content.ContextCompat;
 import android.support.v4.widget.ContentLoadingProgressBar;
+import android.text.SpannableString;
+import android.text.SpannableStringBuilder;
+import android.text.Spanned;
+import android.text.method.LinkMovementMethod;
+import android.text.style.ClickableSpan;
+import android.text.style.URLSpan;
+import android.text.util.Linkify;
+import android.util.LruCache;
 import android.util.TypedValue;
 import android.view.LayoutInflater;
 import android.view.View;
@@ -14,31 +24,75 @@ import android.widget.Toast;
 
 import com.layer.atlas.R;
 import com.layer.atlas.messagetypes.AtlasCellFactory;
-import com.layer.atlas.util.Log;
+import com.layer.atlas.messagetypes.MessageStyle;
+import com.layer.atlas.messagetypes.ParsedContentSerializer;
+import com.layer.atlas.util.MessagePartDownloadCoordinator;
 import com.layer.atlas.util.Util;
 import com.layer.sdk.LayerClient;
-import com.layer.sdk.listeners.LayerProgressListener;
 import com.layer.sdk.messaging.Identity;
 import com.layer.sdk.messaging.Message;
 import com.layer.sdk.messaging.MessagePart;
 
-import java.util.Map;
-import java.util.WeakHashMap;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 
 public class TextCellFactory extends AtlasCellFactory<TextCellFactory.CellHolder, TextCellFactory.TextInfo> implements View.OnLongClickListener {
     public final static String MIME_TYPE = "text/plain";
-    //This is used to bind TextView  to the exact message to ensure the right TextView is updated
-    private Map<TextView, Uri> mTextViewUriHashMap =  new WeakHashMap<>();
+    public final static int DEFAULT_PREVIEW_LENGTH = 4 * 1024;
+    private final static int CONVERSATION_PREVIEW_LENGTH = 256;
+    private final static int EXPANDED_CACHE_SIZE = 16;
+    private MessagePartDownloadCoordinator mDownloads = MessagePartDownloadCoordinator.getDefault();
+    private final TextMeasureWarmer mMeasureWarmer = new TextMeasureWarmer();
+    // Messages expanded with "show more", which outlive their parsed previews
+    private final LruCache<Uri, TextInfo> mExpanded = new LruCache<>(EXPANDED_CACHE_SIZE);
+    private volatile int mPreviewLength = DEFAULT_PREVIEW_LENGTH;
+    // LayerClient from the latest parse, for re-parsing text that finished downloading
+    private volatile LayerClient mLayerClient;
+    private final ClickableSpan mShowMoreSpan = new ClickableSpan() {
+        @Override
+        public void onClick(View widget) {
+            showMore((CellHolder) widget.getTag());
+        }
+    };
 
     public TextCellFactory() {
         super(256 * 1024);
     }
 
+    /**
+     * Sets how many chars of a text Message are decoded up front.  Longer Messages end with a
+     * "show more" link that decodes the next `previewLength` chars on demand.  Content already
+     * parsed keeps its previous length.
+     *
+     * @param previewLength Maximum chars to decode per step.
+     * @return This TextCellFactory.
+     */
+    public TextCellFactory setPreviewLength(int previewLength) {
+        mPreviewLength = Math.max(1, previewLength);
+        return this;
+    }
+
+    public int getPreviewLength() {
+        return mPreviewLength;
+    }
+
     @Override
     public boolean isBindable(Message message) {
         return isType(message);
     }
 
+    @Override
+    public boolean isMimeTypeMatcher() {
+        return getClass() == TextCellFactory.class;
+    }
+
+    @Override
+    public void setStyle(MessageStyle messageStyle) {
+        super.setStyle(messageStyle);
+        mMeasureWarmer.setStyle(messageStyle);
+    }
+
     @Override
     public CellHolder createCellHolder(ViewGroup cellView, boolean isMe, LayoutInflater layoutInflater) {
         View v = layoutInflater.inflate(R.layout.atlas_message_item_cell_text, cellView, true);
@@ -54,13 +108,14 @@ public class TextCellFactory extends AtlasCellFactory<TextCellFactory.CellHolder
         t.setTextColor(isMe ? ContextCompat.getColor(c, R.color.atlas_text_white) : ContextCompat.getColor(c, R.color.atlas_text_black));
         t.setLinkTextColor(isMe ? ContextCompat.getColor(c, R.color.atlas_text_white) : ContextCompat.getColor(c, R.color.atlas_text_black));
         t.setTypeface(isMe ? mMessageStyle.getMyTextTypeface() : mMessageStyle.getOtherTextTypeface(), isMe ? mMessageStyle.getMyTextStyle() : mMessageStyle.getOtherTextStyle());
+        // Links are detected while parsing, so the TextView only needs to make them clickable
+        t.setMovementMethod(LinkMovementMethod.getInstance());
         return new CellHolder(v);
     }
 
     @Override
     public TextInfo parseContent(LayerClient layerClient, Message message) {
         MessagePart part = message.getMessageParts().get(0);
-        String text = part.isContentReady() ? new String(part.getData()) : null;
         String name;
         Identity sender = message.getSender();
         if (sender != null) {
@@ -68,67 +123,155 @@ public class TextCellFactory extends AtlasCellFactory<TextCellFactory.CellHolder
         } else {
             name = "";
         }
-        return new TextInfo(text, name);
+        return part.isContentReady() ? readPreview(part, name) : new TextInfo(null, name);
+    }
+
+    private TextInfo readPreview(MessagePart part, String clipboardPrefix) {
+        TextPartReader.Chunk chunk = TextPartReader.read(part, 0, mPreviewLength);
+        if (chunk == null) return new TextInfo(null, clipboardPrefix);
+        return TextInfo.withLinks(chunk.getText(), clipboardPrefix, chunk.hasMore());
+    }
+
+    /**
+     * Also measures the text when called off the main thread, so the TextView's measure pass at
+     * bind time finds its words already shaped in the platform's text layout cache.
+     */
+    @Override
+    public TextInfo getParsedContent(LayerClient layerClient, Message message) {
+        mLayerClient = layerClient;
+        TextInfo info = super.getParsedContent(layerClient, message);
+        if (info != null && Looper.myLooper() != Looper.getMainLooper()) {
+            Identity authenticatedUser = layerClient.getAuthenticatedUser();
+            boolean isMe = authenticatedUser != null && authenticatedUser.equals(message.getSender());
+            mMeasureWarmer.warm(info.getString(), isMe);
+        }
+        return info;
     }
 
     @Override
-    public void bindCellHolder(CellHolder cellHolder, final TextInfo parsed, Message message, CellHolderSpecs specs) {
+    protected ParsedContentSerializer<TextInfo> getParsedContentSerializer() {
+        return TextInfo.SERIALIZER;
+    }
 
-        //Checking if the TextView is being recycled, replace the value in the map with the new message id
-        if (mTextViewUriHashMap.containsKey(cellHolder.mTextView)) {
-            mTextViewUriHashMap.put(cellHolder.mTextView, message.getId());
+    @Override
+    public void bindCellHolder(CellHolder cellHolder, TextInfo parsed, Message message, CellHolderSpecs specs) {
+        // A recycled CellHolder no longer wants its previous Message's download
+        if (cellHolder.mDownload != null) {
+            cellHolder.mDownload.cancel();
+            cellHolder.mDownload = null;
             cellHolder.mProgressBar.hide();
         }
 
-        String textMessage = parsed.getString();
-        //This string will be null if the message part content is not Ready
-        if (textMessage == null) {
+        TextInfo expanded = mExpanded.get(message.getId());
+        if (expanded != null) parsed = expanded;
+
+        //This text will be null if the message part content is not Ready
+        if (parsed.getString() == null) {
             if (message.getMessageParts().get(0).isContentReady()) {
-                textMessage = new String(message.getMessageParts().get(0).getData());
+                // Parsed before the download finished; parse again in the background
+                reparse(cellHolder, message);
             } else {
                 downloadMessage(message, cellHolder);
-                cellHolder.mProgressBar.setVisibility(View.VISIBLE);
-                cellHolder.mProgressBar.show();
             }
+            cellHolder.mProgressBar.setVisibility(View.VISIBLE);
+            cellHolder.mProgressBar.show();
         }
-        cellHolder.mTextView.setText(textMessage);
-        cellHolder.mTextView.setTag(parsed);
+        setText(cellHolder, parsed);
+        cellHolder.mTextView.setTag(cellHolder);
         cellHolder.mTextView.setOnLongClickListener(this);
     }
 
-    private void downloadMessage(final Message message, final CellHolder cellHolder) {
-        final MessagePart part = message.getMessageParts().get(0);
-        final TextView textView = cellHolder.mTextView;
-        mTextViewUriHashMap.put(textView, message.getId());
-        LayerProgressListener layerProgressListener = new LayerProgressListener.Weak() {
+    private void setText(CellHolder cellHolder, TextInfo info) {
+        cellHolder.mParsed = info;
+        CharSequence text = info.getText();
+        if (text == null || !info.hasMore()) {
+            cellHolder.mTextView.setText(text);
+            return;
+        }
+        SpannableStringBuilder builder = new SpannableStringBuilder(text).append("\u2026 ");
+        int start = builder.length();
+        builder.append(cellHolder.mTextView.getContext().getString(R.string.atlas_text_cell_factory_show_more));
+        builder.setSpan(mShowMoreSpan, start, builder.length(), Spanned.SPAN_EXCLUSIVE_EXCLUSIVE);
+        cellHolder.mTextView.setText(builder);
+    }
+
+    /**
+     * Replaces the cached placeholder for a Message whose text has downloaded with a fresh parse
+     * on a background thread, then shows it if the CellHolder still displays that Message.
+     */
+    private void reparse(final CellHolder cellHolder, final Message message) {
+        invalidateParsedContent(message);
+        final LayerClient layerClient = mLayerClient;
+        new AsyncTask<Void, Void, TextInfo>() {
             @Override
-            public void onProgressStart(MessagePart messagePart, Operation operation) {}
+            protected TextInfo doInBackground(Void... params) {
+                return getParsedContent(layerClient, message);
+            }
 
             @Override
-            public void onProgressUpdate(MessagePart messagePart, Operation operation, long l) {}
+            protected void onPostExecute(TextInfo parsed) {
+                if (cellHolder.getMessage() != message) return;
+                cellHolder.mProgressBar.hide();
+                if (parsed != null && parsed.getString() != null) setText(cellHolder, parsed);
+            }
+        }.executeOnExecutor(AsyncTask.THREAD_POOL_EXECUTOR);
+    }
 
+    /**
+     * Decodes the next chunk of the CellHolder's Message in the background and appends it.
+     */
+    private void showMore(final CellHolder cellHolder) {
+        final TextInfo current = cellHolder.mParsed;
+        final Message message = cellHolder.getMessage();
+        if (current == null || !current.hasMore() || message == null) return;
+        new AsyncTask<Void, Void, TextInfo>() {
             @Override
-            public void onProgressComplete(MessagePart messagePart, Operation operation) {
-                //Check the downloaded message to ensure the TextView has not been recycled
-                Uri messageId = messagePart.getMessage().getId();
-                Uri uriValueInMap = mTextViewUriHashMap.get(textView);
-                if (uriValueInMap != null && uriValueInMap.equals(messageId) ) {
-                    textView.setText(new String(part.getData()));
-                    mTextViewUriHashMap.remove(textView);
-                    cellHolder.mProgressBar.hide();
-                }
+            protected TextInfo doInBackground(Void... params) {
+                String string = current.getString();
+                TextPartReader.Chunk chunk = TextPartReader.read(message.getMessageParts().get(0), string.length(), mPreviewLength);
+                if (chunk == null) return null;
+                return TextInfo.withLinks(string + chunk.getText(), current.getClipboardPrefix(), chunk.hasMore());
             }
 
             @Override
-            public void onProgressError(MessagePart messagePart, Operation operation, Throwable throwable) {
-                mTextViewUriHashMap.remove(textView);
+            protected void onPostExecute(TextInfo expanded) {
+                if (expanded == null) return;
+                mExpanded.put(message.getId(), expanded);
+                // Skip the update if the CellHolder was recycled while decoding
+                if (cellHolder.mParsed == current) setText(cellHolder, expanded);
+            }
+        }.executeOnExecutor(AsyncTask.THREAD_POOL_EXECUTOR);
+    }
+
+    private void downloadMessage(final Message message, final CellHolder cellHolder) {
+        MessagePart part = message.getMessageParts().get(0);
+        MessagePartDownloadCoordinator.Subscription subscription = mDownloads.download(part, MessagePartDownloadCoordinator.Priority.VISIBLE, new MessagePartDownloadCoordinator.Callback() {
+            @Override
+            public void onDownloadComplete(MessagePart part) {
+                // Recycling cancels the Subscription, so a callback means the CellHolder still shows this Message
+                cellHolder.mDownload = null;
+                reparse(cellHolder, message);
+            }
+
+            @Override
+            public void onDownloadFailed(MessagePart part, Throwable error) {
+                cellHolder.mDownload = null;
                 cellHolder.mProgressBar.hide();
-                if (Log.isLoggable(Log.ERROR)) {
-                    Log.e("Message part download error: " + messagePart.getId(), throwable);
-                }
             }
-        };
-        part.download(layerProgressListener);
+        });
+        // Already-downloaded parts complete inside download() and need no Subscription
+        if (!part.isContentReady()) cellHolder.mDownload = subscription;
+    }
+
+    /**
+     * Sets the MessagePartDownloadCoordinator used to download text that is not yet ready.
+     *
+     * @param downloads Coordinator to use, or `null` for the default.
+     * @return This TextCellFactory.
+     */
+    public TextCellFactory setDownloadCoordinator(MessagePartDownloadCoordinator downloads) {
+        mDownloads = (downloads == null) ? MessagePartDownloadCoordinator.getDefault() : downloads;
+        return this;
     }
 
     public boolean isType(Message message) {
@@ -140,7 +283,9 @@ public class TextCellFactory extends AtlasCellFactory<TextCellFactory.CellHolder
         if (isType(message)) {
             MessagePart part = message.getMessageParts().get(0);
             // For large text content, the MessagePart may not be downloaded yet.
-            return part.isContentReady() ? new String(part.getData()) : "";
+            if (!part.isContentReady()) return "";
+            TextPartReader.Chunk chunk = TextPartReader.read(part, 0, CONVERSATION_PREVIEW_LENGTH);
+            return (chunk == null) ? "" : chunk.getText();
         }
         else {
             throw new IllegalArgumentException("Message is not of the correct type - Text");
@@ -152,15 +297,44 @@ public class TextCellFactory extends AtlasCellFactory<TextCellFactory.CellHolder
      */
     @Override
     public boolean onLongClick(View v) {
-        TextInfo parsed = (TextInfo) v.getTag();
-        String text = parsed.getClipboardPrefix() + parsed.getString();
-        Util.copyToClipboard(v.getContext(), R.string.atlas_text_cell_factory_clipboard_description, text);
-        Toast.makeText(v.getContext(), R.string.atlas_text_cell_factory_copied_to_clipboard, Toast.LENGTH_SHORT).show();
+        CellHolder cellHolder = (CellHolder) v.getTag();
+        final TextInfo parsed = cellHolder.mParsed;
+        final Message message = cellHolder.getMessage();
+        if (parsed == null || parsed.getString() == null) return false;
+        final Context context = v.getContext().getApplicationContext();
+        if (!parsed.hasMore() || message == null) {
+            copyToClipboard(context, parsed.getClipboardPrefix() + parsed.getString());
+            return true;
+        }
+
+        // Only a preview is decoded, so decode the whole Message in the background for copying
+        new AsyncTask<Void, Void, String>() {
+            @Override
+            protected String doInBackground(Void... params) {
+                MessagePart part = message.getMessageParts().get(0);
+                // UTF-8 never decodes to more chars than bytes
+                int maxChars = (int) Math.min(Integer.MAX_VALUE - 1, Math.max(0, part.getSize()));
+                TextPartReader.Chunk chunk = TextPartReader.read(part, 0, maxChars);
+                return (chunk == null) ? null : chunk.getText();
+            }
+
+            @Override
+            protected void onPostExecute(String text) {
+                copyToClipboard(context, parsed.getClipboardPrefix() + ((text == null) ? parsed.getString() : text));
+            }
+        }.executeOnExecutor(AsyncTask.THREAD_POOL_EXECUTOR);
         return true;
     }
 
+    private static void copyToClipboard(Context context, String text) {
+        Util.copyToClipboard(context, R.string.atlas_text_cell_factory_clipboard_description, text);
+        Toast.makeText(context, R.string.atlas_text_cell_factory_copied_to_clipboard, Toast.LENGTH_SHORT).show();
+    }
+
     public static class CellHolder extends AtlasCellFactory.CellHolder {
         TextView mTextView;
+        TextInfo mParsed;
+        MessagePartDownloadCoordinator.Subscription mDownload;
         ContentLoadingProgressBar mProgressBar;
 
         public CellHolder(View view) {
@@ -170,25 +344,170 @@ public class TextCellFactory extends AtlasCellFactory<TextCellFactory.CellHolder
     }
 
     public static class TextInfo implements AtlasCellFactory.ParsedContent {
+        static final ParsedContentSerializer<TextInfo> SERIALIZER = new ParsedContentSerializer<TextInfo>() {
+            @Override
+            public int getVersion() {
+                return 3;
+            }
+
+            @Override
+            public boolean isPersistable(TextInfo content) {
+                // Text parsed before the part downloaded is re-parsed once it arrives
+                return content.mString != null;
+            }
+
+            @Override
+            public void write(TextInfo content, DataOutput out) throws IOException {
+                writeLongUTF(out, content.mString);
+                out.writeUTF(content.mClipboardPrefix);
+                out.writeBoolean(content.mHasMore);
+                out.writeInt(content.mLinkUrls.length);
+                for (int i = 0; i < content.mLinkUrls.length; i++) {
+                    out.writeInt(content.mLinkOffsets[2 * i]);
+                    out.writeInt(content.mLinkOffsets[2 * i + 1]);
+                    out.writeUTF(content.mLinkUrls[i]);
+                }
+            }
+
+            @Override
+            public TextInfo read(DataInput in) throws IOException {
+                String string = readLongUTF(in);
+                String clipboardPrefix = in.readUTF();
+                boolean hasMore = in.readBoolean();
+                int count = in.readInt();
+                int[] offsets = new int[2 * count];
+                String[] urls = new String[count];
+                for (int i = 0; i < count; i++) {
+                    offsets[2 * i] = in.readInt();
+                    offsets[2 * i + 1] = in.readInt();
+                    urls[i] = in.readUTF();
+                }
+                return new TextInfo(string, clipboardPrefix, hasMore, offsets, urls);
+            }
+
+            // writeUTF() is limited to 64KB of encoded text
+            private void writeLongUTF(DataOutput out, String string) throws IOException {
+                byte[] bytes = string.getBytes("UTF-8");
+                out.writeInt(bytes.length);
+                out.write(bytes);
+            }
+
+            private String readLongUTF(DataInput in) throws IOException {
+                byte[] bytes = new byte[in.readInt()];
+                in.readFully(bytes);
+                return new String(bytes, "UTF-8");
+            }
+        };
+
+        private static final int[] NO_OFFSETS = new int[0];
+        private static final String[] NO_URLS = new String[0];
+
+        // Approximate heap cost of this object, its arrays and each link's URLSpan
+        private static final int OBJECT_BYTES = 64;
+        private static final int LINK_BYTES = 48;
+
         private final String mString;
         private final String mClipboardPrefix;
+        private final boolean mHasMore;
+        // Start and end of each link, in pairs, parallel to mLinkUrls
+        private final int[] mLinkOffsets;
+        private final String[] mLinkUrls;
         private final int mSize;
+        private volatile CharSequence mText;
 
         public TextInfo(String string, String clipboardPrefix) {
+            this(string, clipboardPrefix, false, NO_OFFSETS, NO_URLS);
+        }
+
+        TextInfo(String string, String clipboardPrefix, boolean hasMore, int[] linkOffsets, String[] linkUrls) {
             mString = string;
             mClipboardPrefix = clipboardPrefix;
-            int clipboardLength = mClipboardPrefix.getBytes().length;
-            mSize = (mString != null) ? mString.getBytes().length + clipboardLength : clipboardLength;
+            mHasMore = hasMore;
+            mLinkOffsets = linkOffsets;
+            mLinkUrls = linkUrls;
+            // Strings retain two bytes per char; the link Spannable shares mString's chars
+            int size = OBJECT_BYTES + 2 * mClipboardPrefix.length() + 4 * mLinkOffsets.length;
+            if (mString != null) size += 2 * mString.length();
+            for (String url : mLinkUrls) {
+                size += LINK_BYTES + 2 * url.length();
+            }
+            mSize = size;
+        }
+
+        /**
+         * Creates a TextInfo with URLs, phone numbers and email addresses in `string` detected as
+         * links.  Detection runs regular expressions over the whole text, so call this off the
+         * main thread where possible.
+         *
+         * @param string          Message text, or `null` if not yet downloaded.
+         * @param clipboardPrefix Prefix for text copied to the clipboard.
+         */
+        public static TextInfo withLinks(String string, String clipboardPrefix) {
+            return withLinks(string, clipboardPrefix, false);
+        }
+
+        /**
+         * @param hasMore `true` if `string` is a preview of longer text.
+         * @see #withLinks(String, String)
+         */
+        public static TextInfo withLinks(String string, String clipboardPrefix, boolean hasMore) {
+            if (string == null || string.isEmpty()) {
+                return new TextInfo(string, clipboardPrefix, hasMore, NO_OFFSETS, NO_URLS);
+            }
+            SpannableString spannable = new SpannableString(string);
+            if (!Linkify.addLinks(spannable, Linkify.WEB_URLS | Linkify.EMAIL_ADDRESSES | Linkify.PHONE_NUMBERS)) {
+                return new TextInfo(string, clipboardPrefix, hasMore, NO_OFFSETS, NO_URLS);
+            }
+            URLSpan[] spans = spannable.getSpans(0, spannable.length(), URLSpan.class);
+            int[] offsets = new int[2 * spans.length];
+            String[] urls = new String[spans.length];
+            for (int i = 0; i < spans.length; i++) {
+                offsets[2 * i] = spannable.getSpanStart(spans[i]);
+                offsets[2 * i + 1] = spannable.getSpanEnd(spans[i]);
+                urls[i] = spans[i].getURL();
+            }
+            TextInfo info = new TextInfo(string, clipboardPrefix, hasMore, offsets, urls);
+            info.mText = spannable;
+            return info;
         }
 
         public String getString() {
             return mString;
         }
 
+        /**
+         * Returns the text with its detected links applied as URLSpans.  The Spannable is built
+         * once and shared by every bind.
+         *
+         * @return The text to display, or `null` if the text is not yet downloaded.
+         */
+        public CharSequence getText() {
+            CharSequence text = mText;
+            if (text != null || mString == null) return text;
+            if (mLinkUrls.length == 0) {
+                text = mString;
+            } else {
+                SpannableString spannable = new SpannableString(mString);
+                for (int i = 0; i < mLinkUrls.length; i++) {
+                    spannable.setSpan(new URLSpan(mLinkUrls[i]), mLinkOffsets[2 * i], mLinkOffsets[2 * i + 1], Spanned.SPAN_EXCLUSIVE_EXCLUSIVE);
+                }
+                text = spannable;
+            }
+            mText = text;
+            return text;
+        }
+
         public String getClipboardPrefix() {
             return mClipboardPrefix;
         }
 
+        /**
+         * @return `true` if getString() is a preview and the Message has more text to decode.
+         */
+        public boolean hasMore() {
+            return mHasMore;
+        }
+
         @Override
         public int sizeOf() {
             return mSize;
@@ -0,0 +1,69 @@
+package com.layer.atlas.messagetypes.text;
+
+import android.graphics.Typeface;
+import android.text.Layout;
+import android.text.TextPaint;
+
+import com.layer.atlas.messagetypes.MessageStyle;
+
+/**
+ * Measures message text off the main thread ahead of binding.  Measuring with the same paint a
+ * cell's TextView uses shapes every word, which fills the platform's text layout cache; the
+ * TextView's own measure pass at bind time then hits that cache instead of shaping long or
+ * emoji-heavy text during a fling.
+ * <p>
+ * Nothing is kept here: the platform cache holds the shaped words and evicts them on its own
+ * schedule.  TextCellFactory warms once per background parse, and parsed content is cached, so
+ * each Message is normally measured once per parse.  Word shaping does not depend on the layout
+ * width, links or the "show more" suffix, so none of those are needed here.
+ */
+final class TextMeasureWarmer {
+    private final TextPaint mMyPaint = new TextPaint(TextPaint.ANTI_ALIAS_FLAG);
+    private final TextPaint mOtherPaint = new TextPaint(TextPaint.ANTI_ALIAS_FLAG);
+    private volatile boolean mHasStyle = false;
+
+    /**
+     * Adopts the text appearance of the given MessageStyle.
+     */
+    public synchronized void setStyle(MessageStyle style) {
+        mHasStyle = style != null;
+        if (style == null) return;
+        applyStyle(mMyPaint, style.getMyTextSize(), style.getMyTextTypeface(), style.getMyTextStyle());
+        applyStyle(mOtherPaint, style.getOtherTextSize(), style.getOtherTextTypeface(), style.getOtherTextStyle());
+    }
+
+    /**
+     * Measures the given text with the matching paint.  Does nothing until a style is set.
+     *
+     * @param text Text to measure, or `null` if not yet downloaded.
+     * @param isMe `true` to use the authenticated user's text appearance.
+     */
+    public void warm(String text, boolean isMe) {
+        if (!mHasStyle || text == null || text.isEmpty()) return;
+
+        TextPaint paint;
+        synchronized (this) {
+            // Copy so measuring does not hold the lock or race a style change
+            paint = new TextPaint(isMe ? mMyPaint : mOtherPaint);
+        }
+        Layout.getDesiredWidth(text, paint);
+    }
+
+    /**
+     * Mirrors TextView.setTypeface(Typeface, int), including synthetic bold and italic.
+     */
+    private static void applyStyle(TextPaint paint, float textSize, Typeface typeface, int style) {
+        paint.setTextSize(textSize);
+        if (style > 0) {
+            Typeface styled = (typeface == null) ? Typeface.defaultFromStyle(style) : Typeface.create(typeface, style);
+            paint.setTypeface(styled);
+            int need = style & ~((styled == null) ? 0 : styled.getStyle());
+            paint.setFakeBoldText((need & Typeface.BOLD) != 0);
+            paint.setTextSkewX((need & Typeface.ITALIC) != 0 ? -0.25f : 0);
+        } else {
+            paint.setTypeface(typeface);
+            paint.setFakeBoldText(false);
+            paint.setTextSkewX(0);
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package com.layer.atlas.messagetypes.text;
+
+import com.layer.atlas.util.Log;
+import com.layer.sdk.messaging.MessagePart;
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.Charset;
+
+/**
+ * Decodes a text MessagePart as UTF-8 straight from its data stream, a bounded number of chars at a
+ * time, so long messages never materialize their full byte array or full String.
+ */
+final class TextPartReader {
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final int BUFFER_CHARS = 2048;
+
+    private TextPartReader() {
+    }
+
+    /**
+     * Reads up to `maxChars` chars of a downloaded MessagePart.
+     *
+     * @param part     MessagePart whose content is ready.
+     * @param start    Chars to skip before reading, as returned by a previous Chunk.getEnd().
+     * @param maxChars Maximum chars to return.
+     * @return The decoded Chunk, or `null` if the part could not be read.
+     */
+    static Chunk read(MessagePart part, int start, int maxChars) {
+        Reader reader = null;
+        try {
+            reader = new InputStreamReader(part.getDataStream(), UTF_8);
+            int skipped = 0;
+            while (skipped < start) {
+                long count = reader.skip(start - skipped);
+                if (count <= 0) break;
+                skipped += count;
+            }
+
+            // Read one char past the limit to learn whether more text follows
+            StringBuilder builder = new StringBuilder((int) Math.min(maxChars + 1, Math.max(16, part.getSize())));
+            char[] buffer = new char[Math.min(BUFFER_CHARS, maxChars + 1)];
+            while (builder.length() <= maxChars) {
+                int count = reader.read(buffer, 0, Math.min(buffer.length, maxChars + 1 - builder.length()));
+                if (count < 0) break;
+                builder.append(buffer, 0, count);
+            }
+
+            boolean hasMore = builder.length() > maxChars;
+            if (hasMore) {
+                // Never split a surrogate pair between chunks
+                int length = maxChars;
+                if (length > 0 && Character.isHighSurrogate(builder.charAt(length - 1))) length--;
+                builder.setLength(length);
+            }
+            return new Chunk(builder.toString(), skipped + builder.length(), hasMore);
+        } catch (IOException e) {
+            if (Log.isLoggable(Log.ERROR)) {
+                Log.e("Failed to decode text part " + part.getId(), e);
+            }
+            return null;
+        } finally {
+            if (reader != null) {
+                try {
+                    reader.close();
+                } catch (IOException e) {
+                    // Ignore
+                }
+            }
+        }
+    }
+
+    static final class Chunk {
+        private final String mText;
+        private final int mEnd;
+        private final boolean mHasMore;
+
+        private Chunk(String text, int end, boolean hasMore) {
+            mText = text;
+            mEnd = end;
+            mHasMore = hasMore;
+        }
+
+        String getText() {
+            return mText;
+        }
+
+        /**
+         * @return Char offset just past this Chunk, for reading the next one.
+         */
+        int getEnd() {
+            return mEnd;
+        }
+
+        boolean hasMore() {
+            return mHasMore;
+        }
+    }
+}
@@ -2,6 +2,7 @@ package com.layer.atlas.messagetypes.threepartimage;
 
 import android.Manifest;
 import android.app.Activity;
+import android.content.Context;
 import android.content.Intent;
 import android.content.pm.PackageManager;
 import android.net.Uri;
@@ -15,6 +16,7 @@ import android.support.v4.content.FileProvider;
 import android.text.TextUtils;
 
 import com.layer.atlas.R;
+import com.layer.atlas.messagetypes.AttachmentEncodingQueue;
 import com.layer.atlas.messagetypes.AttachmentSender;
 import com.layer.atlas.util.Log;
 import com.layer.atlas.util.Util;
@@ -115,22 +117,26 @@ public class CameraSender extends AttachmentSender {
             return true;
         }
         if (Log.isLoggable(Log.VERBOSE)) Log.v("Received camera response");
-        try {
-            if (Log.isPerfLoggable()) {
-                Log.perf("CameraSender is attempting to send a message");
-            }
-            Identity me = getLayerClient().getAuthenticatedUser();
-            String myName = me == null ? "" : Util.getDisplayName(me);
-            Message message = ThreePartImageUtils.newThreePartImageMessage(activity, getLayerClient(), new File(mPhotoFilePath.get()));
-
-            PushNotificationPayload payload = new PushNotificationPayload.Builder()
-                    .text(getContext().getString(R.string.atlas_notification_image, myName))
-                    .build();
-            message.getOptions().defaultPushNotificationPayload(payload);
-            send(message);
-        } catch (IOException e) {
-            if (Log.isLoggable(Log.ERROR)) Log.e(e.getMessage(), e);
+        if (Log.isPerfLoggable()) {
+            Log.perf("CameraSender is attempting to send a message");
         }
+        Identity me = getLayerClient().getAuthenticatedUser();
+        String myName = me == null ? "" : Util.getDisplayName(me);
+        final PushNotificationPayload payload = new PushNotificationPayload.Builder()
+                .text(getContext().getString(R.string.atlas_notification_image, myName))
+                .build();
+
+        // Full-resolution photos take too long to sample and compress on the main thread
+        final Context context = activity.getApplicationContext();
+        final File file = new File(mPhotoFilePath.get());
+        encodeAndSend(new AttachmentEncodingQueue.Encoder() {
+            @Override
+            public Message encode() throws IOException {
+                Message message = ThreePartImageUtils.newThreePartImageMessage(context, getLayerClient(), file);
+                message.getOptions().defaultPushNotificationPayload(payload);
+                return message;
+            }
+        });
         return true;
     }
 
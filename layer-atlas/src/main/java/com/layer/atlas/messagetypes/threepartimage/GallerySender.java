@@ -3,12 +3,14 @@ package com.layer.atlas.messagetypes.threepartimage;
 import android.Manifest;
 import android.annotation.TargetApi;
 import android.app.Activity;
+import android.content.Context;
 import android.content.Intent;
 import android.content.pm.PackageManager;
 import android.net.Uri;
 import android.os.Build;
 
 import com.layer.atlas.R;
+import com.layer.atlas.messagetypes.AttachmentEncodingQueue;
 import com.layer.atlas.messagetypes.AttachmentSender;
 import com.layer.atlas.util.Log;
 import com.layer.atlas.util.Util;
@@ -88,23 +90,26 @@ public class GallerySender extends AttachmentSender {
             return true;
         }
         if (Log.isLoggable(Log.VERBOSE)) Log.v("Received gallery response");
-        try {
-            if (Log.isPerfLoggable()) {
-                Log.perf("GallerySender is attempting to send a message");
-            }
-            Identity me = getLayerClient().getAuthenticatedUser();
-            String myName = me == null ? "" : Util.getDisplayName(me);
-            Uri uri = data.getData();
-            Message message = ThreePartImageUtils.newThreePartImageMessage(activity, getLayerClient(), uri);
-
-            PushNotificationPayload payload = new PushNotificationPayload.Builder()
-                    .text(getContext().getString(R.string.atlas_notification_image, myName))
-                    .build();
-            message.getOptions().defaultPushNotificationPayload(payload);
-            send(message);
-        } catch (IOException e) {
-            if (Log.isLoggable(Log.ERROR)) Log.e(e.getMessage(), e);
+        if (Log.isPerfLoggable()) {
+            Log.perf("GallerySender is attempting to send a message");
         }
+        Identity me = getLayerClient().getAuthenticatedUser();
+        String myName = me == null ? "" : Util.getDisplayName(me);
+        final PushNotificationPayload payload = new PushNotificationPayload.Builder()
+                .text(getContext().getString(R.string.atlas_notification_image, myName))
+                .build();
+
+        // Decoding and compressing the image takes too long for the main thread
+        final Context context = activity.getApplicationContext();
+        final Uri uri = data.getData();
+        encodeAndSend(new AttachmentEncodingQueue.Encoder() {
+            @Override
+            public Message encode() throws IOException {
+                Message message = ThreePartImageUtils.newThreePartImageMessage(context, getLayerClient(), uri);
+                message.getOptions().defaultPushNotificationPayload(payload);
+                return message;
+            }
+        });
         return true;
     }
 }
@@ -0,0 +1,158 @@
+package com.layer.atlas.messagetypes.threepartimage;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+
+import com.layer.atlas.util.Log;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+/**
+ * A single readable copy of an image being sent, from which bounds, EXIF, the preview and the full
+ * MessagePart are all derived.  Sources that are not already files are read exactly once: into
+ * memory while small, spilling to a temp file in the cache directory once they outgrow
+ * MEMORY_LIMIT.  The first HEADER_BYTES are always kept in memory for EXIF parsing.
+ */
+final class ImageSource {
+    static final int HEADER_BYTES = 128 * 1024;
+    private static final int MEMORY_LIMIT = 8 * 1024 * 1024;
+    private static final int BUFFER_BYTES = 64 * 1024;
+    private static final String SPOOL_DIRECTORY = "atlas-image-spool";
+    private static final long SPOOL_MAX_AGE_MILLIS = 60 * 60 * 1000;
+
+    // Either mData holds the whole image, or mFile does and mData holds its header
+    private final byte[] mData;
+    private final int mDataLength;
+    private final File mFile;
+    private final long mLength;
+
+    private ImageSource(byte[] data, int dataLength, File file, long length) {
+        mData = data;
+        mDataLength = dataLength;
+        mFile = file;
+        mLength = length;
+    }
+
+    /**
+     * Wraps an existing image file, reading only its header.
+     */
+    static ImageSource fromFile(File file) throws IOException {
+        byte[] header = new byte[(int) Math.min(HEADER_BYTES, file.length())];
+        InputStream in = new FileInputStream(file);
+        try {
+            int length = readFully(in, header);
+            return new ImageSource(header, length, file, file.length());
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Reads the given stream to its end, keeping it in memory if it fits and spilling it to a temp
+     * file in `cacheDir` otherwise.  Does not close the stream.
+     */
+    static ImageSource spool(InputStream in, File cacheDir) throws IOException {
+        byte[] data = new byte[BUFFER_BYTES];
+        int length = 0;
+        while (true) {
+            if (length == data.length) {
+                if (data.length >= MEMORY_LIMIT) return spill(in, cacheDir, data, length);
+                data = Arrays.copyOf(data, Math.min(MEMORY_LIMIT, data.length * 2));
+            }
+            int count = in.read(data, length, data.length - length);
+            if (count < 0) break;
+            length += count;
+        }
+        return new ImageSource(data, length, null, length);
+    }
+
+    private static ImageSource spill(InputStream in, File cacheDir, byte[] data, int length) throws IOException {
+        File directory = new File(cacheDir, SPOOL_DIRECTORY);
+        if (!directory.isDirectory() && !directory.mkdirs()) throw new IOException("Cannot create " + directory);
+        deleteStale(directory);
+
+        File file = new File(directory, System.nanoTime() + ".img");
+        if (Log.isLoggable(Log.VERBOSE)) {
+            Log.v("Spooling image larger than " + length + " bytes to '" + file.getAbsolutePath() + "'");
+        }
+        long total = length;
+        OutputStream out = new FileOutputStream(file);
+        try {
+            out.write(data, 0, length);
+            byte[] buffer = new byte[BUFFER_BYTES];
+            int count;
+            while ((count = in.read(buffer)) != -1) {
+                out.write(buffer, 0, count);
+                total += count;
+            }
+        } finally {
+            out.close();
+        }
+        return new ImageSource(Arrays.copyOf(data, HEADER_BYTES), HEADER_BYTES, file, total);
+    }
+
+    /**
+     * Spool files back MessageParts that read them lazily, so they are only removed once they are
+     * old enough that any Message built from them has been sent.
+     */
+    private static void deleteStale(File directory) {
+        File[] files = directory.listFiles();
+        if (files == null) return;
+        long cutoff = System.currentTimeMillis() - SPOOL_MAX_AGE_MILLIS;
+        for (File file : files) {
+            if (file.lastModified() < cutoff) file.delete();
+        }
+    }
+
+    /**
+     * @return The first bytes of the image, at most HEADER_BYTES.
+     */
+    byte[] getHeader() {
+        return mData;
+    }
+
+    int getHeaderLength() {
+        return mDataLength;
+    }
+
+    long getLength() {
+        return mLength;
+    }
+
+    Bitmap decode(BitmapFactory.Options options) {
+        if (mFile == null) return BitmapFactory.decodeByteArray(mData, 0, mDataLength, options);
+        return BitmapFactory.decodeFile(mFile.getAbsolutePath(), options);
+    }
+
+    BitmapFactory.Options decodeBounds() {
+        BitmapFactory.Options bounds = new BitmapFactory.Options();
+        bounds.inJustDecodeBounds = true;
+        decode(bounds);
+        return bounds;
+    }
+
+    /**
+     * Opens the whole image for a MessagePart to read.
+     */
+    InputStream openStream() throws IOException {
+        if (mFile == null) return new ByteArrayInputStream(mData, 0, mDataLength);
+        return new FileInputStream(mFile);
+    }
+
+    private static int readFully(InputStream in, byte[] buffer) throws IOException {
+        int length = 0;
+        while (length < buffer.length) {
+            int count = in.read(buffer, length, buffer.length - length);
+            if (count < 0) break;
+            length += count;
+        }
+        return length;
+    }
+}
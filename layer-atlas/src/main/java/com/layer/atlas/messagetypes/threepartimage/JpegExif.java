@@ -0,0 +1,128 @@
+package com.layer.atlas.messagetypes.threepartimage;
+
+import android.media.ExifInterface;
+
+/**
+ * Reads and writes the EXIF orientation of in-memory JPEG data, so images can be ingested without
+ * handing ExifInterface a file.
+ */
+final class JpegExif {
+    private static final int MARKER_SOI = 0xD8;
+    private static final int MARKER_APP1 = 0xE1;
+    private static final int MARKER_SOS = 0xDA;
+    private static final int MARKER_EOI = 0xD9;
+    private static final int TAG_ORIENTATION = 0x0112;
+    private static final int TYPE_SHORT = 3;
+    private static final byte[] EXIF_HEADER = {'E', 'x', 'i', 'f', 0, 0};
+
+    private JpegExif() {
+    }
+
+    /**
+     * Returns the EXIF orientation found in the given JPEG header.
+     *
+     * @param data   Leading bytes of a JPEG file.
+     * @param length Number of valid bytes in `data`.
+     * @return An ExifInterface.ORIENTATION_* value, or ORIENTATION_UNDEFINED if there is none.
+     */
+    static int readOrientation(byte[] data, int length) {
+        if (length < 4 || u8(data, 0) != 0xFF || u8(data, 1) != MARKER_SOI) {
+            return ExifInterface.ORIENTATION_UNDEFINED;
+        }
+        int offset = 2;
+        while (offset + 4 <= length) {
+            if (u8(data, offset) != 0xFF) break;
+            int marker = u8(data, offset + 1);
+            if (marker == 0xFF) {
+                // Fill byte
+                offset++;
+                continue;
+            }
+            if (marker == MARKER_SOS || marker == MARKER_EOI) break;
+            int segmentLength = u16(data, offset + 2, false);
+            int start = offset + 4;
+            int end = Math.min(length, offset + 2 + segmentLength);
+            if (marker == MARKER_APP1 && startsWith(data, start, end, EXIF_HEADER)) {
+                return readTiffOrientation(data, start + EXIF_HEADER.length, end);
+            }
+            offset += 2 + segmentLength;
+        }
+        return ExifInterface.ORIENTATION_UNDEFINED;
+    }
+
+    private static int readTiffOrientation(byte[] data, int tiff, int end) {
+        if (tiff + 8 > end) return ExifInterface.ORIENTATION_UNDEFINED;
+        boolean little;
+        if (data[tiff] == 'I' && data[tiff + 1] == 'I') {
+            little = true;
+        } else if (data[tiff] == 'M' && data[tiff + 1] == 'M') {
+            little = false;
+        } else {
+            return ExifInterface.ORIENTATION_UNDEFINED;
+        }
+        int ifd = tiff + (int) u32(data, tiff + 4, little);
+        if (ifd < tiff || ifd + 2 > end) return ExifInterface.ORIENTATION_UNDEFINED;
+        int count = u16(data, ifd, little);
+        for (int i = 0; i < count; i++) {
+            int entry = ifd + 2 + 12 * i;
+            if (entry + 12 > end) break;
+            if (u16(data, entry, little) == TAG_ORIENTATION && u16(data, entry + 2, little) == TYPE_SHORT) {
+                return u16(data, entry + 8, little);
+            }
+        }
+        return ExifInterface.ORIENTATION_UNDEFINED;
+    }
+
+    /**
+     * Returns a copy of the given JPEG with an EXIF segment holding only `orientation` inserted
+     * after its start-of-image marker.
+     *
+     * @param jpeg        JPEG data without EXIF, as written by Bitmap.compress().
+     * @param orientation An ExifInterface.ORIENTATION_* value.
+     */
+    static byte[] withOrientation(byte[] jpeg, int orientation) {
+        byte[] segment = {
+                (byte) 0xFF, (byte) MARKER_APP1,
+                // Segment length, counting itself
+                0, 34,
+                'E', 'x', 'i', 'f', 0, 0,
+                // Big-endian TIFF header, IFD0 at offset 8
+                'M', 'M', 0, 42, 0, 0, 0, 8,
+                // One IFD0 entry: orientation, SHORT, count 1
+                0, 1,
+                (byte) (TAG_ORIENTATION >> 8), (byte) TAG_ORIENTATION, 0, TYPE_SHORT, 0, 0, 0, 1,
+                (byte) (orientation >> 8), (byte) orientation, 0, 0,
+                // No next IFD
+                0, 0, 0, 0
+        };
+        byte[] result = new byte[jpeg.length + segment.length];
+        System.arraycopy(jpeg, 0, result, 0, 2);
+        System.arraycopy(segment, 0, result, 2, segment.length);
+        System.arraycopy(jpeg, 2, result, 2 + segment.length, jpeg.length - 2);
+        return result;
+    }
+
+    private static boolean startsWith(byte[] data, int start, int end, byte[] prefix) {
+        if (start + prefix.length > end) return false;
+        for (int i = 0; i < prefix.length; i++) {
+            if (data[start + i] != prefix[i]) return false;
+        }
+        return true;
+    }
+
+    private static int u8(byte[] data, int offset) {
+        return data[offset] & 0xFF;
+    }
+
+    private static int u16(byte[] data, int offset, boolean little) {
+        return little
+                ? (u8(data, offset) | (u8(data, offset + 1) << 8))
+                : ((u8(data, offset) << 8) | u8(data, offset + 1));
+    }
+
+    private static long u32(byte[] data, int offset, boolean little) {
+        long high = u16(data, offset + (little ? 2 : 0), little);
+        long low = u16(data, offset + (little ? 0 : 2), little);
+        return (high << 16) | low;
+    }
+}
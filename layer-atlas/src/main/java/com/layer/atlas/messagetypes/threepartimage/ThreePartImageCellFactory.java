@@ -11,28 +11,30 @@ import android.os.Parcel;
 import android.os.Parcelable;
 import android.support.v4.widget.ContentLoadingProgressBar;
 import android.support.v7.widget.RecyclerView;
+import android.util.JsonReader;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
-import android.widget.ImageView;
 
 import com.layer.atlas.R;
 import com.layer.atlas.messagetypes.AtlasCellFactory;
+import com.layer.atlas.messagetypes.ParsedContentSerializer;
+import com.layer.atlas.util.JsonObjectParser;
 import com.layer.atlas.util.Log;
+import com.layer.atlas.util.MessagePartDownloadCoordinator;
 import com.layer.atlas.util.Util;
 import com.layer.atlas.util.imagepopup.AtlasImagePopupActivity;
-import com.layer.atlas.util.picasso.transformations.RoundedTransform;
+import com.layer.atlas.util.picasso.MessagePartLoadCallback;
+import com.layer.atlas.util.views.ShapedImageView;
 import com.layer.sdk.LayerClient;
 import com.layer.sdk.messaging.Message;
 import com.layer.sdk.messaging.MessagePart;
-import com.squareup.picasso.Callback;
 import com.squareup.picasso.Picasso;
 import com.squareup.picasso.RequestCreator;
-import com.squareup.picasso.Transformation;
-
-import org.json.JSONException;
-import org.json.JSONObject;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.util.List;
 
 /**
@@ -45,10 +47,10 @@ public class ThreePartImageCellFactory extends AtlasCellFactory<ThreePartImageCe
 
     private static final int PLACEHOLDER = R.drawable.atlas_message_item_cell_placeholder;
     private static final int CACHE_SIZE_BYTES = 256 * 1024;
+    private static final int INFO_FIELD_COUNT = 3;
 
     private final LayerClient mLayerClient;
     private final Picasso mPicasso;
-    private Transformation mTransform;
 
     public ThreePartImageCellFactory(LayerClient mLayerClient, Picasso mPicasso) {
         super(CACHE_SIZE_BYTES);
@@ -62,8 +64,6 @@ public class ThreePartImageCellFactory extends AtlasCellFactory<ThreePartImageCe
     @Deprecated
     public ThreePartImageCellFactory(Activity activity, LayerClient layerClient, Picasso picasso) {
         this(layerClient, picasso);
-        float radius = activity.getResources().getDimension(com.layer.atlas.R.dimen.atlas_message_item_cell_radius);
-        mTransform = new RoundedTransform(radius);
     }
 
     @Override
@@ -71,6 +71,11 @@ public class ThreePartImageCellFactory extends AtlasCellFactory<ThreePartImageCe
         return isType(message);
     }
 
+    @Override
+    public boolean isMimeTypeMatcher() {
+        return getClass() == ThreePartImageCellFactory.class;
+    }
+
     @Override
     public CellHolder createCellHolder(ViewGroup cellView, boolean isMe, LayoutInflater layoutInflater) {
         return new CellHolder(layoutInflater.inflate(R.layout.atlas_message_item_cell_image, cellView, true));
@@ -81,20 +86,26 @@ public class ThreePartImageCellFactory extends AtlasCellFactory<ThreePartImageCe
         return getInfo(message);
     }
 
+    @Override
+    protected ParsedContentSerializer<Info> getParsedContentSerializer() {
+        return Info.SERIALIZER;
+    }
+
     @Override
     public void bindCellHolder(final CellHolder cellHolder, final Info info, final Message message, CellHolderSpecs specs) {
+        // A recycled CellHolder no longer wants its previous Message's download
+        if (cellHolder.mDownload != null) {
+            cellHolder.mDownload.cancel();
+            cellHolder.mDownload = null;
+        }
         cellHolder.mImageView.setTag(info);
         cellHolder.mImageView.setOnClickListener(this);
-        MessagePart preview = ThreePartImageUtils.getPreviewPart(message);
 
-        // Info width and height are the rotated width and height, though the content is not pre-rotated.
-        int[] cellDims = Util.scaleDownInside(info.width, info.height, specs.maxWidth, specs.maxHeight);
-        ViewGroup.LayoutParams params = cellHolder.mImageView.getLayoutParams();
-        params.width = cellDims[0];
-        params.height = cellDims[1];
+        // The cached Info gives the final size up front, so the preview arriving never relays out the list
+        int[] cellDims = getCellSize(info, specs);
+        cellHolder.mImageView.setFixedSize(cellDims[0], cellDims[1]);
         cellHolder.mProgressBar.show();
-
-        cellHolder.mImageView.setImageBitmap(BitmapFactory.decodeStream(preview.getDataStream()));
+        loadPreview(cellHolder, info, cellDims[0], cellDims[1], false);
 
         cellHolder.mImageView.setOnLongClickListener(new View.OnLongClickListener() {
             @Override
@@ -119,6 +130,53 @@ public class ThreePartImageCellFactory extends AtlasCellFactory<ThreePartImageCe
         });
     }
 
+    /**
+     * Returns the on-screen size of an image cell, from the image info alone.
+     *
+     * @param info  Parsed image info.
+     * @param specs Maximum cell size.
+     * @return The cell's width and height in pixels.
+     */
+    public static int[] getCellSize(Info info, CellHolderSpecs specs) {
+        // Info width and height are the rotated width and height, though the content is not pre-rotated.
+        return Util.scaleDownInside(info.width, info.height, specs.maxWidth, specs.maxHeight);
+    }
+
+    /**
+     * @param retried `true` if this load follows an earlier failure or a finished download, so
+     *                another failure is final.
+     */
+    private void loadPreview(final CellHolder cellHolder, final Info info, final int width, final int height, final boolean retried) {
+        mPicasso.load(info.previewPartId).tag(PICASSO_TAG).placeholder(PLACEHOLDER)
+                .centerInside().resize(width, height).onlyScaleDown()
+                .noFade().into(cellHolder.mImageView, new MessagePartLoadCallback(mLayerClient, info.previewPartId, retried) {
+            @Override
+            public void onSuccess() {
+                cellHolder.mProgressBar.hide();
+            }
+
+            @Override
+            protected boolean isCurrent() {
+                return cellHolder.mImageView.getTag() == info;
+            }
+
+            @Override
+            protected void retry() {
+                loadPreview(cellHolder, info, width, height, true);
+            }
+
+            @Override
+            protected void onFailed() {
+                cellHolder.mProgressBar.hide();
+            }
+
+            @Override
+            protected void setDownload(MessagePartDownloadCoordinator.Subscription download) {
+                cellHolder.mDownload = download;
+            }
+        });
+    }
+
     @Override
     public void onClick(View v) {
         AtlasImagePopupActivity.init(mLayerClient);
@@ -150,19 +208,6 @@ public class ThreePartImageCellFactory extends AtlasCellFactory<ThreePartImageCe
         }
     }
 
-    //==============================================================================================
-    // private methods
-    //==============================================================================================
-
-    private Transformation getTransform(Context context) {
-        if (mTransform == null) {
-            float radius = context.getResources().getDimension(com.layer.atlas.R.dimen.atlas_message_item_cell_radius);
-            mTransform = new RoundedTransform(radius);
-        }
-
-        return mTransform;
-    }
-
     //==============================================================================================
     // Static utilities
     //==============================================================================================
@@ -188,14 +233,12 @@ public class ThreePartImageCellFactory extends AtlasCellFactory<ThreePartImageCe
     public static Info getInfo(Message message) {
         try {
             Info info = new Info();
-            JSONObject infoObject = new JSONObject(new String(ThreePartImageUtils.getInfoPart(message).getData()));
-            info.orientation = infoObject.getInt("orientation");
-            info.width = infoObject.getInt("width");
-            info.height = infoObject.getInt("height");
+            int fields = JsonObjectParser.parse(ThreePartImageUtils.getInfoPart(message).getDataStream(), info, Info.FIELD_READER);
+            if (fields != INFO_FIELD_COUNT) throw new IOException("Incomplete image info");
             info.previewPartId = ThreePartImageUtils.getPreviewPart(message).getId();
             info.fullPartId = ThreePartImageUtils.getFullPart(message).getId();
             return info;
-        } catch (JSONException e) {
+        } catch (IOException e) {
             if (Log.isLoggable(Log.ERROR)) {
                 Log.e(e.getMessage(), e);
             }
@@ -215,6 +258,54 @@ public class ThreePartImageCellFactory extends AtlasCellFactory<ThreePartImageCe
         public Uri fullPartId;
         public Uri previewPartId;
 
+        static final JsonObjectParser.FieldReader<Info> FIELD_READER = new JsonObjectParser.FieldReader<Info>() {
+            @Override
+            public boolean readField(Info info, String name, JsonReader reader) throws IOException {
+                if ("orientation".equals(name)) {
+                    info.orientation = JsonObjectParser.nextInt(reader);
+                } else if ("width".equals(name)) {
+                    info.width = JsonObjectParser.nextInt(reader);
+                } else if ("height".equals(name)) {
+                    info.height = JsonObjectParser.nextInt(reader);
+                } else {
+                    return false;
+                }
+                return true;
+            }
+        };
+
+        static final ParsedContentSerializer<Info> SERIALIZER = new ParsedContentSerializer<Info>() {
+            @Override
+            public int getVersion() {
+                return 1;
+            }
+
+            @Override
+            public boolean isPersistable(Info content) {
+                return true;
+            }
+
+            @Override
+            public void write(Info content, DataOutput out) throws IOException {
+                out.writeInt(content.orientation);
+                out.writeInt(content.width);
+                out.writeInt(content.height);
+                out.writeUTF(content.fullPartId.toString());
+                out.writeUTF(content.previewPartId.toString());
+            }
+
+            @Override
+            public Info read(DataInput in) throws IOException {
+                Info info = new Info();
+                info.orientation = in.readInt();
+                info.width = in.readInt();
+                info.height = in.readInt();
+                info.fullPartId = Uri.parse(in.readUTF());
+                info.previewPartId = Uri.parse(in.readUTF());
+                return info;
+            }
+        };
+
         @Override
         public int sizeOf() {
             return ((Integer.SIZE + Integer.SIZE + Integer.SIZE) / Byte.SIZE) + fullPartId.toString().getBytes().length + previewPartId.toString().getBytes().length;
@@ -249,11 +340,12 @@ public class ThreePartImageCellFactory extends AtlasCellFactory<ThreePartImageCe
     }
 
     static class CellHolder extends AtlasCellFactory.CellHolder {
-        ImageView mImageView;
+        ShapedImageView mImageView;
         ContentLoadingProgressBar mProgressBar;
+        MessagePartDownloadCoordinator.Subscription mDownload;
 
         public CellHolder(View view) {
-            mImageView = (ImageView) view.findViewById(R.id.cell_image);
+            mImageView = (ShapedImageView) view.findViewById(R.id.cell_image);
             mProgressBar = (ContentLoadingProgressBar) view.findViewById(R.id.cell_progress);
         }
     }
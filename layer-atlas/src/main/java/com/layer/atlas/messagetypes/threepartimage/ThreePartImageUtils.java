@@ -1,33 +1,25 @@
 package com.layer.atlas.messagetypes.threepartimage;
 
 import android.content.Context;
-import android.database.Cursor;
 import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Rect;
 import android.media.ExifInterface;
 import android.net.Uri;
-import android.os.Build;
-import android.os.ParcelFileDescriptor;
-import android.provider.MediaStore;
-import android.provider.OpenableColumns;
-import android.support.annotation.NonNull;
-import android.support.annotation.RequiresApi;
 
+import com.layer.atlas.util.BitmapPool;
 import com.layer.atlas.util.Log;
 import com.layer.atlas.util.Util;
 import com.layer.sdk.LayerClient;
 import com.layer.sdk.messaging.Message;
 import com.layer.sdk.messaging.MessagePart;
 
-import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
-import java.io.FileDescriptor;
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.OutputStream;
-import java.util.Calendar;
 import java.util.Locale;
 
 public class ThreePartImageUtils {
@@ -62,56 +54,24 @@ public class ThreePartImageUtils {
     }
 
     /**
-     * The methods by which the ThreePartImageMessage is constructed differs by Android API versions
-     * since the way in which Android handles files from ContentProviders has changed across versions
-     * <p>
-     * Nougat: Makes some changes to how files are handled.  It is no longer allowed to attach a "file://"
-     * URI to an intent any longer.
-     * <p>
-     * Kitkat - Marshmallow : On these versions of Android, the URI you get back may or may not be a "file://"
-     * URI, depending on whether the file in question is on disk or is a remote file. Using a {@link ParcelFileDescriptor}
-     * is the simplest way of handling these variations, without having to parse URIs.
-     * <p>
-     * Jelly Bean to <KitKat: {@link #getPath(Context, Uri) getPath} handles potential edge cases arising from files picked
-     * from the Gallery vs files selected using a third party file explorer
+     * Creates a new ThreePartImage Message from a content or file Uri.  The image is read from the
+     * ContentResolver exactly once, into memory or a spooled temp file, and every part is derived
+     * from that copy.
      */
     public static Message newThreePartImageMessage(Context context, LayerClient layerClient, Uri imageUri) throws IOException {
-        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.N) {
-            return newThreePartImageMessageFromUri(context, layerClient, imageUri);
-        } else if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT) {
-            ParcelFileDescriptor parcelFileDescriptor = null;
-            try {
-                parcelFileDescriptor = context.getContentResolver().openFileDescriptor(imageUri, "r");
-                FileDescriptor fileDescriptor = parcelFileDescriptor.getFileDescriptor();
-                return newThreePartImageMessageFromFileDescriptor(context, layerClient, fileDescriptor);
-            } finally {
-                if (parcelFileDescriptor != null) {
-                    parcelFileDescriptor.close();
-                }
-            }
-        } else {
-            String path = getPath(context, imageUri);
-            File imageFile = new File(path);
-            return ThreePartImageUtils.newThreePartImageMessage(context, layerClient, imageFile);
-        }
-    }
-
-    private static String getPath(Context context, Uri uri) {
-        Cursor cursor = context.getContentResolver().query(uri, new String[]{MediaStore.Images.Media.DATA}, null, null, null);
-
+        if (layerClient == null) throw new IllegalArgumentException("Null LayerClient");
+        InputStream inputStream = context.getContentResolver().openInputStream(imageUri);
+        if (inputStream == null) throw new IOException("Cannot open " + imageUri);
+        ImageSource source;
         try {
-            // Images in the MediaStore
-            if (cursor != null) {
-                int columnIndex = cursor.getColumnIndexOrThrow(MediaStore.Images.Media.DATA);
-                cursor.moveToFirst();
-                return cursor.getString(columnIndex);
-            } else {
-                // Fallback to available path in the Uri
-                return uri.getPath();
-            }
+            source = ImageSource.spool(inputStream, context.getCacheDir());
         } finally {
-            if (cursor != null) cursor.close();
+            inputStream.close();
         }
+        if (Log.isLoggable(Log.VERBOSE)) {
+            Log.v("Creating ThreePartImage from " + imageUri);
+        }
+        return newThreePartImageMessage(layerClient, source);
     }
 
     /**
@@ -127,21 +87,26 @@ public class ThreePartImageUtils {
         if (file == null) throw new IllegalArgumentException("Null image file");
         if (!file.exists()) throw new IllegalArgumentException("No image file");
         if (!file.canRead()) throw new IllegalArgumentException("Cannot read image file");
+        if (file.length() <= 0) throw new IllegalArgumentException("Image file is empty");
 
-        BitmapFactory.Options bounds = getBounds(new FileInputStream(file.getAbsolutePath()));
-        ExifInterface exifData = getExifData(file);
+        if (Log.isLoggable(Log.VERBOSE)) {
+            Log.v("Creating ThreePartImage from '" + file.getAbsolutePath() + "'");
+        }
+        return newThreePartImageMessage(client, ImageSource.fromFile(file));
+    }
+
+    private static Message newThreePartImageMessage(LayerClient client, ImageSource source) throws IOException {
+        BitmapFactory.Options bounds = source.decodeBounds();
+        int exifOrientation = JpegExif.readOrientation(source.getHeader(), source.getHeaderLength());
 
         // Create info message part
-        MessagePart info = buildInfoMessagePart(client, bounds, exifData);
+        MessagePart info = buildInfoMessagePart(client, bounds, exifOrientation);
 
         // Create Preview message part
-        if (Log.isLoggable(Log.VERBOSE)) {
-            Log.v("Creating Preview from '" + file.getAbsolutePath() + "'");
-        }
-        MessagePart preview = buildPreviewMessagePart(context, client, new FileInputStream(file.getAbsolutePath()), bounds, exifData);
+        MessagePart preview = buildPreviewMessagePart(client, source, bounds, exifOrientation);
 
         // Create Full message part
-        MessagePart full = client.newMessagePart(MIME_TYPE_IMAGE_JPEG, new FileInputStream(file), file.length());
+        MessagePart full = client.newMessagePart(MIME_TYPE_IMAGE_JPEG, source.openStream(), source.getLength());
         if (Log.isLoggable(Log.VERBOSE)) {
             Log.v(String.format(Locale.US, "Full image bytes: %d, preview bytes: %d, info bytes: %d", full.getSize(), preview.getSize(), info.getSize()));
         }
@@ -153,48 +118,9 @@ public class ThreePartImageUtils {
         return client.newMessage(parts);
     }
 
-    private static ExifInterface getExifData(File imageFile) throws IOException {
-        if (imageFile == null) throw new IllegalArgumentException("Null image file");
-        if (!imageFile.exists()) throw new IllegalArgumentException("Image file does not exist");
-        if (!imageFile.canRead()) throw new IllegalArgumentException("Cannot read image file");
-        if (imageFile.length() <= 0) throw new IllegalArgumentException("Image file is empty");
-
-        try {
-            ExifInterface exifInterface = new ExifInterface(imageFile.getAbsolutePath());
-            return exifInterface;
-        } catch (IOException e) {
-            if (Log.isLoggable(Log.ERROR)) {
-                Log.e(e.getMessage(), e);
-            }
-            throw e;
-        }
-    }
-
-    @RequiresApi(api = Build.VERSION_CODES.N)
-    private static ExifInterface getExifData(@NonNull InputStream inputStream) throws IOException {
-        try {
-            ExifInterface exifInterface = new ExifInterface(inputStream);
-            return exifInterface;
-        } catch (IOException e) {
-            if (Log.isLoggable(Log.ERROR)) {
-                Log.e(e.getMessage(), e);
-            }
-            throw e;
-        }
-    }
-
-    private static BitmapFactory.Options getBounds(InputStream inputStream) {
-        BitmapFactory.Options bounds = new BitmapFactory.Options();
-        bounds.inJustDecodeBounds = true;
-        BitmapFactory.decodeStream(inputStream, null, bounds);
-
-        return bounds;
-    }
-
     private static MessagePart buildInfoMessagePart(LayerClient client, BitmapFactory.Options bounds,
-                                                    ExifInterface exifData) throws IOException {
-        int[] orientationData = getOrientationData(exifData);
-        int orientation = orientationData[0];
+                                                    int exifOrientation) throws IOException {
+        int orientation = getOrientation(exifOrientation);
 
         boolean isSwap = orientation == ORIENTATION_270 || orientation == ORIENTATION_90;
 
@@ -209,7 +135,7 @@ public class ThreePartImageUtils {
         return client.newMessagePart(MIME_TYPE_INFO, intoString.getBytes());
     }
 
-    private static Bitmap getPreviewBitmap(BitmapFactory.Options bounds, InputStream inputStream) {
+    private static Bitmap getPreviewBitmap(BitmapFactory.Options bounds, ImageSource source) {
         // Determine preview size
         int[] previewDimensions = Util.scaleDownInside(bounds.outWidth, bounds.outHeight, PREVIEW_MAX_WIDTH, PREVIEW_MAX_HEIGHT);
         if (Log.isLoggable(Log.VERBOSE)) {
@@ -234,11 +160,27 @@ public class ThreePartImageUtils {
             Log.v("Preview sampled size: " + (sampleWidth << 1) + "x" + (sampleHeight << 1));
         }
 
+        // Decode into a pooled Bitmap, sized generously in case the decoder rounds up
+        BitmapPool pool = BitmapPool.getDefault();
+        int decodedWidth = (bounds.outWidth + sampleSize - 1) / sampleSize;
+        int decodedHeight = (bounds.outHeight + sampleSize - 1) / sampleSize;
+        pool.prepareDecode(previewOptions, decodedWidth, decodedHeight);
+        Bitmap sampledBitmap;
+        try {
+            sampledBitmap = source.decode(previewOptions);
+        } catch (IllegalArgumentException e) {
+            // The pooled Bitmap could not be reused for this image
+            pool.put(previewOptions.inBitmap);
+            previewOptions.inBitmap = null;
+            sampledBitmap = source.decode(previewOptions);
+        }
+
         // Create previewBitmap if sample size and preview size are different
-        Bitmap sampledBitmap = BitmapFactory.decodeStream(inputStream, null, previewOptions);
         if (previewDimensions[0] != sampleWidth && previewDimensions[1] != sampleHeight) {
-            Bitmap previewBitmap = Bitmap.createScaledBitmap(sampledBitmap, previewDimensions[0], previewDimensions[1], true);
-            sampledBitmap.recycle();
+            Bitmap previewBitmap = pool.get(previewDimensions[0], previewDimensions[1], Bitmap.Config.ARGB_8888);
+            Rect target = new Rect(0, 0, previewDimensions[0], previewDimensions[1]);
+            new Canvas(previewBitmap).drawBitmap(sampledBitmap, null, target, new Paint(Paint.FILTER_BITMAP_FLAG));
+            pool.put(sampledBitmap);
             return previewBitmap;
         }
         else {
@@ -246,105 +188,25 @@ public class ThreePartImageUtils {
         }
     }
 
-    private static MessagePart buildPreviewMessagePart(Context context, LayerClient client, InputStream inputStream,
-                                                       BitmapFactory.Options bounds, ExifInterface exifData) throws IOException {
-
-        Bitmap previewBitmap = getPreviewBitmap(bounds, inputStream);
-        File temp = new File(context.getCacheDir(), ThreePartImageUtils.class.getSimpleName() + "." + System.nanoTime() + ".jpg");
-        FileOutputStream previewStream = new FileOutputStream(temp);
-
-        if (Log.isLoggable(Log.VERBOSE)) {
-            Log.v("Compressing preview to '" + temp.getAbsolutePath() + "'");
-        }
+    private static MessagePart buildPreviewMessagePart(LayerClient client, ImageSource source,
+                                                       BitmapFactory.Options bounds, int exifOrientation) throws IOException {
 
+        Bitmap previewBitmap = getPreviewBitmap(bounds, source);
+        ByteArrayOutputStream previewStream = new ByteArrayOutputStream(PREVIEW_MAX_WIDTH * PREVIEW_MAX_HEIGHT / 4);
         previewBitmap.compress(Bitmap.CompressFormat.JPEG, PREVIEW_COMPRESSION_QUALITY, previewStream);
-        previewBitmap.recycle();
-        previewStream.close();
+        BitmapPool.getDefault().put(previewBitmap);
 
         // Preserve exif orientation
-        ExifInterface preserver = new ExifInterface(temp.getAbsolutePath());
-        int[] orientationData = getOrientationData(exifData);
-        int exifOrientation = orientationData[1];
-        preserver.setAttribute(ExifInterface.TAG_ORIENTATION, Integer.toString(exifOrientation));
-        preserver.saveAttributes();
+        byte[] preview = JpegExif.withOrientation(previewStream.toByteArray(), exifOrientation);
         if (Log.isLoggable(Log.VERBOSE)) {
             Log.v("Exif orientation preserved in preview");
         }
 
-        return client.newMessagePart(MIME_TYPE_PREVIEW, new FileInputStream(temp), temp.length());
-    }
-
-
-    @RequiresApi(api = Build.VERSION_CODES.N)
-    private static Message newThreePartImageMessageFromUri(Context context, LayerClient client, @NonNull Uri uri) throws IOException {
-        if (client == null) throw new IllegalArgumentException("Null LayerClient");
-
-        InputStream inputStream = context.getContentResolver().openInputStream(uri);
-        ExifInterface exifData = getExifData(inputStream);
-
-        inputStream = context.getContentResolver().openInputStream(uri);
-        BitmapFactory.Options bounds = getBounds(inputStream);
-
-        // Create info message part
-        MessagePart info = buildInfoMessagePart(client, bounds, exifData);
-
-        // Create Preview message part
-        if (Log.isLoggable(Log.VERBOSE)) {
-            Log.v("Creating Preview from " + uri.toString());
-        }
-        inputStream = context.getContentResolver().openInputStream(uri);
-        MessagePart preview = buildPreviewMessagePart(context, client, inputStream, bounds, exifData);
-
-        // Create Full message part
-        inputStream = context.getContentResolver().openInputStream(uri);
-        long fileSize = getFileSizeFromUri(context, uri);
-        MessagePart full = client.newMessagePart(MIME_TYPE_IMAGE_JPEG, inputStream, fileSize);
-        if (Log.isLoggable(Log.VERBOSE)) {
-            Log.v(String.format(Locale.US, "Full image bytes: %d, preview bytes: %d, info bytes: %d", full.getSize(), preview.getSize(), info.getSize()));
-        }
-
-        MessagePart[] parts = new MessagePart[3];
-        parts[PART_INDEX_FULL] = full;
-        parts[PART_INDEX_PREVIEW] = preview;
-        parts[PART_INDEX_INFO] = info;
-        return client.newMessage(parts);
-    }
-
-    /**
-     * Need to copy the file into the cache since the APIs to read exifdata from
-     * {@link FileDescriptor} & {@link InputStream} are not available on Android versions < Nougat.
-     *
-     * The only option is to read that information from a file, which necessitates the use of
-     * {@link #writeStreamToFile(String, InputStream)}, after which the file handling is standard
-     * for all Android versions < Nougat
-     */
-    private static Message newThreePartImageMessageFromFileDescriptor(Context context, LayerClient client, @NonNull FileDescriptor fileDescriptor) throws IOException {
-        if (client == null) throw new IllegalArgumentException("Null LayerClient");
-
-        InputStream inputStream = new FileInputStream(fileDescriptor);
-        String filePath = context.getCacheDir() + "/img_" + Calendar.getInstance().getTimeInMillis();
-        writeStreamToFile(filePath, inputStream);
-        return newThreePartImageMessage(context, client, new File(filePath));
-    }
-
-    private static void writeStreamToFile(String filePath, InputStream inputStream) throws IOException {
-        OutputStream stream = new BufferedOutputStream(new FileOutputStream(filePath));
-        int bufferSize = 1024;
-        byte[] buffer = new byte[bufferSize];
-        int len = 0;
-        while ((len = inputStream.read(buffer)) != -1) {
-            stream.write(buffer, 0, len);
-        }
-        if (stream != null)
-            stream.close();
+        return client.newMessagePart(MIME_TYPE_PREVIEW, preview);
     }
 
-    private static int[] getOrientationData(ExifInterface exifInterface) {
-        // Try parsing Exif data.
+    private static int getOrientation(int exifOrientation) {
         int orientation = ORIENTATION_0;
-        int exifOrientation = ExifInterface.ORIENTATION_UNDEFINED;
-
-        exifOrientation = exifInterface.getAttributeInt(ExifInterface.TAG_ORIENTATION, ExifInterface.ORIENTATION_UNDEFINED);
         if (Log.isLoggable(Log.VERBOSE)) {
             Log.v("Found Exif orientation: " + exifOrientation);
         }
@@ -367,17 +229,6 @@ public class ThreePartImageUtils {
                 orientation = ORIENTATION_90;
                 break;
         }
-        int[] orientationData = new int[]{orientation, exifOrientation};
-        return orientationData;
-    }
-
-    private static long getFileSizeFromUri(Context context, Uri uri) {
-        Cursor cursor = context.getContentResolver().query(uri,
-                null, null, null, null);
-        cursor.moveToFirst();
-        long size = cursor.getLong(cursor.getColumnIndex(OpenableColumns.SIZE));
-        cursor.close();
-
-        return size;
+        return orientation;
     }
 }
@@ -0,0 +1,298 @@
+package com.layer.atlas.util;
+
+import android.annotation.TargetApi;
+import android.content.ComponentCallbacks2;
+import android.content.Context;
+import android.content.res.Configuration;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Color;
+import android.os.Build;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * A thread-safe pool of mutable Bitmaps for reuse as decode targets and transformation outputs,
+ * held under one byte cap.  Bitmaps are bucketed by Config and allocation size.  On KitKat and
+ * later a request is served by the smallest pooled Bitmap large enough to be reconfigured to the
+ * requested size, up to MAX_SIZE_MULTIPLE times larger; earlier releases can only reuse Bitmaps
+ * with exactly the requested dimensions.  The least recently pooled Bitmaps are recycled first
+ * when the pool is over its cap.
+ * <p>
+ * Register the pool with registerComponentCallbacks() to empty it when the system is low on
+ * memory.  The default pool is fed by image preview generation, which AttachmentEncodingQueue
+ * runs, so the queue also empties it whenever it has no more Jobs.
+ */
+public class BitmapPool implements ComponentCallbacks2 {
+    // Room for one sampled decode target and one preview
+    public static final long DEFAULT_MAX_BYTES = 4 * 1024 * 1024;
+    private static final int MAX_SIZE_MULTIPLE = 2;
+
+    private static BitmapPool sDefault;
+
+    private final Map<Bitmap.Config, TreeMap<Integer, LinkedList<Bitmap>>> mBuckets = new HashMap<>();
+    // Insertion order, for evicting the least recently pooled Bitmaps
+    private final LinkedHashSet<Bitmap> mPooled = new LinkedHashSet<>();
+    private long mMaxBytes;
+    private long mSize = 0;
+    private long mHits = 0;
+    private long mMisses = 0;
+    private long mPuts = 0;
+    private long mEvictions = 0;
+    private boolean mRegistered = false;
+
+    /**
+     * Returns the BitmapPool shared by image preview generation.
+     */
+    public static synchronized BitmapPool getDefault() {
+        if (sDefault == null) sDefault = new BitmapPool(DEFAULT_MAX_BYTES);
+        return sDefault;
+    }
+
+    public BitmapPool(long maxBytes) {
+        mMaxBytes = Math.max(0, maxBytes);
+    }
+
+    /**
+     * Sets the byte cap, recycling pooled Bitmaps if the pool is now over it.
+     *
+     * @param maxBytes Maximum bytes of pooled Bitmaps to hold.
+     * @return This BitmapPool.
+     */
+    public synchronized BitmapPool setMaxBytes(long maxBytes) {
+        mMaxBytes = Math.max(0, maxBytes);
+        trimToSize(mMaxBytes);
+        return this;
+    }
+
+    public synchronized long getMaxBytes() {
+        return mMaxBytes;
+    }
+
+    /**
+     * @return Bytes of Bitmaps currently pooled.
+     */
+    public synchronized long getSize() {
+        return mSize;
+    }
+
+    /**
+     * Registers this pool for trim-memory callbacks from the application.  Safe to call more than
+     * once.
+     *
+     * @param context Any Context; its application Context is used.
+     */
+    public synchronized void registerComponentCallbacks(Context context) {
+        if (mRegistered) return;
+        context.getApplicationContext().registerComponentCallbacks(this);
+        mRegistered = true;
+    }
+
+    /**
+     * Returns a cleared, mutable Bitmap of the given size and Config, from the pool if one fits or
+     * newly allocated otherwise.  Pass it to put() once it is no longer referenced.
+     */
+    public Bitmap get(int width, int height, Bitmap.Config config) {
+        Bitmap bitmap = take(width, height, config);
+        if (bitmap == null) return Bitmap.createBitmap(width, height, config);
+        bitmap.eraseColor(Color.TRANSPARENT);
+        return bitmap;
+    }
+
+    /**
+     * Sets `options.inBitmap` to a pooled Bitmap that a decode of the given output size can reuse,
+     * and makes the decoded Bitmap mutable so it can be pooled in turn.  Before KitKat, sampled
+     * decodes cannot reuse a Bitmap and are left alone.  If decoding into the Bitmap fails, call
+     * put(options.inBitmap) and decode again with `options.inBitmap` cleared.
+     *
+     * @param options Options for the decode, with `inSampleSize` already set.
+     * @param width   Width of the decoded Bitmap, after sampling.
+     * @param height  Height of the decoded Bitmap, after sampling.
+     */
+    public void prepareDecode(BitmapFactory.Options options, int width, int height) {
+        options.inMutable = true;
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.KITKAT && options.inSampleSize > 1) return;
+        Bitmap.Config config = (options.inPreferredConfig != null) ? options.inPreferredConfig : Bitmap.Config.ARGB_8888;
+        options.inBitmap = take(width, height, config);
+    }
+
+    /**
+     * Returns a Bitmap to the pool.  Bitmaps that cannot be pooled, or that do not fit under the
+     * cap, are recycled.  The caller must not use the Bitmap afterwards.
+     */
+    public void put(Bitmap bitmap) {
+        if (bitmap == null || bitmap.isRecycled()) return;
+        if (!bitmap.isMutable() || bitmap.getConfig() == null) {
+            bitmap.recycle();
+            return;
+        }
+        int bytes = getAllocationBytes(bitmap);
+        synchronized (this) {
+            if (mPooled.contains(bitmap)) return;
+            if (bytes > mMaxBytes) {
+                bitmap.recycle();
+                return;
+            }
+            TreeMap<Integer, LinkedList<Bitmap>> sizes = mBuckets.get(bitmap.getConfig());
+            if (sizes == null) {
+                sizes = new TreeMap<>();
+                mBuckets.put(bitmap.getConfig(), sizes);
+            }
+            LinkedList<Bitmap> bucket = sizes.get(bytes);
+            if (bucket == null) {
+                bucket = new LinkedList<>();
+                sizes.put(bytes, bucket);
+            }
+            bucket.add(bitmap);
+            mPooled.add(bitmap);
+            mSize += bytes;
+            mPuts++;
+            trimToSize(mMaxBytes);
+        }
+    }
+
+    /**
+     * Recycles every pooled Bitmap.
+     */
+    public void evictAll() {
+        trimToSize(0);
+    }
+
+    /**
+     * Recycles the least recently pooled Bitmaps until the pool holds at most `maxBytes`.
+     *
+     * @param maxBytes Target size in bytes.
+     */
+    public synchronized void trimToSize(long maxBytes) {
+        Iterator<Bitmap> oldest = mPooled.iterator();
+        while (mSize > maxBytes && oldest.hasNext()) {
+            Bitmap bitmap = oldest.next();
+            oldest.remove();
+            removeFromBucket(bitmap);
+            mEvictions++;
+            bitmap.recycle();
+        }
+    }
+
+    public synchronized long getHitCount() {
+        return mHits;
+    }
+
+    public synchronized long getMissCount() {
+        return mMisses;
+    }
+
+    public synchronized long getPutCount() {
+        return mPuts;
+    }
+
+    public synchronized long getEvictionCount() {
+        return mEvictions;
+    }
+
+    @Override
+    public synchronized String toString() {
+        long requests = mHits + mMisses;
+        int hitPercent = (requests == 0) ? 0 : (int) (100 * mHits / requests);
+        return String.format(Locale.US, "BitmapPool[size=%d/%d bytes, hits=%d, misses=%d, hitRate=%d%%, puts=%d, evictions=%d]",
+                mSize, mMaxBytes, mHits, mMisses, hitPercent, mPuts, mEvictions);
+    }
+
+    @Override
+    public void onTrimMemory(int level) {
+        if (level >= TRIM_MEMORY_BACKGROUND || level == TRIM_MEMORY_RUNNING_LOW || level == TRIM_MEMORY_RUNNING_CRITICAL) {
+            evictAll();
+        } else if (level >= TRIM_MEMORY_UI_HIDDEN || level == TRIM_MEMORY_RUNNING_MODERATE) {
+            trimToSize(getMaxBytes() / 2);
+        }
+        if (Log.isPerfLoggable()) {
+            Log.perf(this + " trimmed at level " + level);
+        }
+    }
+
+    @Override
+    public void onConfigurationChanged(Configuration newConfig) {
+    }
+
+    @Override
+    public void onLowMemory() {
+        evictAll();
+    }
+
+    private synchronized Bitmap take(int width, int height, Bitmap.Config config) {
+        Bitmap bitmap = (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT)
+                ? takeReconfigurable(width, height, config)
+                : takeExact(width, height, config);
+        if (bitmap == null) {
+            mMisses++;
+            return null;
+        }
+        mHits++;
+        mPooled.remove(bitmap);
+        mSize -= getAllocationBytes(bitmap);
+        return bitmap;
+    }
+
+    private Bitmap takeExact(int width, int height, Bitmap.Config config) {
+        TreeMap<Integer, LinkedList<Bitmap>> sizes = mBuckets.get(config);
+        if (sizes == null) return null;
+        int bytes = width * height * getBytesPerPixel(config);
+        LinkedList<Bitmap> bucket = sizes.get(bytes);
+        if (bucket == null) return null;
+        for (Iterator<Bitmap> i = bucket.iterator(); i.hasNext(); ) {
+            Bitmap bitmap = i.next();
+            if (bitmap.getWidth() == width && bitmap.getHeight() == height) {
+                i.remove();
+                if (bucket.isEmpty()) sizes.remove(bytes);
+                return bitmap;
+            }
+        }
+        return null;
+    }
+
+    @TargetApi(Build.VERSION_CODES.KITKAT)
+    private Bitmap takeReconfigurable(int width, int height, Bitmap.Config config) {
+        TreeMap<Integer, LinkedList<Bitmap>> sizes = mBuckets.get(config);
+        if (sizes == null) return null;
+        int bytes = width * height * getBytesPerPixel(config);
+        Map.Entry<Integer, LinkedList<Bitmap>> entry = sizes.ceilingEntry(bytes);
+        // Don't tie up a much larger Bitmap for a small request
+        if (entry == null || entry.getKey() > (long) bytes * MAX_SIZE_MULTIPLE) return null;
+        LinkedList<Bitmap> bucket = entry.getValue();
+        Bitmap bitmap = bucket.removeFirst();
+        if (bucket.isEmpty()) sizes.remove(entry.getKey());
+        if (bitmap.getWidth() != width || bitmap.getHeight() != height) {
+            bitmap.reconfigure(width, height, config);
+        }
+        return bitmap;
+    }
+
+    private void removeFromBucket(Bitmap bitmap) {
+        TreeMap<Integer, LinkedList<Bitmap>> sizes = mBuckets.get(bitmap.getConfig());
+        if (sizes == null) return;
+        int bytes = getAllocationBytes(bitmap);
+        mSize -= bytes;
+        LinkedList<Bitmap> bucket = sizes.get(bytes);
+        if (bucket == null) return;
+        bucket.remove(bitmap);
+        if (bucket.isEmpty()) sizes.remove(bytes);
+    }
+
+    @TargetApi(Build.VERSION_CODES.KITKAT)
+    private static int getAllocationBytes(Bitmap bitmap) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT) return bitmap.getAllocationByteCount();
+        return bitmap.getByteCount();
+    }
+
+    private static int getBytesPerPixel(Bitmap.Config config) {
+        if (config == Bitmap.Config.ALPHA_8) return 1;
+        if (config == Bitmap.Config.RGB_565 || config == Bitmap.Config.ARGB_4444) return 2;
+        return 4;
+    }
+}
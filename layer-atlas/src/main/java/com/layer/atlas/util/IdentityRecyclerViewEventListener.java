@@ -21,10 +21,21 @@ import java.util.Set;
  */
 public class IdentityRecyclerViewEventListener implements LayerChangeEventListener.Weak {
     private final RecyclerView.Adapter mAdapter;
+    private final Object mPayload;
     private final Map<Uri, Set<Integer>> identityPositions = new HashMap<>();
 
     public IdentityRecyclerViewEventListener(RecyclerView.Adapter adapter) {
+        this(adapter, null);
+    }
+
+    /**
+     * @param adapter Adapter to notify of identity changes.
+     * @param payload Payload passed to notifyItemChanged() for affected positions, letting the
+     *                adapter rebind only identity-dependent views.  May be null.
+     */
+    public IdentityRecyclerViewEventListener(RecyclerView.Adapter adapter, Object payload) {
         mAdapter = adapter;
+        mPayload = payload;
     }
 
     /**
@@ -49,14 +60,26 @@ public class IdentityRecyclerViewEventListener implements LayerChangeEventListen
     public void onChangeEvent(LayerChangeEvent layerChangeEvent) {
         for (LayerChange change : layerChangeEvent.getChanges()) {
             if (change.getObjectType().equals(LayerObject.Type.IDENTITY)) {
-                Uri id = ((Identity) change.getObject()).getId();
+                Identity identity = (Identity) change.getObject();
+                onIdentityChanged(identity);
+                Uri id = identity.getId();
                 Set<Integer> positions = identityPositions.get(id);
                 if (positions != null) {
                     for (Integer position : positions) {
-                        mAdapter.notifyItemChanged(position);
+                        mAdapter.notifyItemChanged(position, mPayload);
                     }
                 }
             }
         }
     }
+
+    /**
+     * Called for each changed identity before bound positions are notified.  Override to drop
+     * anything cached from the identity so the following rebinds pick up its new values.
+     *
+     * @param identity The Identity that changed.
+     */
+    protected void onIdentityChanged(Identity identity) {
+        // Optional override
+    }
 }
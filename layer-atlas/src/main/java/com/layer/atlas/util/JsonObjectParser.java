@@ -0,0 +1,96 @@
+package com.layer.atlas.util;
+
+import android.util.JsonReader;
+import android.util.JsonToken;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+
+/**
+ * Streams the top-level fields of a small JSON object, such as a MessagePart's content, straight
+ * into a target object.  Unlike JSONObject, nothing is built for fields the caller ignores, and
+ * numbers are read as primitives rather than boxed into a HashMap.
+ */
+public final class JsonObjectParser {
+    private static final String CHARSET = "UTF-8";
+
+    private JsonObjectParser() {
+    }
+
+    /**
+     * Reads each top-level field of the JSON object in `in` with the given FieldReader, skipping
+     * the fields it does not handle.  The stream is closed when done.
+     *
+     * @param in          Stream holding one JSON object.
+     * @param target      Object the FieldReader fills in.
+     * @param fieldReader FieldReader for the target's fields.
+     * @return The number of fields the FieldReader handled.
+     * @throws IOException if the stream cannot be read or is not a JSON object of the expected form.
+     */
+    public static <T> int parse(InputStream in, T target, FieldReader<T> fieldReader) throws IOException {
+        JsonReader reader = new JsonReader(new InputStreamReader(in, CHARSET));
+        try {
+            int handled = 0;
+            reader.beginObject();
+            while (reader.hasNext()) {
+                if (fieldReader.readField(target, reader.nextName(), reader)) {
+                    handled++;
+                } else {
+                    reader.skipValue();
+                }
+            }
+            reader.endObject();
+            return handled;
+        } catch (IllegalStateException e) {
+            // Thrown for a value of the wrong type
+            throw new IOException(e.getMessage(), e);
+        } catch (NumberFormatException e) {
+            throw new IOException(e.getMessage(), e);
+        } finally {
+            reader.close();
+        }
+    }
+
+    /**
+     * Reads the next value as an int, truncating any fraction as JSONObject.getInt() does.
+     */
+    public static int nextInt(JsonReader reader) throws IOException {
+        return (int) reader.nextDouble();
+    }
+
+    /**
+     * Reads the next value as a double, or returns `fallback` if it is null.
+     */
+    public static double nextDouble(JsonReader reader, double fallback) throws IOException {
+        if (reader.peek() == JsonToken.NULL) {
+            reader.nextNull();
+            return fallback;
+        }
+        return reader.nextDouble();
+    }
+
+    /**
+     * Reads the next value as a String, or returns `fallback` if it is null.
+     */
+    public static String nextString(JsonReader reader, String fallback) throws IOException {
+        if (reader.peek() == JsonToken.NULL) {
+            reader.nextNull();
+            return fallback;
+        }
+        return reader.nextString();
+    }
+
+    /**
+     * Reads one named field into a target.
+     */
+    public interface FieldReader<T> {
+        /**
+         * @param target Object being filled in.
+         * @param name   Name of the field.
+         * @param reader JsonReader positioned at the field's value.
+         * @return `true` if the value was consumed, or `false` to have it skipped.
+         */
+        boolean readField(T target, String name, JsonReader reader) throws IOException;
+    }
+}
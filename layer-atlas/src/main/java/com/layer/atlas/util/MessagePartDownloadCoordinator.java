@@ -0,0 +1,354 @@
+package com.layer.atlas.util;
+
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+
+import com.layer.sdk.listeners.LayerProgressListener;
+import com.layer.sdk.messaging.MessagePart;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Shares MessagePart downloads between everything that needs them.  Each MessagePart has at most
+ * one download in flight no matter how many cells, Picasso requests or popups subscribe to it, and
+ * each completion is fanned out to whoever is subscribed at the time.  Cells cancel their
+ * Subscription when recycled, and downloads nobody is waiting for any more are dropped before they
+ * start.
+ * <p>
+ * At most `maxConcurrent` downloads run at once.  The rest wait in a queue ordered by Priority and,
+ * within a Priority, by most recent request, so parts for cells on screen go first.  A download
+ * that reports no progress for the slot timeout gives up its slot so a stalled transfer cannot
+ * block the queue; it keeps running, and its Subscriptions still hear how it ends.
+ */
+public class MessagePartDownloadCoordinator {
+    public static final int DEFAULT_MAX_CONCURRENT = 3;
+    public static final long DEFAULT_SLOT_TIMEOUT_MILLIS = 30 * 1000;
+
+    public enum Priority {
+        // Bound to a cell on screen, or displayed full screen
+        VISIBLE,
+        // About to be displayed
+        PREFETCH,
+        // Wanted eventually
+        BACKGROUND
+    }
+
+    private static MessagePartDownloadCoordinator sDefault;
+
+    private final Map<Uri, Download> mDownloads = new HashMap<>();
+    private final PriorityQueue<Download> mQueue = new PriorityQueue<>();
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+    private int mMaxConcurrent;
+    private long mSlotTimeoutMillis = DEFAULT_SLOT_TIMEOUT_MILLIS;
+    private int mRunning = 0;
+    private long mSequence = 0;
+
+    /**
+     * Returns the MessagePartDownloadCoordinator shared by the built-in cell factories and Picasso
+     * request handlers.
+     */
+    public static synchronized MessagePartDownloadCoordinator getDefault() {
+        if (sDefault == null) sDefault = new MessagePartDownloadCoordinator(DEFAULT_MAX_CONCURRENT);
+        return sDefault;
+    }
+
+    public MessagePartDownloadCoordinator(int maxConcurrent) {
+        mMaxConcurrent = Math.max(1, maxConcurrent);
+    }
+
+    /**
+     * Sets how many downloads may run at once.
+     *
+     * @param maxConcurrent Maximum concurrent downloads.
+     * @return This MessagePartDownloadCoordinator.
+     */
+    public MessagePartDownloadCoordinator setMaxConcurrent(int maxConcurrent) {
+        synchronized (this) {
+            mMaxConcurrent = Math.max(1, maxConcurrent);
+        }
+        startQueued();
+        return this;
+    }
+
+    /**
+     * Sets how long a running download may go without progress before its slot is given to the
+     * next queued download.
+     *
+     * @param timeout Time without progress, or 0 to never release slots early.
+     * @param unit    Unit of `timeout`.
+     * @return This MessagePartDownloadCoordinator.
+     */
+    public synchronized MessagePartDownloadCoordinator setSlotTimeout(long timeout, TimeUnit unit) {
+        mSlotTimeoutMillis = Math.max(0, unit.toMillis(timeout));
+        return this;
+    }
+
+    /**
+     * Downloads the given MessagePart, or joins its download already queued or in flight.  If the
+     * part is already downloaded, the Callback is called before this returns; otherwise it is
+     * called on the main thread.
+     *
+     * @param part     MessagePart to download.
+     * @param priority How urgently the content is needed.  Joining a queued download can raise its
+     *                 Priority but never lowers it.
+     * @param callback Callback for completion.
+     * @return A Subscription to cancel if the content is no longer needed.
+     */
+    public Subscription download(MessagePart part, Priority priority, Callback callback) {
+        if (part.isContentReady()) {
+            callback.onDownloadComplete(part);
+            return new Subscription(null, callback);
+        }
+
+        Subscription subscription;
+        synchronized (this) {
+            Download download = enqueue(part, priority);
+            subscription = new Subscription(download, callback);
+            download.mSubscriptions.add(subscription);
+        }
+        startQueued();
+        return subscription;
+    }
+
+    /**
+     * Queues the given MessagePart for download without subscribing to it, or raises the Priority
+     * of its queued download.  Unlike download(), the download stays queued until it runs even if
+     * nobody subscribes.
+     *
+     * @param part     MessagePart to download.
+     * @param priority How urgently the content is needed.
+     */
+    public void prefetch(MessagePart part, Priority priority) {
+        if (part.isContentReady()) return;
+        synchronized (this) {
+            enqueue(part, priority);
+        }
+        startQueued();
+    }
+
+    private Download enqueue(MessagePart part, Priority priority) {
+        Uri id = part.getId();
+        Download download = mDownloads.get(id);
+        if (download == null) {
+            download = new Download(part, priority, ++mSequence);
+            mDownloads.put(id, download);
+            mQueue.add(download);
+        } else if (!download.mStarted && priority.compareTo(download.mPriority) < 0) {
+            // Re-insert so the PriorityQueue sees the new ordering
+            mQueue.remove(download);
+            download.mPriority = priority;
+            download.mSequence = ++mSequence;
+            mQueue.add(download);
+        }
+        return download;
+    }
+
+    /**
+     * Downloads the given MessagePart without blocking, returning a future for the result.  Like
+     * download(), concurrent fetches of the same part share one download.
+     *
+     * @param part     MessagePart to download.
+     * @param priority How urgently the content is needed.
+     * @param timeout  Time after which the future fails with a TimeoutException, or 0 for none.
+     * @param unit     Unit of `timeout`.
+     * @return A MessagePartFuture for the downloaded part.
+     */
+    public MessagePartFuture fetch(MessagePart part, Priority priority, long timeout, TimeUnit unit) {
+        MessagePartFuture future = new MessagePartFuture(part);
+        future.start(this, priority, timeout, unit);
+        return future;
+    }
+
+    /**
+     * @return `true` if the given MessagePart is queued or downloading.
+     */
+    public synchronized boolean isDownloading(MessagePart part) {
+        return mDownloads.containsKey(part.getId());
+    }
+
+    private void startQueued() {
+        List<Download> starting = new ArrayList<>();
+        synchronized (this) {
+            while (mRunning < mMaxConcurrent && !mQueue.isEmpty()) {
+                Download download = mQueue.poll();
+                download.mStarted = true;
+                download.mHoldsSlot = true;
+                download.mLastProgress = SystemClock.uptimeMillis();
+                mRunning++;
+                starting.add(download);
+            }
+        }
+        for (Download download : starting) {
+            scheduleWatchdog(download);
+            if (Log.isLoggable(Log.VERBOSE)) {
+                Log.v("Starting download of " + download.mPart.getId() + " at " + download.mPriority);
+            }
+            download.mPart.download(download);
+        }
+    }
+
+    private void scheduleWatchdog(Download download) {
+        long timeout;
+        synchronized (this) {
+            timeout = mSlotTimeoutMillis;
+        }
+        if (timeout > 0) mHandler.postDelayed(download.mWatchdog, timeout);
+    }
+
+    /**
+     * Releases a stalled download's slot, or checks again once it could next be stalled.
+     */
+    private void checkStalled(Download download) {
+        long remaining;
+        synchronized (this) {
+            if (!download.mHoldsSlot || mSlotTimeoutMillis <= 0) return;
+            remaining = download.mLastProgress + mSlotTimeoutMillis - SystemClock.uptimeMillis();
+            if (remaining <= 0) {
+                download.mHoldsSlot = false;
+                mRunning--;
+            }
+        }
+        if (remaining > 0) {
+            mHandler.postDelayed(download.mWatchdog, remaining);
+            return;
+        }
+        if (Log.isLoggable(Log.WARN)) {
+            Log.w("Releasing slot of stalled download " + download.mPart.getId());
+        }
+        startQueued();
+    }
+
+    private void unsubscribe(Subscription subscription) {
+        Download download = subscription.mDownload;
+        synchronized (this) {
+            if (!download.mSubscriptions.remove(subscription)) return;
+            // A started download cannot be stopped, but one still queued can be dropped
+            if (!download.mStarted && download.mSubscriptions.isEmpty()) {
+                mQueue.remove(download);
+                mDownloads.remove(download.mPart.getId());
+            }
+        }
+    }
+
+    private void finish(Download download, Throwable error) {
+        List<Subscription> subscriptions;
+        synchronized (this) {
+            if (mDownloads.get(download.mPart.getId()) == download) mDownloads.remove(download.mPart.getId());
+            if (download.mHoldsSlot) {
+                download.mHoldsSlot = false;
+                mRunning--;
+            }
+            subscriptions = new ArrayList<>(download.mSubscriptions);
+            download.mSubscriptions.clear();
+        }
+        mHandler.removeCallbacks(download.mWatchdog);
+        startQueued();
+        boolean complete = error == null && download.mPart.isContentReady();
+        for (Subscription subscription : subscriptions) {
+            if (complete) {
+                subscription.mCallback.onDownloadComplete(download.mPart);
+            } else {
+                subscription.mCallback.onDownloadFailed(download.mPart, error);
+            }
+        }
+    }
+
+    /**
+     * Receives the outcome of a download.
+     */
+    public interface Callback {
+        void onDownloadComplete(MessagePart part);
+
+        /**
+         * @param error The SDK's error, or `null` if none was given.
+         */
+        void onDownloadFailed(MessagePart part, Throwable error);
+    }
+
+    /**
+     * One subscriber's interest in a download.
+     */
+    public final class Subscription {
+        private final Download mDownload;
+        private final Callback mCallback;
+
+        private Subscription(Download download, Callback callback) {
+            mDownload = download;
+            mCallback = callback;
+        }
+
+        /**
+         * Stops delivering this Subscription's Callback.  Safe to call more than once, and after
+         * completion.
+         */
+        public void cancel() {
+            if (mDownload != null) unsubscribe(this);
+        }
+    }
+
+    /**
+     * A queued or in-flight download.  Held strongly here, since the SDK only keeps a weak reference
+     * to this listener.
+     */
+    private class Download extends LayerProgressListener.Weak implements Comparable<Download> {
+        private final MessagePart mPart;
+        private final List<Subscription> mSubscriptions = new ArrayList<>();
+        private Priority mPriority;
+        private long mSequence;
+        private boolean mStarted = false;
+        // Whether this download counts against maxConcurrent, until it ends or stalls
+        private boolean mHoldsSlot = false;
+        private long mLastProgress;
+        private final Runnable mWatchdog = new Runnable() {
+            @Override
+            public void run() {
+                checkStalled(Download.this);
+            }
+        };
+
+        Download(MessagePart part, Priority priority, long sequence) {
+            mPart = part;
+            mPriority = priority;
+            mSequence = sequence;
+        }
+
+        @Override
+        public void onProgressStart(MessagePart messagePart, Operation operation) {
+        }
+
+        @Override
+        public void onProgressUpdate(MessagePart messagePart, Operation operation, long l) {
+            synchronized (MessagePartDownloadCoordinator.this) {
+                mLastProgress = SystemClock.uptimeMillis();
+            }
+        }
+
+        @Override
+        public void onProgressComplete(MessagePart messagePart, Operation operation) {
+            finish(this, null);
+        }
+
+        @Override
+        public void onProgressError(MessagePart messagePart, Operation operation, Throwable throwable) {
+            if (Log.isLoggable(Log.ERROR)) {
+                Log.e("Message part download error: " + messagePart.getId(), throwable);
+            }
+            finish(this, throwable);
+        }
+
+        @Override
+        public int compareTo(Download other) {
+            int byPriority = mPriority.compareTo(other.mPriority);
+            if (byPriority != 0) return byPriority;
+            // Newest requests first
+            return (mSequence > other.mSequence) ? -1 : ((mSequence == other.mSequence) ? 0 : 1);
+        }
+    }
+}
@@ -0,0 +1,183 @@
+package com.layer.atlas.util;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import com.layer.sdk.messaging.MessagePart;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * The pending result of a MessagePart download started with MessagePartDownloadCoordinator.fetch().
+ * Completes with the downloaded MessagePart, or fails when the download errors, the timeout
+ * elapses, or the future is cancelled.  Concurrent fetches of the same part share one download.
+ * <p>
+ * Prefer addCallback(), which never blocks.  get() is available for code that already runs on
+ * its own background thread, such as image decoders, and must not be called on the main thread.
+ */
+public class MessagePartFuture implements Future<MessagePart> {
+    private static final Handler sTimeouts = new Handler(Looper.getMainLooper());
+
+    private final MessagePart mPart;
+    private final List<Callback> mCallbacks = new ArrayList<>();
+    private MessagePartDownloadCoordinator.Subscription mSubscription;
+    private boolean mDone = false;
+    private boolean mCancelled = false;
+    private Throwable mError;
+
+    private final Runnable mTimeout = new Runnable() {
+        @Override
+        public void run() {
+            complete(new TimeoutException("Timed out downloading " + mPart.getId()));
+        }
+    };
+
+    MessagePartFuture(MessagePart part) {
+        mPart = part;
+    }
+
+    /**
+     * Subscribes to the download and arms the timeout.  Called once by the coordinator.
+     */
+    void start(MessagePartDownloadCoordinator coordinator, MessagePartDownloadCoordinator.Priority priority, long timeout, TimeUnit unit) {
+        MessagePartDownloadCoordinator.Subscription subscription = coordinator.download(mPart, priority, new MessagePartDownloadCoordinator.Callback() {
+            @Override
+            public void onDownloadComplete(MessagePart part) {
+                complete(null);
+            }
+
+            @Override
+            public void onDownloadFailed(MessagePart part, Throwable error) {
+                complete((error != null) ? error : new IOException("Download failed for " + part.getId()));
+            }
+        });
+        synchronized (this) {
+            if (mDone) {
+                subscription.cancel();
+                return;
+            }
+            mSubscription = subscription;
+        }
+        if (timeout > 0) sTimeouts.postDelayed(mTimeout, unit.toMillis(timeout));
+    }
+
+    public MessagePart getPart() {
+        return mPart;
+    }
+
+    /**
+     * Adds a Callback for this future's outcome.  Callbacks added after completion are called
+     * immediately on the calling thread; otherwise they are called on the thread that completes
+     * the future, which is the main thread for downloads and timeouts.
+     *
+     * @param callback Callback to add.
+     * @return This MessagePartFuture.
+     */
+    public MessagePartFuture addCallback(Callback callback) {
+        synchronized (this) {
+            if (!mDone) {
+                mCallbacks.add(callback);
+                return this;
+            }
+        }
+        deliver(callback);
+        return this;
+    }
+
+    /**
+     * Cancels this future.  Its share of the download is released; the download itself continues
+     * while other futures or subscribers still want it.
+     *
+     * @param mayInterruptIfRunning Ignored, as there is no thread to interrupt.
+     * @return `true` if this future was cancelled, or `false` if it had already completed.
+     */
+    @Override
+    public boolean cancel(boolean mayInterruptIfRunning) {
+        return complete(new CancellationException());
+    }
+
+    @Override
+    public synchronized boolean isCancelled() {
+        return mCancelled;
+    }
+
+    @Override
+    public synchronized boolean isDone() {
+        return mDone;
+    }
+
+    @Override
+    public synchronized MessagePart get() throws InterruptedException, ExecutionException {
+        while (!mDone) {
+            wait();
+        }
+        return result();
+    }
+
+    @Override
+    public synchronized MessagePart get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        while (!mDone) {
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) throw new TimeoutException();
+            TimeUnit.NANOSECONDS.timedWait(this, remaining);
+        }
+        return result();
+    }
+
+    private MessagePart result() throws ExecutionException {
+        if (mCancelled) throw new CancellationException();
+        if (mError != null) throw new ExecutionException(mError);
+        return mPart;
+    }
+
+    private boolean complete(Throwable error) {
+        List<Callback> callbacks;
+        MessagePartDownloadCoordinator.Subscription subscription;
+        synchronized (this) {
+            if (mDone) return false;
+            mDone = true;
+            mCancelled = error instanceof CancellationException;
+            mError = error;
+            callbacks = new ArrayList<>(mCallbacks);
+            mCallbacks.clear();
+            subscription = mSubscription;
+            mSubscription = null;
+            notifyAll();
+        }
+        sTimeouts.removeCallbacks(mTimeout);
+        if (subscription != null) subscription.cancel();
+        for (Callback callback : callbacks) {
+            deliver(callback);
+        }
+        return true;
+    }
+
+    private void deliver(Callback callback) {
+        Throwable error;
+        synchronized (this) {
+            error = mError;
+        }
+        if (error == null) {
+            callback.onSuccess(mPart);
+        } else {
+            callback.onFailure(mPart, error);
+        }
+    }
+
+    public interface Callback {
+        void onSuccess(MessagePart part);
+
+        /**
+         * @param error A TimeoutException, CancellationException, or the download's error.
+         */
+        void onFailure(MessagePart part, Throwable error);
+    }
+}
@@ -0,0 +1,270 @@
+package com.layer.atlas.util;
+
+import android.os.AsyncTask;
+
+import com.layer.sdk.LayerClient;
+import com.layer.sdk.messaging.Conversation;
+import com.layer.sdk.messaging.Message;
+import com.layer.sdk.query.CompoundPredicate;
+import com.layer.sdk.query.Predicate;
+import com.layer.sdk.query.Query;
+import com.layer.sdk.query.SortDescriptor;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Bounds a Conversation's Message Query to a sliding window of Message positions, so only a fixed
+ * working set of Messages is loaded no matter how long the local history is.  The window starts on
+ * the newest page of Messages and slides toward older or newer Messages one page at a time.  When
+ * the window grows past its maximum size, it drops Messages from the opposite end.
+ * <p>
+ * Window bounds are found with small limit/offset queries on a background thread, and the Callback
+ * receives the resulting Query on the main thread.  All other methods must be called on the main
+ * thread.
+ */
+public class MessageQueryWindow {
+    public static final int DEFAULT_PAGE_SIZE = 200;
+
+    private final LayerClient mLayerClient;
+    private final Callback mCallback;
+
+    private Conversation mConversation;
+    private int mPageSize = DEFAULT_PAGE_SIZE;
+    private int mMaxSize = DEFAULT_PAGE_SIZE * 3;
+
+    // Inclusive Message positions bounding the window, or `null` where the window is open-ended
+    private Long mLowerPosition;
+    private Long mUpperPosition;
+
+    private BoundsTask mTask;
+
+    public MessageQueryWindow(LayerClient layerClient, Callback callback) {
+        mLayerClient = layerClient;
+        mCallback = callback;
+    }
+
+    /**
+     * Sets the number of Messages loaded initially and added with each extension.
+     *
+     * @param pageSize Messages per page.
+     * @param maxPages Maximum number of pages kept loaded at once.
+     * @return This MessageQueryWindow.
+     */
+    public MessageQueryWindow setPageSize(int pageSize, int maxPages) {
+        if (pageSize < 1 || maxPages < 1) throw new IllegalArgumentException("Page size and count must be positive");
+        mPageSize = pageSize;
+        mMaxSize = pageSize * maxPages;
+        return this;
+    }
+
+    public int getPageSize() {
+        return mPageSize;
+    }
+
+    /**
+     * Resets the window to the newest page of Messages in the given Conversation.
+     *
+     * @param conversation Conversation to window Messages for.
+     */
+    public void setConversation(final Conversation conversation) {
+        mConversation = conversation;
+        mLowerPosition = null;
+        mUpperPosition = null;
+        if (conversation == null) {
+            cancel();
+            if (mCallback != null) mCallback.onWindowChanged(this, buildQuery());
+            return;
+        }
+        startNewest(conversation);
+    }
+
+    /**
+     * Jumps the window back to the newest page of Messages, for example after the user sends a
+     * Message while the window excludes the newest ones.  The current bounds stay in effect until
+     * the new ones are known.
+     *
+     * @return `true` if the window is moving, `false` if it already includes the newest Message.
+     */
+    public boolean showNewest() {
+        if (mConversation == null || mUpperPosition == null) return false;
+        return startNewest(mConversation);
+    }
+
+    private boolean startNewest(final Conversation conversation) {
+        return start(new BoundsTask(conversation) {
+            @Override
+            protected Long[] doInBackground(Void... params) {
+                Message lower = findMessage(conversation, null, SortDescriptor.Order.DESCENDING, mPageSize - 1);
+                return new Long[]{position(lower), null};
+            }
+        });
+    }
+
+    /**
+     * Slides the window one page toward older Messages.  Once the window is full this drops the
+     * newest Messages, so new Messages stay hidden until the window slides back with
+     * extendNewer() or showNewest().
+     *
+     * @return `true` if older local Messages exist and the window is moving, `false` if the window
+     * already reaches the oldest local Message or is busy.
+     */
+    public boolean extendOlder() {
+        if (mConversation == null || mLowerPosition == null || isLoading()) return false;
+        final Conversation conversation = mConversation;
+        final Long lowerPosition = mLowerPosition;
+        final Long upperPosition = mUpperPosition;
+        return start(new BoundsTask(conversation) {
+            @Override
+            protected Long[] doInBackground(Void... params) {
+                Predicate older = new Predicate(Message.Property.POSITION, Predicate.Operator.LESS_THAN, lowerPosition);
+                Long lower = position(findMessage(conversation, older, SortDescriptor.Order.DESCENDING, mPageSize - 1));
+
+                // Drop the newest Messages if the window is now too large
+                Long upper = upperPosition;
+                Predicate fromLower = (lower == null) ? null : new Predicate(Message.Property.POSITION, Predicate.Operator.GREATER_THAN_OR_EQUAL_TO, lower);
+                Message last = findMessage(conversation, fromLower, SortDescriptor.Order.ASCENDING, mMaxSize - 1);
+                if (last != null && (upper == null || last.getPosition() < upper)) upper = last.getPosition();
+                return new Long[]{lower, upper};
+            }
+        });
+    }
+
+    /**
+     * Slides the window one page toward newer Messages.
+     *
+     * @return `true` if newer local Messages exist and the window is moving, `false` if the window
+     * already reaches the newest Message or is busy.
+     */
+    public boolean extendNewer() {
+        if (mConversation == null || mUpperPosition == null || isLoading()) return false;
+        final Conversation conversation = mConversation;
+        final Long lowerPosition = mLowerPosition;
+        final Long upperPosition = mUpperPosition;
+        return start(new BoundsTask(conversation) {
+            @Override
+            protected Long[] doInBackground(Void... params) {
+                Predicate newer = new Predicate(Message.Property.POSITION, Predicate.Operator.GREATER_THAN, upperPosition);
+                Long upper = position(findMessage(conversation, newer, SortDescriptor.Order.ASCENDING, mPageSize - 1));
+
+                // Drop the oldest Messages if the window is now too large
+                Long lower = lowerPosition;
+                Predicate toUpper = (upper == null) ? null : new Predicate(Message.Property.POSITION, Predicate.Operator.LESS_THAN_OR_EQUAL_TO, upper);
+                Message first = findMessage(conversation, toUpper, SortDescriptor.Order.DESCENDING, mMaxSize - 1);
+                if (first != null && (lower == null || first.getPosition() > lower)) lower = first.getPosition();
+                return new Long[]{lower, upper};
+            }
+        });
+    }
+
+    /**
+     * @return `true` if older local Messages fall outside the window.
+     */
+    public boolean hasOlder() {
+        return mLowerPosition != null;
+    }
+
+    /**
+     * @return `true` if newer Messages fall outside the window.
+     */
+    public boolean hasNewer() {
+        return mUpperPosition != null;
+    }
+
+    public boolean isLoading() {
+        return mTask != null;
+    }
+
+    /**
+     * Cancels any pending bounds lookup.
+     */
+    public void cancel() {
+        if (mTask != null) {
+            mTask.cancel(false);
+            mTask = null;
+        }
+    }
+
+    /**
+     * Builds a Query for the Messages currently inside the window, ordered by position.
+     */
+    public Query<Message> buildQuery() {
+        List<Predicate> predicates = new ArrayList<>(3);
+        predicates.add(new Predicate(Message.Property.CONVERSATION, Predicate.Operator.EQUAL_TO, mConversation));
+        if (mLowerPosition != null) {
+            predicates.add(new Predicate(Message.Property.POSITION, Predicate.Operator.GREATER_THAN_OR_EQUAL_TO, mLowerPosition));
+        }
+        if (mUpperPosition != null) {
+            predicates.add(new Predicate(Message.Property.POSITION, Predicate.Operator.LESS_THAN_OR_EQUAL_TO, mUpperPosition));
+        }
+        return Query.builder(Message.class)
+                .predicate(and(predicates))
+                .sortDescriptor(new SortDescriptor(Message.Property.POSITION, SortDescriptor.Order.ASCENDING))
+                .build();
+    }
+
+    private boolean start(BoundsTask task) {
+        cancel();
+        mTask = task;
+        task.execute();
+        return true;
+    }
+
+    /**
+     * Returns the Message `offset` places into the Conversation in the given order, optionally
+     * restricted by `bound`, or `null` if there are not that many Messages.
+     */
+    private Message findMessage(Conversation conversation, Predicate bound, SortDescriptor.Order order, int offset) {
+        List<Predicate> predicates = new ArrayList<>(2);
+        predicates.add(new Predicate(Message.Property.CONVERSATION, Predicate.Operator.EQUAL_TO, conversation));
+        if (bound != null) predicates.add(bound);
+        Query<Message> query = Query.builder(Message.class)
+                .predicate(and(predicates))
+                .sortDescriptor(new SortDescriptor(Message.Property.POSITION, order))
+                .offset(offset)
+                .limit(1)
+                .build();
+        List results = mLayerClient.executeQuery(query, Query.ResultType.OBJECTS);
+        return (results == null || results.isEmpty()) ? null : (Message) results.get(0);
+    }
+
+    private static Predicate and(List<Predicate> predicates) {
+        if (predicates.size() == 1) return predicates.get(0);
+        return new CompoundPredicate(CompoundPredicate.Type.AND, predicates.toArray(new Predicate[predicates.size()]));
+    }
+
+    private static Long position(Message message) {
+        return (message == null) ? null : message.getPosition();
+    }
+
+    private abstract class BoundsTask extends AsyncTask<Void, Void, Long[]> {
+        private final Conversation mTaskConversation;
+
+        BoundsTask(Conversation conversation) {
+            mTaskConversation = conversation;
+        }
+
+        @Override
+        protected void onPostExecute(Long[] bounds) {
+            if (mTask != this) return;
+            mTask = null;
+            if (mTaskConversation != mConversation) return;
+            mLowerPosition = bounds[0];
+            mUpperPosition = bounds[1];
+            if (Log.isPerfLoggable()) {
+                Log.perf("MessageQueryWindow bounds: [" + mLowerPosition + ", " + mUpperPosition + "]");
+            }
+            if (mCallback != null) mCallback.onWindowChanged(MessageQueryWindow.this, buildQuery());
+        }
+    }
+
+    public interface Callback {
+        /**
+         * Alerts the callback that the window moved, and its Messages should be queried again.
+         *
+         * @param window The MessageQueryWindow that moved.
+         * @param query  Query for the Messages now inside the window.
+         */
+        void onWindowChanged(MessageQueryWindow window, Query<Message> query);
+    }
+}
@@ -0,0 +1,162 @@
+package com.layer.atlas.util;
+
+import android.net.Uri;
+import android.os.Handler;
+
+import com.layer.sdk.LayerClient;
+import com.layer.sdk.messaging.Identity;
+import com.layer.sdk.messaging.Message;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Collects Messages that became visible and marks them as read in batches once scrolling goes
+ * idle, rather than calling Message.markAsRead() on every bind.  Messages are deduplicated by ID,
+ * and Messages already read by the authenticated user or recently marked are skipped.
+ * <p>
+ * All methods must be called on the thread backing the provided Handler.
+ */
+public class ReadReceiptBatcher {
+    public static final long DEFAULT_FLUSH_INTERVAL_MILLIS = 500;
+
+    private static final int RECENTLY_MARKED_CAPACITY = 256;
+
+    /**
+     * Determines which pending Messages get marked as read when a batch is flushed.
+     */
+    public enum Strategy {
+        /**
+         * Marks every pending Message as read.
+         */
+        BATCH,
+
+        /**
+         * Marks only the pending Message with the greatest position.  Use this when a read receipt
+         * on the newest Message is treated as covering the Messages before it.
+         */
+        NEWEST
+    }
+
+    private final LayerClient mLayerClient;
+    private final Handler mHandler;
+    private final Map<Uri, Message> mPending = new LinkedHashMap<>();
+    private final Map<Uri, Boolean> mRecentlyMarked = new LinkedHashMap<Uri, Boolean>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Uri, Boolean> eldest) {
+            return size() > RECENTLY_MARKED_CAPACITY;
+        }
+    };
+
+    private Strategy mStrategy = Strategy.BATCH;
+    private long mFlushIntervalMillis = DEFAULT_FLUSH_INTERVAL_MILLIS;
+    private boolean mScrolling = false;
+
+    private final Runnable mFlushRunnable = new Runnable() {
+        @Override
+        public void run() {
+            flush();
+        }
+    };
+
+    public ReadReceiptBatcher(LayerClient layerClient, Handler handler) {
+        mLayerClient = layerClient;
+        mHandler = handler;
+    }
+
+    public ReadReceiptBatcher setStrategy(Strategy strategy) {
+        mStrategy = strategy;
+        return this;
+    }
+
+    public Strategy getStrategy() {
+        return mStrategy;
+    }
+
+    /**
+     * Sets how long to wait after the last visible Message or scroll change before flushing.
+     *
+     * @param flushIntervalMillis Delay before flushing, in milliseconds.
+     * @return This ReadReceiptBatcher.
+     */
+    public ReadReceiptBatcher setFlushInterval(long flushIntervalMillis) {
+        mFlushIntervalMillis = Math.max(0, flushIntervalMillis);
+        return this;
+    }
+
+    public long getFlushInterval() {
+        return mFlushIntervalMillis;
+    }
+
+    /**
+     * Queues a visible Message to be marked as read with the next flush.
+     *
+     * @param message Message that became visible.
+     */
+    public void add(Message message) {
+        Uri id = message.getId();
+        if (mPending.containsKey(id) || mRecentlyMarked.containsKey(id)) return;
+        Identity me = mLayerClient.getAuthenticatedUser();
+        if (me != null && message.getRecipientStatus(me) == Message.RecipientStatus.READ) return;
+        mPending.put(id, message);
+        scheduleFlush();
+    }
+
+    /**
+     * Holds flushing while scrolling, and schedules a flush once scrolling goes idle.
+     *
+     * @param scrolling `true` if the list is dragging or settling, `false` if idle.
+     */
+    public void setScrolling(boolean scrolling) {
+        mScrolling = scrolling;
+        scheduleFlush();
+    }
+
+    /**
+     * Marks pending Messages as read immediately according to the current Strategy.
+     */
+    public void flush() {
+        mHandler.removeCallbacks(mFlushRunnable);
+        if (mPending.isEmpty()) return;
+
+        List<Message> toMark = new ArrayList<>();
+        if (mStrategy == Strategy.NEWEST) {
+            Message newest = null;
+            for (Message message : mPending.values()) {
+                if (newest == null || message.getPosition() > newest.getPosition()) newest = message;
+            }
+            toMark.add(newest);
+        } else {
+            toMark.addAll(mPending.values());
+        }
+        for (Uri id : mPending.keySet()) {
+            mRecentlyMarked.put(id, Boolean.TRUE);
+        }
+        mPending.clear();
+
+        for (Message message : toMark) {
+            if (message.isDeleted()) continue;
+            message.markAsRead();
+        }
+
+        if (Log.isPerfLoggable()) {
+            Log.perf("ReadReceiptBatcher marked " + toMark.size() + " message(s) as read");
+        }
+    }
+
+    /**
+     * Drops pending Messages without marking them.
+     */
+    public void clear() {
+        mHandler.removeCallbacks(mFlushRunnable);
+        mPending.clear();
+    }
+
+    private void scheduleFlush() {
+        mHandler.removeCallbacks(mFlushRunnable);
+        if (mScrolling || mPending.isEmpty()) return;
+        mHandler.postDelayed(mFlushRunnable, mFlushIntervalMillis);
+    }
+}
@@ -0,0 +1,154 @@
+package com.layer.atlas.util;
+
+import android.net.Uri;
+
+import com.layer.sdk.LayerClient;
+import com.layer.sdk.changes.LayerChange;
+import com.layer.sdk.changes.LayerChangeEvent;
+import com.layer.sdk.listeners.LayerChangeEventListener;
+import com.layer.sdk.messaging.Identity;
+import com.layer.sdk.messaging.LayerObject;
+import com.layer.sdk.messaging.Message;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A {@link LayerChangeEventListener} that keeps running read and delivered counts for outgoing
+ * Messages.  Counts are computed from the full recipient status map once, when a Message is first
+ * requested, and afterwards adjusted from the old and new values of `recipientStatus` changes, so
+ * displaying a receipt never walks every participant.
+ */
+public class RecipientStatusAggregator implements LayerChangeEventListener.Weak {
+    private static final String ATTRIBUTE_RECIPIENT_STATUS = "recipientStatus";
+    private static final int MAX_TRACKED_MESSAGES = 16;
+
+    private final LayerClient mLayerClient;
+    private final Callback mCallback;
+    private final Map<Uri, Counts> mCounts = new LinkedHashMap<Uri, Counts>(MAX_TRACKED_MESSAGES, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Uri, Counts> eldest) {
+            return size() > MAX_TRACKED_MESSAGES;
+        }
+    };
+
+    public RecipientStatusAggregator(LayerClient layerClient, Callback callback) {
+        mLayerClient = layerClient;
+        mCallback = callback;
+    }
+
+    /**
+     * Returns receipt counts for the given Message, tracking it for future changes.
+     *
+     * @param message Outgoing Message to return counts for.
+     * @return Counts of other participants who have read or received the Message.
+     */
+    public Counts getCounts(Message message) {
+        Counts counts = mCounts.get(message.getId());
+        if (counts == null) {
+            counts = new Counts();
+            recount(counts, message.getRecipientStatus());
+            mCounts.put(message.getId(), counts);
+        }
+        return counts;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public void onChangeEvent(LayerChangeEvent layerChangeEvent) {
+        for (LayerChange change : layerChangeEvent.getChanges()) {
+            if (!change.getObjectType().equals(LayerObject.Type.MESSAGE)) continue;
+            if (change.getChangeType() != LayerChange.Type.UPDATE) continue;
+            if (!ATTRIBUTE_RECIPIENT_STATUS.equals(change.getAttributeName())) continue;
+
+            Message message = (Message) change.getObject();
+            Counts counts = mCounts.get(message.getId());
+            if (counts == null) continue;
+
+            Object oldValue = change.getOldValue();
+            Object newValue = change.getNewValue();
+            if (oldValue instanceof Map && newValue instanceof Map) {
+                applyDelta(counts, (Map<Identity, Message.RecipientStatus>) oldValue, (Map<Identity, Message.RecipientStatus>) newValue);
+            } else {
+                recount(counts, message.getRecipientStatus());
+            }
+            if (mCallback != null) mCallback.onRecipientStatusChanged(message, counts);
+        }
+    }
+
+    private void recount(Counts counts, Map<Identity, Message.RecipientStatus> statuses) {
+        counts.mReadCount = 0;
+        counts.mDeliveredCount = 0;
+        counts.mStatusCount = statuses.size();
+        Identity me = mLayerClient.getAuthenticatedUser();
+        for (Map.Entry<Identity, Message.RecipientStatus> entry : statuses.entrySet()) {
+            // Only count receipts for other members
+            if (entry.getKey().equals(me)) continue;
+            counts.add(entry.getValue(), 1);
+        }
+    }
+
+    private void applyDelta(Counts counts, Map<Identity, Message.RecipientStatus> oldStatuses, Map<Identity, Message.RecipientStatus> newStatuses) {
+        Identity me = mLayerClient.getAuthenticatedUser();
+        for (Map.Entry<Identity, Message.RecipientStatus> entry : newStatuses.entrySet()) {
+            if (entry.getKey().equals(me)) continue;
+            Message.RecipientStatus oldStatus = oldStatuses.get(entry.getKey());
+            if (oldStatus == entry.getValue()) continue;
+            counts.add(oldStatus, -1);
+            counts.add(entry.getValue(), 1);
+        }
+        for (Map.Entry<Identity, Message.RecipientStatus> entry : oldStatuses.entrySet()) {
+            if (entry.getKey().equals(me) || newStatuses.containsKey(entry.getKey())) continue;
+            counts.add(entry.getValue(), -1);
+        }
+        counts.mStatusCount = newStatuses.size();
+    }
+
+    /**
+     * Running receipt counts for one Message, excluding the authenticated user and members no
+     * longer in the Conversation.
+     */
+    public static class Counts {
+        private int mReadCount;
+        private int mDeliveredCount;
+        private int mStatusCount;
+
+        public int getReadCount() {
+            return mReadCount;
+        }
+
+        public int getDeliveredCount() {
+            return mDeliveredCount;
+        }
+
+        /**
+         * @return The number of recipient statuses, including the authenticated user's.
+         */
+        public int getStatusCount() {
+            return mStatusCount;
+        }
+
+        private void add(Message.RecipientStatus status, int delta) {
+            // Skip receipts for members no longer in the conversation
+            if (status == null) return;
+            switch (status) {
+                case READ:
+                    mReadCount += delta;
+                    break;
+                case DELIVERED:
+                    mDeliveredCount += delta;
+                    break;
+            }
+        }
+    }
+
+    public interface Callback {
+        /**
+         * Alerts the callback that counts changed for a tracked Message.
+         *
+         * @param message The Message whose recipient statuses changed.
+         * @param counts  The updated counts.
+         */
+        void onRecipientStatusChanged(Message message, Counts counts);
+    }
+}
@@ -0,0 +1,127 @@
+package com.layer.atlas.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A thread-safe histogram of durations with fixed, power-of-two microsecond buckets.  Recording a
+ * sample is a handful of atomic increments and never allocates, so it is cheap enough to leave on
+ * in production builds.  Bucket `i` counts samples shorter than `2^i` microseconds, and the last
+ * bucket also counts everything longer.
+ */
+public final class TimingHistogram {
+    public static final int BUCKET_COUNT = 24;
+
+    private final AtomicLongArray mBuckets = new AtomicLongArray(BUCKET_COUNT);
+    private final AtomicLong mCount = new AtomicLong();
+    private final AtomicLong mTotalNanos = new AtomicLong();
+    private final AtomicLong mMaxNanos = new AtomicLong();
+
+    /**
+     * Records one sample.
+     *
+     * @param nanos Duration of the sample in nanoseconds, e.g. the difference of two
+     *              System.nanoTime() calls.
+     */
+    public void record(long nanos) {
+        if (nanos < 0) nanos = 0;
+        mBuckets.incrementAndGet(bucketFor(nanos / 1000));
+        mCount.incrementAndGet();
+        mTotalNanos.addAndGet(nanos);
+        long max;
+        do {
+            max = mMaxNanos.get();
+        } while (nanos > max && !mMaxNanos.compareAndSet(max, nanos));
+    }
+
+    public void reset() {
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            mBuckets.set(i, 0);
+        }
+        mCount.set(0);
+        mTotalNanos.set(0);
+        mMaxNanos.set(0);
+    }
+
+    /**
+     * Returns a point-in-time copy of this histogram.  Samples recorded concurrently may or may not
+     * be included.
+     */
+    public Snapshot snapshot() {
+        long[] buckets = new long[BUCKET_COUNT];
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            buckets[i] = mBuckets.get(i);
+        }
+        return new Snapshot(buckets, mCount.get(), mTotalNanos.get(), mMaxNanos.get());
+    }
+
+    private static int bucketFor(long micros) {
+        int bucket = 64 - Long.numberOfLeadingZeros(micros);
+        return (bucket < BUCKET_COUNT) ? bucket : BUCKET_COUNT - 1;
+    }
+
+    /**
+     * An immutable copy of a TimingHistogram.
+     */
+    public static final class Snapshot {
+        private final long[] mBuckets;
+        private final long mCount;
+        private final long mTotalNanos;
+        private final long mMaxNanos;
+
+        private Snapshot(long[] buckets, long count, long totalNanos, long maxNanos) {
+            mBuckets = buckets;
+            mCount = count;
+            mTotalNanos = totalNanos;
+            mMaxNanos = maxNanos;
+        }
+
+        public long getCount() {
+            return mCount;
+        }
+
+        public long getMeanMicros() {
+            return (mCount == 0) ? 0 : mTotalNanos / mCount / 1000;
+        }
+
+        public long getMaxMicros() {
+            return mMaxNanos / 1000;
+        }
+
+        /**
+         * Returns the number of samples in the given bucket.
+         *
+         * @param bucket Bucket index, from 0 to BUCKET_COUNT - 1.
+         * @return Count of samples shorter than `2^bucket` microseconds and at least as long as the
+         * previous bucket's bound.
+         */
+        public long getBucketCount(int bucket) {
+            return mBuckets[bucket];
+        }
+
+        /**
+         * Returns an upper bound on the given percentile, accurate to within a factor of two.
+         *
+         * @param percentile Percentile from 0 to 100.
+         * @return Upper bound of the bucket containing the percentile, in microseconds.
+         */
+        public long getPercentileMicros(double percentile) {
+            if (mCount == 0) return 0;
+            long target = (long) Math.ceil(mCount * Math.min(100, Math.max(0, percentile)) / 100.0);
+            long seen = 0;
+            for (int i = 0; i < BUCKET_COUNT; i++) {
+                seen += mBuckets[i];
+                if (seen >= target && seen > 0) {
+                    return Math.min(1L << i, getMaxMicros() + 1);
+                }
+            }
+            return getMaxMicros();
+        }
+
+        @Override
+        public String toString() {
+            return "n=" + mCount + " mean=" + getMeanMicros() + "us p50<" + getPercentileMicros(50)
+                    + "us p99<" + getPercentileMicros(99) + "us max=" + getMaxMicros() + "us";
+        }
+    }
+}
@@ -27,7 +27,6 @@ import com.layer.atlas.R;
 import com.layer.sdk.LayerClient;
 import com.layer.sdk.exceptions.LayerException;
 import com.layer.sdk.listeners.LayerAuthenticationListener;
-import com.layer.sdk.listeners.LayerProgressListener;
 import com.layer.sdk.messaging.Conversation;
 import com.layer.sdk.messaging.Identity;
 import com.layer.sdk.messaging.MessagePart;
@@ -38,13 +37,21 @@ import java.text.SimpleDateFormat;
 import java.util.Calendar;
 import java.util.Date;
 import java.util.Locale;
-import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 public class Util {
     private static final int TIME_HOURS_24 = 24 * 60 * 60 * 1000;
-    private static final SimpleDateFormat DAY_OF_WEEK = new SimpleDateFormat("EEE, LLL dd,", Locale.getDefault());
+    private static final DateFormat DAY_OF_WEEK = newDayOfWeekFormat();
+
+    /**
+     * Returns a new format for dates more than a week old in the date bar.  DateFormats are not
+     * thread-safe, so each thread formatting dates needs its own.
+     */
+    public static DateFormat newDayOfWeekFormat() {
+        return new SimpleDateFormat("EEE, LLL dd,", Locale.getDefault());
+    }
 
     /**
      * Returns the app version name.
@@ -149,6 +156,19 @@ public class Util {
      * @return
      */
     public static String formatTimeDay(Context context, Date date) {
+        return formatTimeDay(context, date, DAY_OF_WEEK);
+    }
+
+    /**
+     * Returns Today, Yesterday, the day of the week within one week, or a date formatted with
+     * `dayOfWeekFormat` if greater.  Safe to call from any thread with a thread-confined format.
+     *
+     * @param context
+     * @param date
+     * @param dayOfWeekFormat Format from newDayOfWeekFormat().
+     * @return
+     */
+    public static String formatTimeDay(Context context, Date date, DateFormat dayOfWeekFormat) {
         Calendar cal = Calendar.getInstance();
         cal.set(Calendar.HOUR_OF_DAY, 0);
         cal.set(Calendar.MINUTE, 0);
@@ -166,7 +186,7 @@ public class Util {
             cal.setTime(date);
             timeBarDayText = context.getResources().getStringArray(R.array.atlas_time_days_of_week)[cal.get(Calendar.DAY_OF_WEEK) - 1];
         } else {
-            timeBarDayText = DAY_OF_WEEK.format(date);
+            timeBarDayText = dayOfWeekFormat.format(date);
         }
         return timeBarDayText;
     }
@@ -206,7 +226,11 @@ public class Util {
     /**
      * Synchronously starts downloading the given MessagePart and waits for downloading to complete.
      * Returns `true` if the MessagePart downloaded successfully within the given period of time, or
-     * `false` otherwise.
+     * `false` otherwise.  The download is shared through the default MessagePartDownloadCoordinator.
+     * <p>
+     * This parks the calling thread for as long as the download takes, so never call it from the
+     * main thread or a shared worker pool such as Picasso's; use
+     * MessagePartDownloadCoordinator.fetch() there instead.
      *
      * @param layerClient LayerClient to download the MessagePart with.
      * @param part        MessagePart to download.
@@ -217,36 +241,17 @@ public class Util {
     public static boolean downloadMessagePart(LayerClient layerClient, MessagePart part, int timeLength, TimeUnit timeUnit) {
         if (part.isContentReady()) return true;
 
-        final CountDownLatch latch = new CountDownLatch(1);
-        final LayerProgressListener listener = new LayerProgressListener.BackgroundThread.Weak() {
-            @Override
-            public void onProgressStart(MessagePart messagePart, Operation operation) {
-
+        MessagePartFuture future = MessagePartDownloadCoordinator.getDefault().fetch(part, MessagePartDownloadCoordinator.Priority.VISIBLE, timeLength, timeUnit);
+        try {
+            future.get();
+        } catch (InterruptedException e) {
+            future.cancel(false);
+            if (Log.isLoggable(Log.ERROR)) {
+                Log.e(e.getMessage(), e);
             }
-
-            @Override
-            public void onProgressUpdate(MessagePart messagePart, Operation operation, long l) {
-
-            }
-
-            @Override
-            public void onProgressComplete(MessagePart messagePart, Operation operation) {
-                latch.countDown();
-            }
-
-            @Override
-            public void onProgressError(MessagePart messagePart, Operation operation, Throwable throwable) {
-                latch.countDown();
-            }
-        };
-        part.download(listener);
-        if (!part.isContentReady()) {
-            try {
-                latch.await(timeLength, timeUnit);
-            } catch (InterruptedException e) {
-                if (Log.isLoggable(Log.ERROR)) {
-                    Log.e(e.getMessage(), e);
-                }
+        } catch (ExecutionException e) {
+            if (Log.isLoggable(Log.ERROR)) {
+                Log.e("Failed to download " + part.getId(), e.getCause());
             }
         }
         return part.isContentReady();
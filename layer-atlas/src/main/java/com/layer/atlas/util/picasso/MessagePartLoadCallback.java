@@ -0,0 +1,84 @@
+package com.layer.atlas.util.picasso;
+
+import android.net.Uri;
+
+import com.layer.atlas.util.MessagePartDownloadCoordinator;
+import com.layer.sdk.LayerClient;
+import com.layer.sdk.messaging.MessagePart;
+import com.squareup.picasso.Callback;
+
+/**
+ * Picasso Callback for loading a MessagePart into a recyclable target.  When the load fails
+ * because the part has not downloaded yet, as a fail-fast MessagePartRequestHandler does, this
+ * subscribes to the part's download at VISIBLE priority and calls retry() once it lands.  A load
+ * that fails again after a retry, a failed download, or a target rebound to other content ends in
+ * onFailed().
+ */
+public abstract class MessagePartLoadCallback implements Callback {
+    private final LayerClient mLayerClient;
+    private final Uri mPartId;
+    private final boolean mRetried;
+
+    /**
+     * @param layerClient LayerClient to look the MessagePart up with.
+     * @param partId      ID of the MessagePart being loaded.
+     * @param retried     `true` if this load is itself a retry, so another failure is final.
+     */
+    protected MessagePartLoadCallback(LayerClient layerClient, Uri partId, boolean retried) {
+        mLayerClient = layerClient;
+        mPartId = partId;
+        mRetried = retried;
+    }
+
+    @Override
+    public void onError() {
+        MessagePart part = (MessagePart) mLayerClient.get(mPartId);
+        if (part == null || !isCurrent()) {
+            onFailed();
+            return;
+        }
+        if (part.isContentReady()) {
+            // The download may have landed between the handler failing and this callback
+            if (mRetried) {
+                onFailed();
+            } else {
+                retry();
+            }
+            return;
+        }
+        setDownload(MessagePartDownloadCoordinator.getDefault().download(part, MessagePartDownloadCoordinator.Priority.VISIBLE, new MessagePartDownloadCoordinator.Callback() {
+            @Override
+            public void onDownloadComplete(MessagePart part) {
+                setDownload(null);
+                retry();
+            }
+
+            @Override
+            public void onDownloadFailed(MessagePart part, Throwable error) {
+                setDownload(null);
+                onFailed();
+            }
+        }));
+    }
+
+    /**
+     * @return `true` if the target still displays this MessagePart.
+     */
+    protected abstract boolean isCurrent();
+
+    /**
+     * Loads the MessagePart again, passing `retried = true` to its new MessagePartLoadCallback.
+     */
+    protected abstract void retry();
+
+    /**
+     * Called when the load will not be retried.
+     */
+    protected abstract void onFailed();
+
+    /**
+     * Stores the Subscription to the MessagePart's download, so the target can cancel it when
+     * recycled, or clears it with `null` once the download ends.
+     */
+    protected abstract void setDownload(MessagePartDownloadCoordinator.Subscription download);
+}
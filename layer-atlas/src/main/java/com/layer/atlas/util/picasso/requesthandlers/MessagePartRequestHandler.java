@@ -3,7 +3,8 @@ package com.layer.atlas.util.picasso.requesthandlers;
 import android.net.Uri;
 
 import com.layer.atlas.util.Log;
-import com.layer.atlas.util.Util;
+import com.layer.atlas.util.MessagePartDownloadCoordinator;
+import com.layer.atlas.util.MessagePartFuture;
 import com.layer.sdk.LayerClient;
 import com.layer.sdk.messaging.MessagePart;
 import com.layer.sdk.query.Queryable;
@@ -11,20 +12,42 @@ import com.squareup.picasso.Request;
 
 import java.io.IOException;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
 
 import static com.squareup.picasso.Picasso.LoadedFrom;
 
 /**
  * Handles Picasso load requests for Layer MessagePart content.  If the content is not ready
- * (e.g. MessagePart.isContentReady() is `false`), registers a LayerProgressListener, downloads
- * the part, and waits for completion.
+ * (e.g. MessagePart.isContentReady() is `false`), downloads the part through the
+ * MessagePartDownloadCoordinator and waits for completion.
+ * <p>
+ * Waiting holds one of Picasso's few worker threads for as long as the download takes.  A
+ * fail-fast handler instead queues the part at PREFETCH priority and fails the request at once
+ * with a ContentNotReadyException.  Its callers must load the part again once it is ready, as
+ * MessagePartLoadCallback does for the built-in image cell factories.
  */
 public class MessagePartRequestHandler extends com.squareup.picasso.RequestHandler {
+    private static final int DOWNLOAD_TIMEOUT_MINUTES = 3;
+
     private final LayerClient mLayerClient;
+    private final MessagePartDownloadCoordinator mDownloads;
+    private final boolean mFailFast;
 
     public MessagePartRequestHandler(LayerClient layerClient) {
+        this(layerClient, MessagePartDownloadCoordinator.getDefault(), false);
+    }
+
+    /**
+     * @param layerClient LayerClient to load MessageParts with.
+     * @param downloads   MessagePartDownloadCoordinator to download MessageParts through.
+     * @param failFast    `true` to fail requests for MessageParts that are not downloaded yet with a
+     *                    ContentNotReadyException, or `false` to wait for their downloads.
+     */
+    public MessagePartRequestHandler(LayerClient layerClient, MessagePartDownloadCoordinator downloads, boolean failFast) {
         mLayerClient = layerClient;
+        mDownloads = downloads;
+        mFailFast = failFast;
     }
 
     @Override
@@ -43,7 +66,43 @@ public class MessagePartRequestHandler extends com.squareup.picasso.RequestHandl
         if (!(queryable instanceof MessagePart)) return null;
         MessagePart part = (MessagePart) queryable;
         if (part.isContentReady()) return new Result(part.getDataStream(), LoadedFrom.DISK);
-        if (!Util.downloadMessagePart(mLayerClient, part, 3, TimeUnit.MINUTES)) return null;
-        return new Result(part.getDataStream(), LoadedFrom.NETWORK);
+        if (!mFailFast) {
+            if (!awaitDownload(part)) return null;
+            return new Result(part.getDataStream(), LoadedFrom.NETWORK);
+        }
+
+        // Joins any download already in flight; whoever displays the part subscribes to it
+        mDownloads.prefetch(part, MessagePartDownloadCoordinator.Priority.PREFETCH);
+        if (Log.isLoggable(Log.VERBOSE)) {
+            Log.v("Deferring load until downloaded: " + part.getId());
+        }
+        throw new ContentNotReadyException(part.getId());
+    }
+
+    private boolean awaitDownload(MessagePart part) {
+        MessagePartFuture future = mDownloads.fetch(part, MessagePartDownloadCoordinator.Priority.VISIBLE, DOWNLOAD_TIMEOUT_MINUTES, TimeUnit.MINUTES);
+        try {
+            future.get();
+        } catch (InterruptedException e) {
+            future.cancel(false);
+            if (Log.isLoggable(Log.ERROR)) {
+                Log.e(e.getMessage(), e);
+            }
+        } catch (ExecutionException e) {
+            if (Log.isLoggable(Log.ERROR)) {
+                Log.e("Failed to download " + part.getId(), e.getCause());
+            }
+        }
+        return part.isContentReady();
+    }
+
+    /**
+     * Thrown from load() by a fail-fast handler when the requested MessagePart is still
+     * downloading.
+     */
+    public static class ContentNotReadyException extends IOException {
+        public ContentNotReadyException(Uri partId) {
+            super("Message part is downloading: " + partId);
+        }
     }
 }
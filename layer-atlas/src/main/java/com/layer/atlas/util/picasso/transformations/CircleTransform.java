@@ -4,6 +4,7 @@ import android.graphics.Bitmap;
 import android.graphics.Canvas;
 import android.graphics.Color;
 import android.graphics.Paint;
+import android.graphics.Path;
 import android.graphics.PorterDuff;
 import android.graphics.PorterDuffXfermode;
 import android.graphics.Rect;
@@ -22,19 +23,31 @@ public class CircleTransform implements Transformation {
         int srcWidth = source.getWidth();
         int srcHeight = source.getHeight();
         float srcRadius = (float) Math.min(srcWidth, srcHeight) / 2f;
-        Bitmap out = Bitmap.createBitmap(srcWidth, srcHeight, Bitmap.Config.ARGB_8888);
-        Canvas canvas = new Canvas(out);
         final Paint paint = new Paint();
-        final Rect rect = new Rect(0, 0, out.getWidth(), out.getHeight());
-
         paint.setAntiAlias(true);
         paint.setFilterBitmap(true);
         paint.setDither(true);
-        canvas.drawARGB(0, 0, 0, 0);
+
+        if (source.isMutable() && source.getConfig() == Bitmap.Config.ARGB_8888) {
+            // Clear everything outside the circle in place instead of copying
+            source.setHasAlpha(true);
+            Path outside = new Path();
+            outside.addCircle(srcRadius, srcRadius, srcRadius, Path.Direction.CW);
+            outside.setFillType(Path.FillType.INVERSE_WINDING);
+            paint.setXfermode(new PorterDuffXfermode(PorterDuff.Mode.CLEAR));
+            new Canvas(source).drawPath(outside, paint);
+            return source;
+        }
+
+        Bitmap out = Bitmap.createBitmap(srcWidth, srcHeight, Bitmap.Config.ARGB_8888);
+        Canvas canvas = new Canvas(out);
+        final Rect rect = new Rect(0, 0, out.getWidth(), out.getHeight());
+
         paint.setColor(Color.WHITE);
         canvas.drawCircle(srcRadius, srcRadius, srcRadius, paint);
         paint.setXfermode(new PorterDuffXfermode(PorterDuff.Mode.SRC_IN));
         canvas.drawBitmap(source, rect, rect, paint);
+        // Picasso requires the input to be recycled when a different Bitmap is returned
         source.recycle();
         return out;
     }
@@ -0,0 +1,209 @@
+package com.layer.atlas.util.views;
+
+import android.content.Context;
+import android.content.res.TypedArray;
+import android.graphics.Bitmap;
+import android.graphics.BitmapShader;
+import android.graphics.Canvas;
+import android.graphics.Matrix;
+import android.graphics.Paint;
+import android.graphics.RectF;
+import android.graphics.Shader;
+import android.graphics.drawable.BitmapDrawable;
+import android.graphics.drawable.Drawable;
+import android.os.Build;
+import android.util.AttributeSet;
+import android.view.ViewGroup;
+import android.widget.ImageView;
+
+import com.layer.atlas.R;
+
+/**
+ * An ImageView that draws bitmap content with rounded corners or as a circle.  The shape is applied
+ * at draw time with a BitmapShader rather than by transforming the Bitmap, so the same decoded
+ * Bitmap can be cached once and shown in any shape and at any size.  Drawables that are not
+ * BitmapDrawables, such as placeholders, are drawn unshaped.
+ * <p>
+ * Picasso's fade-in is drawn by its own Drawable and is bypassed here, so load into a
+ * ShapedImageView with noFade().
+ * <p>
+ * When the final size is known before the image loads, lock it with setFixedSize(): swapping the
+ * placeholder for the loaded image then only redraws, instead of laying out the whole list again.
+ */
+public class ShapedImageView extends ImageView {
+    private final Paint mPaint = new Paint(Paint.ANTI_ALIAS_FLAG | Paint.FILTER_BITMAP_FLAG);
+    private final Matrix mShaderMatrix = new Matrix();
+    private final RectF mBitmapRect = new RectF();
+    private final RectF mDrawableRect = new RectF();
+    private final RectF mBounds = new RectF();
+    private final RectF mContent = new RectF();
+    private Bitmap mShaderBitmap;
+    private float mCornerRadius = 0;
+    private boolean mCircular = false;
+    private boolean mFixedSize = false;
+    private boolean mBlockLayout = false;
+
+    public ShapedImageView(Context context) {
+        super(context);
+    }
+
+    public ShapedImageView(Context context, AttributeSet attrs) {
+        this(context, attrs, 0);
+    }
+
+    public ShapedImageView(Context context, AttributeSet attrs, int defStyle) {
+        super(context, attrs, defStyle);
+        TypedArray ta = context.getTheme().obtainStyledAttributes(attrs, R.styleable.AtlasShapedImageView, 0, defStyle);
+        mCornerRadius = ta.getDimension(R.styleable.AtlasShapedImageView_shapeCornerRadius, 0);
+        mCircular = ta.getBoolean(R.styleable.AtlasShapedImageView_shapeCircular, false);
+        ta.recycle();
+    }
+
+    public ShapedImageView setCornerRadius(float cornerRadius) {
+        if (mCornerRadius == cornerRadius) return this;
+        mCornerRadius = cornerRadius;
+        invalidate();
+        return this;
+    }
+
+    public float getCornerRadius() {
+        return mCornerRadius;
+    }
+
+    /**
+     * Draws bitmap content as the largest circle centered in its displayed bounds.
+     */
+    public ShapedImageView setCircular(boolean circular) {
+        if (mCircular == circular) return this;
+        mCircular = circular;
+        invalidate();
+        return this;
+    }
+
+    public boolean isCircular() {
+        return mCircular;
+    }
+
+    /**
+     * Sets an exact layout size and stops Drawable changes from requesting layout.  Layout is only
+     * requested if the size differs from the current one.
+     *
+     * @param width  Width in pixels.
+     * @param height Height in pixels.
+     * @return This ShapedImageView.
+     */
+    public ShapedImageView setFixedSize(int width, int height) {
+        mFixedSize = true;
+        ViewGroup.LayoutParams params = getLayoutParams();
+        if (params == null) {
+            setLayoutParams(new ViewGroup.LayoutParams(width, height));
+        } else if (params.width != width || params.height != height) {
+            params.width = width;
+            params.height = height;
+            setLayoutParams(params);
+        }
+        return this;
+    }
+
+    /**
+     * Returns to sizing by content, so Drawable changes request layout again.
+     *
+     * @return This ShapedImageView.
+     */
+    public ShapedImageView clearFixedSize() {
+        if (!mFixedSize) return this;
+        mFixedSize = false;
+        ViewGroup.LayoutParams params = getLayoutParams();
+        if (params != null) {
+            params.width = ViewGroup.LayoutParams.WRAP_CONTENT;
+            params.height = ViewGroup.LayoutParams.WRAP_CONTENT;
+            setLayoutParams(params);
+        }
+        return this;
+    }
+
+    public boolean isFixedSize() {
+        return mFixedSize;
+    }
+
+    @Override
+    public void setImageDrawable(Drawable drawable) {
+        // ImageView requests layout whenever the intrinsic size changes, which a fixed size ignores
+        mBlockLayout = mFixedSize;
+        try {
+            super.setImageDrawable(drawable);
+        } finally {
+            mBlockLayout = false;
+        }
+    }
+
+    @Override
+    public void setImageResource(int resId) {
+        mBlockLayout = mFixedSize;
+        try {
+            super.setImageResource(resId);
+        } finally {
+            mBlockLayout = false;
+        }
+    }
+
+    @Override
+    public void requestLayout() {
+        if (mBlockLayout) {
+            // ImageView has already refit the new Drawable to the unchanged bounds
+            invalidate();
+            return;
+        }
+        super.requestLayout();
+    }
+
+    @Override
+    protected void onDraw(Canvas canvas) {
+        Bitmap bitmap = getShapeableBitmap();
+        if (bitmap == null) {
+            mShaderBitmap = null;
+            mPaint.setShader(null);
+            super.onDraw(canvas);
+            return;
+        }
+        if (bitmap != mShaderBitmap) {
+            mShaderBitmap = bitmap;
+            mPaint.setShader(new BitmapShader(bitmap, Shader.TileMode.CLAMP, Shader.TileMode.CLAMP));
+        }
+
+        // Bitmap pixels -> Drawable bounds -> image matrix -> padding, as ImageView draws it
+        Drawable drawable = getDrawable();
+        mBitmapRect.set(0, 0, bitmap.getWidth(), bitmap.getHeight());
+        mDrawableRect.set(drawable.getBounds());
+        mShaderMatrix.setRectToRect(mBitmapRect, mDrawableRect, Matrix.ScaleToFit.FILL);
+        mShaderMatrix.postConcat(getImageMatrix());
+        mShaderMatrix.postTranslate(getPaddingLeft(), getPaddingTop());
+        mPaint.getShader().setLocalMatrix(mShaderMatrix);
+
+        // Shape the visible part of the image
+        mShaderMatrix.mapRect(mBounds, mBitmapRect);
+        mContent.set(getPaddingLeft(), getPaddingTop(), getWidth() - getPaddingRight(), getHeight() - getPaddingBottom());
+        if (!mBounds.intersect(mContent)) return;
+
+        mPaint.setAlpha(getImageAlphaCompat());
+        if (mCircular) {
+            float radius = Math.min(mBounds.width(), mBounds.height()) / 2f;
+            canvas.drawCircle(mBounds.centerX(), mBounds.centerY(), radius, mPaint);
+        } else {
+            canvas.drawRoundRect(mBounds, mCornerRadius, mCornerRadius, mPaint);
+        }
+    }
+
+    private Bitmap getShapeableBitmap() {
+        if (!mCircular && mCornerRadius <= 0) return null;
+        Drawable drawable = getDrawable();
+        if (!(drawable instanceof BitmapDrawable)) return null;
+        Bitmap bitmap = ((BitmapDrawable) drawable).getBitmap();
+        if (bitmap == null || bitmap.isRecycled()) return null;
+        return bitmap;
+    }
+
+    private int getImageAlphaCompat() {
+        return (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN) ? getImageAlpha() : 255;
+    }
+}